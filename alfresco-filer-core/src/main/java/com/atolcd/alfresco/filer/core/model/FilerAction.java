@@ -1,5 +1,9 @@
 package com.atolcd.alfresco.filer.core.model;
 
+import java.util.Collections;
+import java.util.Set;
+
+import org.alfresco.service.namespace.QName;
 import org.springframework.core.Ordered;
 
 public interface FilerAction extends Ordered, Comparable<FilerAction> {
@@ -11,4 +15,31 @@ public interface FilerAction extends Ordered, Comparable<FilerAction> {
   boolean supportsActionExecution(RepositoryNode node);
 
   void execute(RepositoryNode node);
+
+  /**
+   * Look up the folders the node would be filed into without updating anything, so that they are already known when the
+   * action is executed. Properties of the node may not be final yet, folder names are computed again upon execution.
+   */
+  default void prefetch(final RepositoryNode node) {
+    // Nothing is looked up by default, folders are only resolved upon execution
+  }
+
+  /**
+   * Properties the resolution and the execution of the action depend on, besides the type and aspects of the node.<br>
+   * When all actions declare them, updates that leave them unchanged are not filed again, see {@link FilerFingerprint}.
+   * Properties of inherited aspects do not need to be declared: they are always taken into account, so that their updates
+   * are still cascaded to children.
+   * @return declared properties, or an empty set if the action may depend on any property
+   */
+  default Set<QName> getInputProperties() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * Version of the action, to be increased whenever the way it resolves or files nodes changes, so that stored
+   * fingerprints are invalidated
+   */
+  default int getVersion() {
+    return 0;
+  }
 }
@@ -0,0 +1,73 @@
+package com.atolcd.alfresco.filer.core.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Map;
+
+import org.alfresco.service.namespace.QName;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Fingerprint stored on fileable nodes: name and version of the action that filed the node, along with a hash of the
+ * inputs it was filed from, i.e. {@code action:version:hash}.
+ */
+public final class FilerFingerprint {
+
+  private static final char SEPARATOR = ':';
+  private static final char TERMINATOR = '\u0000';
+  private static final int HASH_SIZE = 16;
+
+  public static String format(final String actionName, final int version, final String hash) {
+    return actionName + SEPARATOR + version + SEPARATOR + hash;
+  }
+
+  /**
+   * @return name of the action the fingerprint was computed for, if the value is a fingerprint
+   */
+  @CheckForNull
+  public static String getActionName(@CheckForNull final Serializable fingerprint) {
+    String result = null;
+    if (fingerprint instanceof String) {
+      String text = (String) fingerprint;
+      int hash = text.lastIndexOf(SEPARATOR);
+      int version = hash > 0 ? text.lastIndexOf(SEPARATOR, hash - 1) : -1;
+      if (version > 0) {
+        result = text.substring(0, version);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param signature names and versions of the registered actions, so that changing any of them changes the hash
+   * @param inputs properties to take into account, the other ones are ignored
+   */
+  public static String hash(final String signature, final QName type, final Collection<QName> aspects,
+      final Collection<QName> inputs, final Map<QName, Serializable> properties) {
+    StringBuilder text = new StringBuilder(signature).append(TERMINATOR).append(type).append(TERMINATOR);
+    aspects.stream().map(QName::toString).sorted().forEach(aspect -> text.append(aspect).append(TERMINATOR));
+    inputs.stream().sorted(Comparator.comparing(QName::toString)).forEach(input -> text.append(input).append('=')
+        .append(toText(properties.get(input))).append(TERMINATOR));
+    byte[] digest = Arrays.copyOf(PropertyDigest.digest(text.toString()), HASH_SIZE);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+  }
+
+  private static String toText(@CheckForNull final Serializable value) {
+    String result;
+    if (value instanceof Date) {
+      // Independent of the time zone
+      result = Long.toString(((Date) value).getTime());
+    } else {
+      String text = PropertyDigest.getText(value);
+      result = text == null ? String.valueOf(value) : text;
+    }
+    return result;
+  }
+
+  private FilerFingerprint() {}
+}
@@ -0,0 +1,40 @@
+package com.atolcd.alfresco.filer.core.model;
+
+/**
+ * Strategy generating an alternative node name when the filer name is already taken in the destination folder
+ */
+public enum FilerNameSuffix {
+
+  /**
+   * {@code name (2).ext}
+   */
+  PARENTHESIS {
+    @Override
+    protected String suffix(final int attempt) {
+      return " (" + attempt + ")";
+    }
+  },
+  /**
+   * {@code name-2.ext}
+   */
+  SEQUENCE {
+    @Override
+    protected String suffix(final int attempt) {
+      return "-" + attempt;
+    }
+  };
+
+  protected abstract String suffix(int attempt);
+
+  /**
+   * @param attempt number of the attempt, starting at 2 as the first attempt is the name itself
+   */
+  public String apply(final String name, final int attempt) {
+    // Keep file extension at the end of the name, dot files (.name) have no extension
+    int extension = name.lastIndexOf('.');
+    if (extension <= 0) {
+      extension = name.length();
+    }
+    return name.substring(0, extension) + suffix(attempt) + name.substring(extension);
+  }
+}
@@ -0,0 +1,105 @@
+package com.atolcd.alfresco.filer.core.model;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.alfresco.service.cmr.repository.MLText;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Stands for a large text property value in node snapshots, so that only its digest is kept in memory.
+ * It is compared to actual values with {@link #matches}.
+ */
+public final class PropertyDigest implements Serializable {
+
+  private static final long serialVersionUID = 4212895163418347092L;
+
+  private final int length;
+  private final byte[] digest;
+
+  private PropertyDigest(final int length, final byte[] digest) {
+    this.length = length;
+    this.digest = digest;
+  }
+
+  /**
+   * @return a digest of the value if it is a text (or multilingual text) longer than the threshold, the value itself otherwise
+   */
+  @CheckForNull
+  public static Serializable compact(@CheckForNull final Serializable value, final int threshold) {
+    Serializable result = value;
+    String text = getText(value);
+    if (text != null && text.length() > threshold) {
+      result = new PropertyDigest(text.length(), digest(text));
+    }
+    return result;
+  }
+
+  /**
+   * @return {@code true} if the value is the one this digest was computed from
+   */
+  public boolean matches(@CheckForNull final Serializable value) {
+    String text = getText(value);
+    return text != null && text.length() == length && Arrays.equals(digest, digest(text));
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  @CheckForNull
+  static String getText(@CheckForNull final Serializable value) {
+    String result = null;
+    if (value instanceof String) {
+      result = (String) value;
+    } else if (value instanceof MLText) {
+      // Sort translations so that the text does not depend on the map iteration order
+      Map<Locale, String> translations = new TreeMap<>(Comparator.comparing(Locale::toString));
+      translations.putAll((MLText) value);
+      StringBuilder text = new StringBuilder();
+      for (Entry<Locale, String> translation : translations.entrySet()) {
+        text.append(translation.getKey()).append('\u0000').append(translation.getValue()).append('\u0000');
+      }
+      result = text.toString();
+    }
+    return result;
+  }
+
+  static byte[] digest(final String text) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is always supported", e);
+    }
+  }
+
+  @Override
+  public boolean equals(final Object object) {
+    boolean result = object == this;
+    if (!result && object instanceof PropertyDigest) {
+      PropertyDigest other = (PropertyDigest) object;
+      result = length == other.length && Arrays.equals(digest, other.digest);
+    }
+    return result;
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(digest);
+  }
+
+  @Override
+  public String toString() {
+    return MessageFormat.format("'{'digest of {0} characters'}'", length);
+  }
+}
@@ -2,8 +2,6 @@ package com.atolcd.alfresco.filer.core.model;
 
 import java.io.Serializable;
 import java.text.MessageFormat;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -13,6 +11,8 @@ import org.alfresco.model.ContentModel;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
 
+import com.atolcd.alfresco.filer.core.model.impl.OverlayMap;
+import com.atolcd.alfresco.filer.core.model.impl.OverlaySet;
 import com.atolcd.alfresco.filer.core.model.impl.RepositoryNodeBuilder;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
@@ -51,9 +51,10 @@ public class RepositoryNode implements Serializable {
     this(nodeRef);
     this.parent = parent;
     this.type = type;
-    this.aspects = Optional.ofNullable(aspects).map(LinkedHashSet::new).orElse(null);
-    this.properties = Optional.ofNullable(properties).map(LinkedHashMap::new).orElse(null);
-    this.extensions = Optional.ofNullable(extensions).map(LinkedHashMap::new).orElse(null);
+    // Copies share entries with the copied node until either of them is updated
+    this.aspects = Optional.ofNullable(aspects).map(OverlaySet::new).orElse(null);
+    this.properties = Optional.ofNullable(properties).map(OverlayMap::new).orElse(null);
+    this.extensions = Optional.ofNullable(extensions).map(OverlayMap::new).orElse(null);
   }
 
   public RepositoryNode(final RepositoryNode other) {
@@ -89,12 +90,12 @@ public class RepositoryNode implements Serializable {
   }
 
   public Set<QName> getAspects() {
-    aspects = Optional.ofNullable(aspects).orElseGet(LinkedHashSet::new);
+    aspects = Optional.ofNullable(aspects).orElseGet(OverlaySet::new);
     return aspects;
   }
 
   public Map<QName, Serializable> getProperties() {
-    properties = Optional.ofNullable(properties).orElseGet(LinkedHashMap::new);
+    properties = Optional.ofNullable(properties).orElseGet(OverlayMap::new);
     return properties;
   }
 
@@ -107,7 +108,7 @@ public class RepositoryNode implements Serializable {
   }
 
   public Map<String, Object> getExtensions() {
-    extensions = Optional.ofNullable(extensions).orElseGet(LinkedHashMap::new);
+    extensions = Optional.ofNullable(extensions).orElseGet(OverlayMap::new);
     return extensions;
   }
 
@@ -5,91 +5,184 @@ import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
 
+import com.atolcd.alfresco.filer.core.model.impl.OverlayMap;
+
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 
+/**
+ * Difference between two states of a node. Collections of changes are only computed when they are requested, from the
+ * state of both nodes at that time, so nodes must not be updated while the difference is in use.<br>
+ * {@link #isEmpty()} and counting methods walk changes without copying the nodes, {@link #isEmpty()} stops at the first one.
+ */
 public class RepositoryNodeDifference {
 
+  private final RepositoryNode source;
+  private final RepositoryNode target;
+  @CheckForNull
+  private Set<QName> aspectsToRemove;
+  @CheckForNull
+  private Set<QName> aspectsToAdd;
   @CheckForNull
-  private NodeRef parentToMove;
+  private Set<QName> propertiesToRemove;
   @CheckForNull
-  private QName typeToSet;
-  private final Set<QName> aspectsToRemove;
-  private final Set<QName> aspectsToAdd;
-  private final Set<QName> propertiesToRemove;
-  private final Map<QName, Serializable> propertiesToAdd;
+  private Map<QName, Serializable> propertiesToAdd;
 
   public RepositoryNodeDifference(final RepositoryNode source, final RepositoryNode target) {
-    // Parent
-    if (!source.getParent().equals(target.getParent())) {
-      parentToMove = target.getParent().get();
-    }
-    // Type
-    if (!source.getType().equals(target.getType())) {
-      typeToSet = target.getType().get();
-    }
-    // Compute aspects
-    aspectsToRemove = new HashSet<>(source.getAspects());
-    aspectsToRemove.removeAll(target.getAspects());
-    aspectsToAdd = new HashSet<>(target.getAspects());
-    aspectsToAdd.removeAll(source.getAspects());
-    // Compute properties
-    propertiesToRemove = new HashSet<>(source.getProperties().keySet());
-    propertiesToRemove.removeAll(target.getProperties().keySet());
-    propertiesToAdd = new HashMap<>(target.getProperties());
-    removeDuplicateProperties(source.getProperties(), propertiesToAdd);
-  }
-
-  private static void removeDuplicateProperties(final Map<QName, Serializable> source, final Map<QName, Serializable> target) {
-    for (Entry<QName, Serializable> property : source.entrySet()) {
-      Serializable sourceValue = property.getValue();
-      Serializable targetValue = target.get(property.getKey());
-      if (targetValue == null && sourceValue == null || targetValue != null && targetValue.equals(sourceValue)) {
-        target.remove(property.getKey());
-      }
-    }
+    this.source = source;
+    this.target = target;
   }
 
   @Override
   public String toString() {
-    return MessageFormat.format("{0} parent, {1} type, adding {2} {3}, removing {4} {5}",
+    return MessageFormat.format("{0} parent, {1} type, adding {2} {3}, removing {4} {5}",
         getParentToMove().map(String::valueOf).orElse("same"),
         getTypeToSet().map(String::valueOf).orElse("same"),
-        propertiesToAdd, aspectsToAdd, propertiesToRemove, aspectsToRemove);
+        getPropertiesToAdd(), getAspectsToAdd(), getPropertiesToRemove(), getAspectsToRemove());
   }
 
   public boolean isEmpty() {
-    return parentToMove == null && typeToSet == null
-        && aspectsToRemove.isEmpty() && aspectsToAdd.isEmpty() && propertiesToRemove.isEmpty() && propertiesToAdd.isEmpty();
+    return !getParentToMove().isPresent() && !getTypeToSet().isPresent()
+        && source.getAspects().equals(target.getAspects()) && !hasChangedProperty();
+  }
+
+  private boolean hasChangedProperty() {
+    Set<QName> changedProperties = OverlayMap.getChangedKeys(source.getProperties(), target.getProperties());
+    boolean result;
+    if (changedProperties == null) {
+      result = source.getProperties().keySet().stream().anyMatch(this::isRemovedProperty)
+          || target.getProperties().keySet().stream().anyMatch(this::isAddedProperty);
+    } else {
+      result = changedProperties.stream().anyMatch(property -> isRemovedProperty(property) || isAddedProperty(property));
+    }
+    return result;
+  }
+
+  /**
+   * @return number of added and removed aspects matching the filter
+   */
+  public long countChangedAspects(final Predicate<QName> filter) {
+    long count = 0;
+    for (QName aspect : source.getAspects()) {
+      if (filter.test(aspect) && !target.getAspects().contains(aspect)) {
+        count++;
+      }
+    }
+    for (QName aspect : target.getAspects()) {
+      if (filter.test(aspect) && !source.getAspects().contains(aspect)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return number of added, updated and removed properties matching the filter
+   */
+  public long countChangedProperties(final Predicate<QName> filter) {
+    long count = 0;
+    // Copies of a same node only need to be compared on the properties that changed since they were copied
+    Set<QName> changedProperties = OverlayMap.getChangedKeys(source.getProperties(), target.getProperties());
+    if (changedProperties == null) {
+      for (QName property : source.getProperties().keySet()) {
+        if (filter.test(property) && isRemovedProperty(property)) {
+          count++;
+        }
+      }
+      for (QName property : target.getProperties().keySet()) {
+        if (filter.test(property) && isAddedProperty(property)) {
+          count++;
+        }
+      }
+    } else {
+      for (QName property : changedProperties) {
+        if (filter.test(property) && (isRemovedProperty(property) || isAddedProperty(property))) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  private void computeProperties() {
+    Set<QName> removed = new HashSet<>();
+    Map<QName, Serializable> added = new HashMap<>();
+    Consumer<QName> collector = property -> {
+      if (isRemovedProperty(property)) {
+        removed.add(property);
+      } else if (isAddedProperty(property)) {
+        added.put(property, target.getProperties().get(property));
+      }
+    };
+    Set<QName> changedProperties = OverlayMap.getChangedKeys(source.getProperties(), target.getProperties());
+    if (changedProperties == null) {
+      source.getProperties().keySet().forEach(collector);
+      target.getProperties().keySet().forEach(collector);
+    } else {
+      changedProperties.forEach(collector);
+    }
+    propertiesToRemove = removed;
+    propertiesToAdd = added;
+  }
+
+  private boolean isRemovedProperty(final QName property) {
+    return source.getProperties().containsKey(property) && !target.getProperties().containsKey(property);
+  }
+
+  private boolean isAddedProperty(final QName property) {
+    Map<QName, Serializable> sourceProperties = source.getProperties();
+    Map<QName, Serializable> targetProperties = target.getProperties();
+    return targetProperties.containsKey(property) && (!sourceProperties.containsKey(property)
+        || !isSameValue(sourceProperties.get(property), targetProperties.get(property)));
+  }
+
+  private static boolean isSameValue(@CheckForNull final Serializable sourceValue, @CheckForNull final Serializable targetValue) {
+    return targetValue == null && sourceValue == null || targetValue != null && targetValue.equals(sourceValue)
+        || sourceValue instanceof PropertyDigest && ((PropertyDigest) sourceValue).matches(targetValue);
   }
 
   public Optional<NodeRef> getParentToMove() {
-    return Optional.ofNullable(parentToMove);
+    return source.getParent().equals(target.getParent()) ? Optional.empty() : target.getParent();
   }
 
   public Optional<QName> getTypeToSet() {
-    return Optional.ofNullable(typeToSet);
+    return source.getType().equals(target.getType()) ? Optional.empty() : target.getType();
   }
 
   public Set<QName> getAspectsToAdd() {
+    if (aspectsToAdd == null) {
+      aspectsToAdd = new HashSet<>(target.getAspects());
+      aspectsToAdd.removeAll(source.getAspects());
+    }
     return aspectsToAdd;
   }
 
   public Set<QName> getAspectsToRemove() {
+    if (aspectsToRemove == null) {
+      aspectsToRemove = new HashSet<>(source.getAspects());
+      aspectsToRemove.removeAll(target.getAspects());
+    }
     return aspectsToRemove;
   }
 
   public Set<QName> getPropertiesToRemove() {
+    if (propertiesToRemove == null) {
+      computeProperties();
+    }
     return propertiesToRemove;
   }
 
   public Map<QName, Serializable> getPropertiesToAdd() {
+    if (propertiesToAdd == null) {
+      computeProperties();
+    }
     return propertiesToAdd;
   }
 }
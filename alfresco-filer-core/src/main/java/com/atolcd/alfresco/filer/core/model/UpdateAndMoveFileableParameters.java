@@ -10,6 +10,9 @@ public final class UpdateAndMoveFileableParameters {
   @Nullable
   private RepositoryNode resultingNode;
 
+  /**
+   * @return node before the request, see {@link com.atolcd.alfresco.filer.core.service.FilerUpdateService#updateAndMoveFileable}
+   */
   public RepositoryNode getInitialNode() {
     return initialNode;
   }
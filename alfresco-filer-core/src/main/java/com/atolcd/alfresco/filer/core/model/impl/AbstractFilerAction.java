@@ -2,6 +2,7 @@ package com.atolcd.alfresco.filer.core.model.impl;
 
 import java.util.Comparator;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -15,7 +16,9 @@ import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.service.FilerRegistry;
 import com.atolcd.alfresco.filer.core.service.FilerService;
 import com.atolcd.alfresco.filer.core.service.impl.FilerBuilder;
+import com.atolcd.alfresco.filer.core.service.impl.FilerPlan;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
 public abstract class AbstractFilerAction implements FilerAction, InitializingBean, BeanNameAware {
@@ -29,16 +32,47 @@ public abstract class AbstractFilerAction implements FilerAction, InitializingBe
   private FilerService filerService;
   @Nullable
   private String name;
+  @CheckForNull
+  private FilerPlan plan;
 
   @Override
   public void afterPropertiesSet() {
+    if (isRecorded()) {
+      FilerBuilder builder = FilerBuilder.record(filerService);
+      execute(builder);
+      plan = builder.getPlan();
+    }
     filerRegistry.registerAction(this);
   }
 
   @Override
   public final void execute(final RepositoryNode node) {
-    FilerBuilder builder = new FilerBuilder(filerService, node);
-    execute(builder);
+    if (plan == null) {
+      FilerBuilder builder = new FilerBuilder(filerService, node);
+      execute(builder);
+    } else {
+      plan.execute(node);
+    }
+  }
+
+  /**
+   * Only actions recorded into a plan know their folders without executing callbacks, the others prefetch nothing
+   */
+  @Override
+  public void prefetch(final RepositoryNode node) {
+    if (plan != null) {
+      plan.prefetch(node);
+    }
+  }
+
+  /**
+   * Record the filer tree of {@link #execute(FilerBuilder)} once when the action is registered, instead of building it for
+   * each node, see {@link FilerBuilder#record}.<br>
+   * Only trees that do not use the node outside of conditions, names and callbacks can be recorded, which excludes
+   * {@link #deny}.
+   */
+  protected boolean isRecorded() {
+    return false;
   }
 
   protected abstract void execute(FilerBuilder builder);
@@ -90,6 +124,10 @@ public abstract class AbstractFilerAction implements FilerAction, InitializingBe
     return Stream.of(name, getOrder()).map(String::valueOf).collect(Collectors.joining(", "));
   }
 
+  public Optional<FilerPlan> getPlan() {
+    return Optional.ofNullable(plan);
+  }
+
   public void setFilerRegistry(final FilerRegistry filerRegistry) {
     this.filerRegistry = filerRegistry;
   }
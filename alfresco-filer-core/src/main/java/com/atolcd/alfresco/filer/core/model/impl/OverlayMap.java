@@ -0,0 +1,359 @@
+package com.atolcd.alfresco.filer.core.model.impl;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * Map which can be copied in constant time: a copy shares the current entries of the copied map as an immutable layer, and
+ * each map then only keeps its own changes on top of it.<br>
+ * Maps sharing layers can be compared by only walking the entries changed since their common layer, see
+ * {@link #getChangedKeys}.
+ */
+public class OverlayMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+  private static final long serialVersionUID = -3187640391738218736L;
+
+  /**
+   * Layers are merged beyond this depth, so that lookups stay cheap
+   */
+  private static final int MAX_DEPTH = 4;
+
+  @CheckForNull
+  private Layer<K> base;
+  /**
+   * Changes made on top of the base layer, removed entries are marked with {@link Removed#ENTRY}
+   */
+  private Map<K, Object> changes = new LinkedHashMap<>();
+  private int size;
+
+  public OverlayMap() {
+    // Empty map
+  }
+
+  public OverlayMap(final Map<? extends K, ? extends V> map) {
+    this();
+    if (map instanceof OverlayMap) {
+      @SuppressWarnings("unchecked")
+      OverlayMap<K, V> other = (OverlayMap<K, V>) map;
+      base = other.freeze();
+      size = other.size;
+    } else {
+      putAll(map);
+    }
+  }
+
+  /**
+   * Turn current changes into a new layer, shared with copies of this map
+   */
+  @CheckForNull
+  private Layer<K> freeze() {
+    if (!changes.isEmpty()) {
+      base = base != null && base.depth >= MAX_DEPTH ? new Layer<>(null, base.flatten(changes)) : new Layer<>(base, changes);
+      changes = new LinkedHashMap<>();
+    }
+    return base;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return lookup(key) != Removed.ENTRY;
+  }
+
+  @Override
+  @CheckForNull
+  public V get(final Object key) {
+    return value(lookup(key));
+  }
+
+  /**
+   * @return the raw value, {@link Removed#ENTRY} if there is no entry for this key
+   */
+  @CheckForNull
+  private Object lookup(@Nullable final Object key) {
+    Object result;
+    if (changes.containsKey(key)) {
+      result = changes.get(key);
+    } else {
+      result = base == null ? Removed.ENTRY : base.lookup(key);
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  @CheckForNull
+  private V value(@CheckForNull final Object value) {
+    return value == Removed.ENTRY ? null : (V) value;
+  }
+
+  @Override
+  @CheckForNull
+  public V put(final K key, final V value) {
+    Object previous = lookup(key);
+    if (previous == Removed.ENTRY) {
+      size++;
+    }
+    changes.put(key, value);
+    return value(previous);
+  }
+
+  @Override
+  @CheckForNull
+  public V remove(final Object key) {
+    Object previous = lookup(key);
+    if (previous != Removed.ENTRY) {
+      removeImpl(key);
+    }
+    return value(previous);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void removeImpl(@Nullable final Object key) {
+    if (base == null || base.lookup(key) == Removed.ENTRY) {
+      changes.remove(key);
+    } else {
+      changes.put((K) key, Removed.ENTRY);
+    }
+    size--;
+  }
+
+  @Override
+  public void clear() {
+    base = null;
+    changes = new LinkedHashMap<>();
+    size = 0;
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    return new EntrySet();
+  }
+
+  /**
+   * @return keys whose entry may differ between both maps, or {@code null} if they do not share any layer, in which case
+   * all entries have to be compared
+   */
+  @CheckForNull
+  public static <K> Set<K> getChangedKeys(final Map<K, ?> source, final Map<K, ?> target) {
+    Set<K> result = null;
+    if (source instanceof OverlayMap && target instanceof OverlayMap) {
+      OverlayMap<K, ?> sourceMap = (OverlayMap<K, ?>) source;
+      OverlayMap<K, ?> targetMap = (OverlayMap<K, ?>) target;
+      Layer<K> common = sourceMap.getCommonLayer(targetMap);
+      if (common != null) {
+        result = new LinkedHashSet<>();
+        sourceMap.collectChangedKeys(common, result);
+        targetMap.collectChangedKeys(common, result);
+      }
+    }
+    return result;
+  }
+
+  @CheckForNull
+  private Layer<K> getCommonLayer(final OverlayMap<K, ?> other) {
+    Set<Layer<K>> layers = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Layer<K> layer = base; layer != null; layer = layer.parent) {
+      layers.add(layer);
+    }
+    Layer<K> result = other.base;
+    while (result != null && !layers.contains(result)) {
+      result = result.parent;
+    }
+    return result;
+  }
+
+  private void collectChangedKeys(final Layer<K> common, final Set<K> keys) {
+    keys.addAll(changes.keySet());
+    for (Layer<K> layer = base; layer != common && layer != null; layer = layer.parent) {
+      keys.addAll(layer.entries.keySet());
+    }
+  }
+
+  private enum Removed {
+    ENTRY
+  }
+
+  /**
+   * Immutable set of changes over a parent layer
+   */
+  private static final class Layer<K> implements Serializable {
+
+    private static final long serialVersionUID = 2937514823569741845L;
+
+    @CheckForNull
+    private final Layer<K> parent;
+    private final Map<K, Object> entries;
+    private final int depth;
+    @CheckForNull
+    private transient Map<K, Object> flattened;
+
+    Layer(@CheckForNull final Layer<K> parent, final Map<K, Object> entries) {
+      this.parent = parent;
+      this.entries = entries;
+      this.depth = parent == null ? 1 : parent.depth + 1;
+    }
+
+    @CheckForNull
+    Object lookup(@Nullable final Object key) {
+      Object result = Removed.ENTRY;
+      for (Layer<K> layer = this; layer != null; layer = layer.parent) {
+        if (layer.entries.containsKey(key)) {
+          result = layer.entries.get(key);
+          break;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return all entries of the layer and its parents, without removed entries. Computed once as the layer never changes.
+     */
+    Map<K, Object> flatten() {
+      if (flattened == null) {
+        // Apply layers from the root one, without flattening intermediate layers
+        Deque<Layer<K>> layers = new ArrayDeque<>();
+        for (Layer<K> layer = this; layer != null; layer = layer.parent) {
+          layers.push(layer);
+        }
+        Map<K, Object> result = new LinkedHashMap<>();
+        for (Layer<K> layer : layers) {
+          apply(result, layer.entries);
+        }
+        flattened = result;
+      }
+      return flattened;
+    }
+
+    Map<K, Object> flatten(final Map<K, Object> changes) {
+      Map<K, Object> result = new LinkedHashMap<>(flatten());
+      apply(result, changes);
+      return result;
+    }
+
+    private static <K> void apply(final Map<K, Object> target, final Map<K, Object> changes) {
+      for (Entry<K, Object> change : changes.entrySet()) {
+        if (change.getValue() == Removed.ENTRY) {
+          target.remove(change.getKey());
+        } else {
+          target.put(change.getKey(), change.getValue());
+        }
+      }
+    }
+  }
+
+  private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+      return new EntryIterator();
+    }
+  }
+
+  /**
+   * Iterate over base entries first, and then over entries added on top of the base layer.
+   * Values are looked up when reached, so that entries removed while iterating are skipped.
+   */
+  private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+    private final Map<K, Object> baseEntries;
+    private final Iterator<K> baseKeys;
+    private final Iterator<K> addedKeys;
+    @CheckForNull
+    private Entry<K, V> next;
+    @CheckForNull
+    private Entry<K, V> current;
+
+    EntryIterator() {
+      baseEntries = base == null ? Collections.emptyMap() : base.flatten();
+      baseKeys = baseEntries.keySet().iterator();
+      // Changes are usually few, copy their keys so that the map can be updated while iterating
+      addedKeys = new ArrayList<>(changes.keySet()).iterator();
+      next = advance();
+    }
+
+    @CheckForNull
+    private Entry<K, V> advance() {
+      Entry<K, V> result = null;
+      while (result == null && baseKeys.hasNext()) {
+        result = getEntry(baseKeys.next());
+      }
+      while (result == null && addedKeys.hasNext()) {
+        K key = addedKeys.next();
+        if (!baseEntries.containsKey(key)) {
+          result = getEntry(key);
+        }
+      }
+      return result;
+    }
+
+    @CheckForNull
+    private Entry<K, V> getEntry(final K key) {
+      Object value = lookup(key);
+      return value == Removed.ENTRY ? null : new OverlayEntry(key, value(value));
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Entry<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      current = next;
+      next = advance();
+      return current;
+    }
+
+    @Override
+    public void remove() {
+      if (current == null) {
+        throw new IllegalStateException();
+      }
+      OverlayMap.this.remove(current.getKey());
+      current = null;
+    }
+  }
+
+  private final class OverlayEntry extends SimpleEntry<K, V> {
+
+    private static final long serialVersionUID = 8213458129758391256L;
+
+    OverlayEntry(final K key, @CheckForNull final V value) {
+      super(key, value);
+    }
+
+    @Override
+    @CheckForNull
+    public V setValue(final V value) {
+      put(getKey(), value);
+      return super.setValue(value);
+    }
+  }
+}
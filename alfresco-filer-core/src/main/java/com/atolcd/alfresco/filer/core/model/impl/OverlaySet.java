@@ -0,0 +1,69 @@
+package com.atolcd.alfresco.filer.core.model.impl;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Set which can be copied in constant time, backed by an {@link OverlayMap}
+ */
+public class OverlaySet<E> extends AbstractSet<E> implements Serializable {
+
+  private static final long serialVersionUID = 5716283091437795013L;
+
+  private final OverlayMap<E, Boolean> map;
+
+  public OverlaySet() {
+    map = new OverlayMap<>();
+  }
+
+  public OverlaySet(final Collection<? extends E> collection) {
+    if (collection instanceof OverlaySet) {
+      @SuppressWarnings("unchecked")
+      OverlaySet<E> other = (OverlaySet<E>) collection;
+      map = new OverlayMap<>(other.map);
+    } else {
+      map = new OverlayMap<>();
+      addAll(collection);
+    }
+  }
+
+  /**
+   * @return backing map, e.g. to compute changed elements with {@link OverlayMap#getChangedKeys}
+   */
+  public Map<E, Boolean> getMap() {
+    return map;
+  }
+
+  @Override
+  public int size() {
+    return map.size();
+  }
+
+  @Override
+  public boolean contains(final Object element) {
+    return map.containsKey(element);
+  }
+
+  @Override
+  public boolean add(final E element) {
+    return map.put(element, Boolean.TRUE) == null;
+  }
+
+  @Override
+  public boolean remove(final Object element) {
+    return map.remove(element) != null;
+  }
+
+  @Override
+  public void clear() {
+    map.clear();
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return map.keySet().iterator();
+  }
+}
@@ -3,6 +3,7 @@ package com.atolcd.alfresco.filer.core.policy;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.alfresco.repo.dictionary.DictionaryDAO;
@@ -16,9 +17,9 @@ import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.namespace.QName;
 
-import com.atolcd.alfresco.filer.core.model.FilerEvent;
 import com.atolcd.alfresco.filer.core.model.InboundFilerEvent;
 import com.atolcd.alfresco.filer.core.model.UpdateFilerEvent;
+import com.atolcd.alfresco.filer.core.service.FilerEventDispatcher;
 import com.atolcd.alfresco.filer.core.service.FilerModelService;
 import com.atolcd.alfresco.filer.core.service.FilerService;
 import com.atolcd.alfresco.filer.core.service.impl.DictionaryListenerAspect;
@@ -32,14 +33,17 @@ public class FileableAspect extends DictionaryListenerAspect implements NodeServ
   private final PolicyComponent policyComponent;
   private final FilerModelService filerModelService;
   private final FilerService filerService;
+  private final FilerEventDispatcher filerEventDispatcher;
   private final NodeService nodeService;
 
   public FileableAspect(final DictionaryDAO dictionaryDAO, final PolicyComponent policyComponent,
-      final FilerModelService filerModelService, final FilerService filerService, final NodeService nodeService) {
+      final FilerModelService filerModelService, final FilerService filerService,
+      final FilerEventDispatcher filerEventDispatcher, final NodeService nodeService) {
     super(dictionaryDAO);
     this.policyComponent = policyComponent;
     this.filerModelService = filerModelService;
     this.filerService = filerService;
+    this.filerEventDispatcher = filerEventDispatcher;
     this.nodeService = nodeService;
   }
 
@@ -76,6 +80,7 @@ public class FileableAspect extends DictionaryListenerAspect implements NodeServ
   @Override
   public void onCreateNode(final ChildAssociationRef childAssocRef) {
     FilerTransactionUtils.putUpdateUser(childAssocRef.getChildRef(), AuthenticationUtil.getRunAsUser());
+    FilerTransactionUtils.putPlacedNode(childAssocRef.getChildRef());
   }
 
   @Override
@@ -90,7 +95,7 @@ public class FileableAspect extends DictionaryListenerAspect implements NodeServ
       return null;
     }, user);
 
-    executeAction(new InboundFilerEvent(nodeRef, false));
+    filerEventDispatcher.dispatch(nodeRef, () -> new InboundFilerEvent(nodeRef, false));
   }
 
   @Override
@@ -113,10 +118,12 @@ public class FileableAspect extends DictionaryListenerAspect implements NodeServ
   @Override
   public void onUpdateProperties(final NodeRef nodeRef,
       final Map<QName, Serializable> before, final Map<QName, Serializable> after) {
-    // Avoid getting triggered on initial node creation
-    if (!before.isEmpty()) {
-      UpdateFilerEvent event = new UpdateFilerEvent(nodeRef, after);
-      executeAction(event);
+    // Avoid getting triggered on initial node creation, nor when the inputs of the node are still the ones it was filed
+    // with: the event is dropped before any scope is loaded
+    if (!before.isEmpty() && !filerService.hasSameFingerprint(nodeRef, after)) {
+      // Copy properties as the event might only be created when the transaction commits
+      Map<QName, Serializable> properties = new HashMap<>(after);
+      filerEventDispatcher.dispatch(nodeRef, () -> new UpdateFilerEvent(nodeRef, properties));
     }
   }
 
@@ -124,23 +131,17 @@ public class FileableAspect extends DictionaryListenerAspect implements NodeServ
   public void onMoveNode(final ChildAssociationRef oldChildAssocRef, final ChildAssociationRef newChildAssocRef) {
     // In a try-catch just in case, so that old parent segment can be deleted
     try {
-      executeAction(new InboundFilerEvent(newChildAssocRef.getChildRef(), false));
+      NodeRef nodeRef = newChildAssocRef.getChildRef();
+      FilerTransactionUtils.putPlacedNode(nodeRef);
+      filerEventDispatcher.dispatch(nodeRef, () -> new InboundFilerEvent(nodeRef, false));
     } finally {
-      filerService.operations().deleteSegment(oldChildAssocRef.getParentRef());
+      filerService.operations().deleteSegmentOnCommit(oldChildAssocRef.getParentRef());
     }
   }
 
   @Override
   public void onDeleteNode(final ChildAssociationRef childAssocRef, final boolean isNodeArchived) {
     NodeRef parent = childAssocRef.getParentRef();
-    filerService.operations().deleteSegment(parent);
-  }
-
-  private void executeAction(final FilerEvent event) { //NOPMD UnusedPrivateMethod - False positive
-    String user = FilerTransactionUtils.getUpdateUser(event.getNode().getNodeRef().get());
-    AuthenticationUtil.runAs(() -> {
-      filerService.executeAction(event);
-      return null;
-    }, user);
+    filerService.operations().deleteSegmentOnCommit(parent);
   }
 }
@@ -1,16 +1,24 @@
 package com.atolcd.alfresco.filer.core.policy;
 
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+
+import org.alfresco.model.ContentModel;
 import org.alfresco.repo.dictionary.DictionaryDAO;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
 
 import com.atolcd.alfresco.filer.core.service.FilerModelService;
 import com.atolcd.alfresco.filer.core.service.impl.DictionaryListenerAspect;
+import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
 
-public class FilerSegmentAspect extends DictionaryListenerAspect implements NodeServicePolicies.OnAddAspectPolicy {
+public class FilerSegmentAspect extends DictionaryListenerAspect implements NodeServicePolicies.OnAddAspectPolicy,
+    NodeServicePolicies.OnUpdateNodePolicy, NodeServicePolicies.OnUpdatePropertiesPolicy, NodeServicePolicies.OnMoveNodePolicy {
 
   private final PolicyComponent policyComponent;
   private final FilerModelService filerModelService;
@@ -31,10 +39,45 @@ public class FilerSegmentAspect extends DictionaryListenerAspect implements Node
   public void init() {
     policyComponent.bindClassBehaviour(NodeServicePolicies.OnAddAspectPolicy.QNAME,
         getAspect(), new JavaBehaviour(this, "onAddAspect"));
+    policyComponent.bindClassBehaviour(NodeServicePolicies.OnUpdateNodePolicy.QNAME,
+        getAspect(), new JavaBehaviour(this, "onUpdateNode"));
+    policyComponent.bindClassBehaviour(NodeServicePolicies.OnUpdatePropertiesPolicy.QNAME,
+        getAspect(), new JavaBehaviour(this, "onUpdateProperties"));
+    policyComponent.bindClassBehaviour(NodeServicePolicies.OnMoveNodePolicy.QNAME,
+        getAspect(), new JavaBehaviour(this, "onMoveNode"));
   }
 
   @Override
   public void onAddAspect(final NodeRef nodeRef, final QName aspectTypeQName) {
+    FilerTransactionUtils.addWrittenFolder(nodeRef);
     filerModelService.setOwner(nodeRef);
   }
+
+  /**
+   * Keep track of the segments written by the current transaction (properties, aspects, property inheritance...), as their
+   * row stays locked until it ends
+   */
+  @Override
+  public void onUpdateNode(final NodeRef nodeRef) {
+    FilerTransactionUtils.addWrittenFolder(nodeRef);
+  }
+
+  /**
+   * Segment is not found under its previous name anymore, forget it from the folders resolved by the current transaction
+   */
+  @Override
+  public void onUpdateProperties(final NodeRef nodeRef, final Map<QName, Serializable> before,
+      final Map<QName, Serializable> after) {
+    if (!before.isEmpty() && !Objects.equals(before.get(ContentModel.PROP_NAME), after.get(ContentModel.PROP_NAME))) {
+      FilerTransactionUtils.removeFolder(nodeRef);
+    }
+  }
+
+  /**
+   * @see #onUpdateProperties
+   */
+  @Override
+  public void onMoveNode(final ChildAssociationRef oldChildAssocRef, final ChildAssociationRef newChildAssocRef) {
+    FilerTransactionUtils.removeFolder(newChildAssocRef.getChildRef());
+  }
 }
@@ -0,0 +1,20 @@
+package com.atolcd.alfresco.filer.core.service;
+
+import java.util.function.Supplier;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+
+import com.atolcd.alfresco.filer.core.model.FilerEvent;
+
+/**
+ * Service responsible for executing filer actions triggered by fileable nodes policies.
+ * Events may either be executed right away or gathered and executed as a single batch when the transaction commits.
+ */
+public interface FilerEventDispatcher {
+
+  /**
+   * Execute the filer action on the node identified by its {@link NodeRef}, as the user that updated the node
+   * @param event supplier of the event to execute, it is only called when the event is actually executed
+   */
+  void dispatch(NodeRef nodeRef, Supplier<FilerEvent> event);
+}
@@ -1,8 +1,13 @@
 package com.atolcd.alfresco.filer.core.service;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.Consumer;
 
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
 
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 
@@ -10,11 +15,51 @@ public interface FilerFolderService {
 
   void fetchFolder(RepositoryNode node, Consumer<NodeRef> onGet);
 
-  void fetchOrCreateFolder(RepositoryNode node, Consumer<NodeRef> onGet, Consumer<NodeRef> onCreate);
+  /**
+   * Fetch the folder or create it, along with the aspects and properties added by {@code onPrepare}, in a single write
+   */
+  void fetchOrCreateFolder(RepositoryNode node, Consumer<RepositoryNode> onPrepare, Consumer<NodeRef> onGet,
+      Consumer<NodeRef> onCreate);
 
   void updateFolder(RepositoryNode node, Consumer<NodeRef> onGet, Consumer<NodeRef> onCreate);
 
+  /**
+   * Get the folder previously resolved at the end of the path of folders from the root, provided that all folders of the
+   * path are still there
+   *
+   * @param path type and name of each folder, folders of other types are resolved separately
+   */
+  Optional<NodeRef> getResolvedFolder(NodeRef root, List<Pair<QName, String>> path);
+
+  /**
+   * Remember the folders resolved for each name of the path, once the transaction commits
+   */
+  void putResolvedFolder(NodeRef root, List<Pair<QName, String>> path, List<NodeRef> folders);
+
+  /**
+   * Look the existing folders of the path up without updating them, so that resolving them later in the transaction does
+   * not need to look them up again
+   */
+  void prefetchFolders(NodeRef root, List<String> path);
+
+  /**
+   * Get the first ancestors of the folder below the root, as long as they are named after the path: these are the folders
+   * the path would resolve to, found without looking children up by name. The folder must be at most {@code depth} levels
+   * below the root, otherwise no ancestor is returned.
+   */
+  List<NodeRef> getAncestorFolders(NodeRef root, NodeRef folder, int depth, List<String> path);
+
   void deleteFolder(NodeRef nodeRef);
 
+  /**
+   * Keep an empty folder instead of deleting it, by setting the date it became empty unless it is already set
+   */
+  void retainFolder(NodeRef nodeRef);
+
   void lockFolder(NodeRef nodeRef);
+
+  /**
+   * Lock all folders in a global order, so that concurrent transactions locking some of the same folders cannot deadlock
+   */
+  void lockFolders(Collection<NodeRef> nodeRefs);
 }
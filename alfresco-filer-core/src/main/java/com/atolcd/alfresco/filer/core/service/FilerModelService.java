@@ -13,6 +13,10 @@ public interface FilerModelService {
 
   QName getPropertyInheritanceAspect();
 
+  QName getSegmentEmptiedProperty();
+
+  QName getFileableFingerprintProperty();
+
   String getOwnerUsername();
 
   void setOwner(NodeRef nodeRef);
@@ -1,9 +1,13 @@
 package com.atolcd.alfresco.filer.core.service;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
 
 import com.atolcd.alfresco.filer.core.model.FilerAction;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
@@ -18,13 +22,83 @@ public interface FilerOperationService {
 
   void setSubscriber(NodeRef nodeRef);
 
+  void prepareFileable(RepositoryNode folder);
+
+  /**
+   * Complete the folder to create so that it is a segment, owned by the filer owner
+   */
+  void prepareSegment(RepositoryNode folder);
+
+  void prepareSubscriber(RepositoryNode folder);
+
+  /**
+   * Apply on an existing node the aspects and properties a folder would have been created with
+   */
+  void setTemplate(NodeRef nodeRef, Consumer<RepositoryNode> onPrepare);
+
+  /**
+   * Run a callback on the node unless it was already run on it with the same identifier, and neither the node properties
+   * nor its permissions have been modified since (i.e. the callback is idempotent)
+   */
+  void runIdempotent(NodeRef nodeRef, String callbackId, Consumer<NodeRef> callback);
+
   NodeRef getFolder(NodeRef parent, String name, Consumer<NodeRef> onGet);
 
-  NodeRef getOrCreateFolder(NodeRef parent, QName type, String name, Consumer<NodeRef> onGet, Consumer<NodeRef> onCreate);
+  NodeRef getOrCreateFolder(NodeRef parent, QName type, String name, Consumer<RepositoryNode> onPrepare,
+      Consumer<NodeRef> onGet, Consumer<NodeRef> onCreate);
+
+  /**
+   * @see FilerFolderService#getResolvedFolder
+   */
+  Optional<NodeRef> getResolvedFolder(NodeRef root, List<Pair<QName, String>> path);
+
+  void putResolvedFolder(NodeRef root, List<Pair<QName, String>> path, List<NodeRef> folders);
+
+  /**
+   * @see FilerFolderService#prefetchFolders
+   */
+  void prefetchFolders(NodeRef root, List<String> path);
+
+  /**
+   * @see FilerFolderService#getAncestorFolders
+   */
+  List<NodeRef> getAncestorFolders(NodeRef root, NodeRef folder, int depth, List<String> path);
+
+  /**
+   * @return properties of the node that changed since the transaction started updating it, or all its properties if it
+   *         was not updated
+   */
+  Set<QName> getUpdatedProperties(RepositoryNode node);
+
+  /**
+   * @return {@code true} if the node was created, moved or made fileable in its current parent by the current transaction,
+   *         i.e. if it is not filed from where it was filed before
+   */
+  boolean isPlacedNode(NodeRef nodeRef);
 
   void updateFileable(RepositoryNode node, NodeRef destination, String newName);
 
+  /**
+   * Run the resolution of several fileables, deferring their updates until all of them are resolved. The target and
+   * original segments of all fileables are then locked at once, in a global order, before any of them is moved.
+   */
+  void runWithDeferredUpdates(Runnable resolution);
+
   void updateFolder(RepositoryNode node, Consumer<NodeRef> onGet, Consumer<NodeRef> onCreate);
 
   void deleteSegment(NodeRef nodeRef);
+
+  /**
+   * Delete the segment if it is empty, as well as its parent segments recursively, when the transaction commits.
+   * Multiple requests on the same segment within a transaction are only performed once.
+   */
+  void deleteSegmentOnCommit(NodeRef nodeRef);
+
+  /**
+   * Delete segments anywhere in the repository that have been kept empty longer than their retention period
+   *
+   * @param maxSegments maximum number of segments looked up, so that a single transaction does not delete too many of them
+   * @return the number of segments that were deleted, less than {@code maxSegments} if there might be no other one to purge
+   */
+  int purgeSegments(int maxSegments);
 }
@@ -1,8 +1,11 @@
 package com.atolcd.alfresco.filer.core.service;
 
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 
+import org.alfresco.service.namespace.QName;
+
 import com.atolcd.alfresco.filer.core.model.FilerAction;
 import com.atolcd.alfresco.filer.core.scope.FilerScopeLoader;
 
@@ -23,6 +26,17 @@ public interface FilerRegistry {
    */
   SortedSet<FilerAction> getActions();
 
+  /**
+   * Get the properties all registered actions depend on, provided that each of them declares its own
+   * @see FilerAction#getInputProperties()
+   */
+  Optional<Set<QName>> getInputProperties();
+
+  /**
+   * Get the names and versions of the registered actions
+   */
+  String getSignature();
+
   /**
    * Get loaders to initialize the node scope
    */
@@ -1,6 +1,10 @@
 package com.atolcd.alfresco.filer.core.service;
 
+import java.io.Serializable;
+import java.util.Map;
+
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
 
 import com.atolcd.alfresco.filer.core.model.FilerEvent;
 
@@ -21,6 +25,17 @@ public interface FilerService {
    */
   boolean resolveFileable(FilerEvent event);
 
+  /**
+   * Check whether the properties of a fileable node still match the fingerprint it was last filed with, in which case
+   * filing it again would not change anything
+   */
+  boolean hasSameFingerprint(NodeRef nodeRef, Map<QName, Serializable> properties);
+
+  /**
+   * Remove the fingerprint of a fileable node, so that its next update files it again whatever its properties
+   */
+  void resetFingerprint(NodeRef nodeRef);
+
   FilerOperationService operations();
 
   PropertyInheritanceService propertyInheritance();
@@ -0,0 +1,51 @@
+package com.atolcd.alfresco.filer.core.service;
+
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Service gathering counters, value distributions and histograms about filer operations, e.g. batch sizes, timings or
+ * avoided writes
+ */
+public interface FilerStatisticsService {
+
+  /**
+   * Increment the counter identified by its name
+   */
+  void increment(String counter);
+
+  /**
+   * Add the given amount to the counter identified by its name
+   */
+  void add(String counter, long amount);
+
+  /**
+   * Record a value (size, duration in milliseconds...) in the distribution identified by its name
+   */
+  void record(String distribution, long value);
+
+  /**
+   * Record a value in the histogram identified by its name, counting values by power of two buckets
+   */
+  void recordHistogram(String histogram, long value);
+
+  long getCount(String counter);
+
+  /**
+   * Get a snapshot of the distribution identified by its name, empty if no value has been recorded yet
+   */
+  LongSummaryStatistics getDistribution(String distribution);
+
+  /**
+   * Get a snapshot of the histogram identified by its name: number of recorded values by bucket upper bound (inclusive)
+   */
+  SortedMap<Long, Long> getHistogram(String histogram);
+
+  /**
+   * Get a snapshot of all counters
+   */
+  Map<String, Long> getCounters();
+
+  void reset();
+}
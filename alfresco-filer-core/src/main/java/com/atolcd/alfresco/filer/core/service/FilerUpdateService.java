@@ -11,7 +11,9 @@ public interface FilerUpdateService {
    * Update and move node according to the filer operation result.
    * Node was first present with the state of initialNode and may have been updated to the state of originalNode before
    * filer operation
-   * @param initialNode node at the beginning, before the request
+   * @param initialNode node at the beginning, before the request. If {@code filer.snapshot.digestThreshold} is set, it is a
+   * compact snapshot: ignored properties are left out and large text values are replaced by a
+   * {@link com.atolcd.alfresco.filer.core.model.PropertyDigest}
    * @param originalNode node before applying filer
    * @param resultingNode node after applying filer
    */
@@ -1,6 +1,11 @@
 package com.atolcd.alfresco.filer.core.service;
 
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
 
 import com.atolcd.alfresco.filer.core.model.PropertyInheritance;
 import com.atolcd.alfresco.filer.core.model.PropertyInheritancePayload;
@@ -25,6 +30,12 @@ public interface PropertyInheritanceService {
    */
   void setProperties(NodeRef nodeRef, RepositoryNode payload, PropertyInheritance inheritance);
 
+  /**
+   * Retrieve the properties of the {@code payload} that the {@link PropertyInheritance} definition applies,
+   * e.g. to set them on a node at creation time
+   */
+  Map<QName, Serializable> getProperties(RepositoryNode payload, PropertyInheritance inheritance);
+
   /**
    * Generate the {@link PropertyInheritancePayload} based on the {@link RepositoryNodeDifference} which is needed to
    * know which aspects and properties are to be added or removed on the children recursively
@@ -36,4 +47,9 @@ public interface PropertyInheritanceService {
    * content to know which aspects and properties to add or remove
    */
   void setInheritance(NodeRef root, PropertyInheritancePayload payload);
+
+  /**
+   * Retrieve the properties of all the aspects that are inherited by children
+   */
+  Set<QName> getInheritedProperties();
 }
@@ -1,33 +1,63 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
+import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 import org.alfresco.service.cmr.repository.NodeRef;
 
+import com.atolcd.alfresco.filer.core.model.FilerException;
+import com.atolcd.alfresco.filer.core.model.FilerFolderContext;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.service.FilerService;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
 public class FilerBuilder {
 
   private final FilerService filerService;
+  private final FilerPlan.Target target;
+  @CheckForNull
   private final RepositoryNode node;
 
-  public FilerBuilder(final FilerService filerService, final RepositoryNode node) {
+  private FilerBuilder(final FilerService filerService, final FilerPlan.Target target, @CheckForNull final RepositoryNode node) {
     this.filerService = filerService;
+    this.target = target;
     this.node = node;
   }
 
+  public FilerBuilder(final FilerService filerService, final RepositoryNode node) {
+    this(filerService, FilerPlan.Target.running(filerService), node);
+  }
+
+  /**
+   * Record the filer tree into a plan instead of running it on a node, see {@link #getPlan()}.<br>
+   * Conditions, names and callbacks are evaluated when the plan is executed. The tree must be a single chain of levels
+   * and must not depend on the node otherwise, e.g. through {@link #getNode()}.
+   */
+  public static FilerBuilder record(final FilerService filerService) {
+    return new FilerBuilder(filerService, FilerPlan.Target.recording(filerService), null);
+  }
+
   public FilerFolderBuilder root(final NodeRef nodeRef) {
-    return new FilerFolderBuilder(filerService, node, nodeRef);
+    return root(x -> nodeRef);
   }
 
   public FilerFolderBuilder root(final Function<RepositoryNode, NodeRef> nodeRefExtractor) {
-    return root(nodeRefExtractor.apply(node));
+    FilerFolderBuilder result;
+    if (target.isRecording()) {
+      target.setRoot(nodeRefExtractor);
+      result = new FilerFolderBuilder(filerService, target, null);
+    } else {
+      RepositoryNode repositoryNode = getNode();
+      result = new FilerFolderBuilder(filerService, target,
+          new FilerFolderContext(repositoryNode, nodeRefExtractor.apply(repositoryNode)));
+    }
+    return result;
   }
 
   public FilerFolderBuilder root(final Supplier<NodeRef> nodeRefSupplier) {
-    return root(nodeRefSupplier.get());
+    return root(x -> nodeRefSupplier.get());
   }
 
   public FilerFolderBuilder tree(final Function<FilerBuilder, FilerFolderBuilder> builder) {
@@ -38,7 +68,18 @@ public class FilerBuilder {
     return builder.apply(this);
   }
 
+  /**
+   * @throws FilerException if the tree is recorded, as there is no node yet
+   */
   public RepositoryNode getNode() {
-    return node;
+    return Optional.ofNullable(node)
+        .orElseThrow(() -> new FilerException("Node is only known when the recorded plan is executed"));
+  }
+
+  /**
+   * @return plan recorded so far, see {@link #record}
+   */
+  public FilerPlan getPlan() {
+    return target.toPlan();
   }
 }
@@ -0,0 +1,300 @@
+package com.atolcd.alfresco.filer.core.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.atolcd.alfresco.filer.core.model.FilerEvent;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerEventDispatcher;
+import com.atolcd.alfresco.filer.core.service.FilerService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.util.FilerRetryUtils;
+import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+public class FilerEventDispatcherImpl implements FilerEventDispatcher {
+
+  public static final String BATCH_SIZE = "dispatcher.batch.size";
+  public static final String BATCH_TIME = "dispatcher.batch.time";
+  public static final String ISOLATED_ATTEMPTS = "dispatcher.isolated.attempts";
+  public static final String ISOLATED_REPLAY = "dispatcher.isolated.replay";
+  public static final String ISOLATED_FAILURE = "dispatcher.isolated.failure";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FilerEventDispatcherImpl.class);
+  private static final Class<?> TRANSACTION_BATCH_KEY = FilerEventDispatcher.class;
+  private static final Class<?> TRANSACTION_ISOLATED_KEY = IsolatedTransactionListener.class;
+  private static final Class<?> TRANSACTION_ISOLATED_EXECUTION_KEY = DispatchedEvent.class;
+
+  @Nullable
+  private FilerService filerService;
+  @Nullable
+  private FilerStatisticsService filerStatisticsService;
+  @Nullable
+  private NodeService nodeService;
+  @Nullable
+  private TransactionService transactionService;
+  private boolean batch;
+  private boolean isolated;
+
+  @Override
+  public void dispatch(final NodeRef nodeRef, final Supplier<FilerEvent> event) {
+    String user = FilerTransactionUtils.getUpdateUser(nodeRef);
+    if (isExecutingIsolated()) {
+      // Updates made by the filer itself in an isolated transaction are not dispatched to yet another one, nodes are filed
+      LOGGER.debug("Ignoring filer event dispatched while executing isolated events: {}", nodeRef);
+    } else if (isolated) {
+      DispatchedEvent dispatchedEvent = new DispatchedEvent(nodeRef, user, event);
+      // Keep node state from before the update, it is not available in the filer transaction
+      dispatchedEvent.initialNode = FilerTransactionUtils.getInitialNode(nodeRef);
+      getIsolatedEvents().add(dispatchedEvent);
+    } else if (batch) {
+      getBatch().add(new DispatchedEvent(nodeRef, user, event));
+    } else {
+      execute(user, event.get());
+    }
+  }
+
+  private static boolean isExecutingIsolated() {
+    return AlfrescoTransactionSupport.getResource(TRANSACTION_ISOLATED_EXECUTION_KEY) != null;
+  }
+
+  private List<DispatchedEvent> getIsolatedEvents() {
+    List<DispatchedEvent> events = AlfrescoTransactionSupport.getResource(TRANSACTION_ISOLATED_KEY);
+    if (events == null) {
+      events = new ArrayList<>();
+      AlfrescoTransactionSupport.bindResource(TRANSACTION_ISOLATED_KEY, events);
+      AlfrescoTransactionSupport.bindListener(new IsolatedTransactionListener(events));
+    }
+    return events;
+  }
+
+  private void executeIsolated(final List<DispatchedEvent> events) {
+    if (batch) {
+      executeInTransaction(events);
+    } else {
+      for (DispatchedEvent event : events) {
+        executeInTransaction(Collections.singletonList(event));
+      }
+    }
+  }
+
+  /**
+   * Execute events in their own transaction, so that contention retries only replay the filer actions and not the work of
+   * the transaction that triggered them
+   */
+  private void executeInTransaction(final List<DispatchedEvent> events) {
+    AtomicInteger attempts = new AtomicInteger();
+    try {
+      // Retries reuse what previous attempts already resolved
+      FilerRetryUtils.runWithMemo(() -> transactionService.getRetryingTransactionHelper().doInTransaction(() -> {
+        if (attempts.getAndIncrement() > 0) {
+          filerStatisticsService.increment(ISOLATED_REPLAY);
+        }
+        AlfrescoTransactionSupport.bindResource(TRANSACTION_ISOLATED_EXECUTION_KEY, Boolean.TRUE);
+        executeIsolatedImpl(events);
+        return null;
+      }, false, true));
+    } catch (RuntimeException e) { // NOPMD - triggering transaction is already committed, nodes are left where they are
+      filerStatisticsService.increment(ISOLATED_FAILURE);
+      LOGGER.error("Could not execute filer event(s) after commit on nodes: {}", getNodeRefs(events), e);
+      resetFingerprints(events);
+    }
+    filerStatisticsService.record(ISOLATED_ATTEMPTS, attempts.get());
+  }
+
+  /**
+   * Nodes left unfiled may still match the fingerprint they were last filed with, e.g. after a move: remove it so that their
+   * next update files them again
+   */
+  private void resetFingerprints(final List<DispatchedEvent> events) {
+    try {
+      transactionService.getRetryingTransactionHelper().doInTransaction(() -> {
+        AuthenticationUtil.runAsSystem(() -> {
+          events.forEach(event -> filerService.resetFingerprint(event.nodeRef));
+          return null;
+        });
+        return null;
+      }, false, true);
+    } catch (RuntimeException e) { // NOPMD - for logging purposes
+      LOGGER.error("Could not reset fingerprint of nodes: {}", getNodeRefs(events), e);
+    }
+  }
+
+  private void executeIsolatedImpl(final List<DispatchedEvent> events) {
+    List<DispatchedEvent> existingEvents = new ArrayList<>();
+    AuthenticationUtil.runAsSystem(() -> {
+      // Nodes could have been deleted since the triggering transaction committed
+      for (DispatchedEvent event : events) {
+        if (nodeService.exists(event.nodeRef)) {
+          if (event.initialNode != null) {
+            FilerTransactionUtils.putInitialNode(event.nodeRef, event.initialNode);
+          }
+          existingEvents.add(event);
+        }
+      }
+      return null;
+    });
+    if (batch) {
+      executeBatch(existingEvents);
+    } else {
+      for (DispatchedEvent event : existingEvents) {
+        execute(event.user, event.event.get());
+      }
+    }
+  }
+
+  private static List<NodeRef> getNodeRefs(final List<DispatchedEvent> events) {
+    return events.stream().map(event -> event.nodeRef).collect(Collectors.toList());
+  }
+
+  private List<DispatchedEvent> getBatch() {
+    List<DispatchedEvent> events = getBoundBatch();
+    if (events == null) {
+      events = new ArrayList<>();
+      AlfrescoTransactionSupport.bindResource(TRANSACTION_BATCH_KEY, events);
+      // Use a new listener for each batch, as a listener that has already been called before commit is not called again
+      AlfrescoTransactionSupport.bindListener(new BatchTransactionListener());
+    }
+    return events;
+  }
+
+  @CheckForNull
+  private static List<DispatchedEvent> getBoundBatch() {
+    return AlfrescoTransactionSupport.getResource(TRANSACTION_BATCH_KEY);
+  }
+
+  private void executeBoundBatch() {
+    List<DispatchedEvent> events = getBoundBatch();
+    // Unbind batch first, so that events dispatched while executing this one are gathered in a new batch
+    AlfrescoTransactionSupport.unbindResource(TRANSACTION_BATCH_KEY);
+    if (events != null && !events.isEmpty()) {
+      executeBatch(events);
+    }
+  }
+
+  private void executeBatch(final List<DispatchedEvent> events) {
+    long start = System.nanoTime();
+    // Process nodes sharing the same current parent together, as they are likely to be filed in the same segments, which are
+    // then found in the folders resolved by the transaction
+    AuthenticationUtil.runAsSystem(() -> {
+      events.forEach(event -> event.parent = getPrimaryParentId(event.nodeRef));
+      return null;
+    });
+    events.sort(Comparator.comparing((DispatchedEvent event) -> event.parent)
+        .thenComparing(event -> event.nodeRef.getId()));
+    // Resolve the destinations of all nodes first, so that all their segments are locked at once in a global order before
+    // any node is moved, instead of each node locking its own segments in turn
+    filerService.operations().runWithDeferredUpdates(() -> {
+      for (DispatchedEvent event : events) {
+        execute(event.user, event.event.get());
+      }
+    });
+    long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    filerStatisticsService.record(BATCH_SIZE, events.size());
+    filerStatisticsService.record(BATCH_TIME, time);
+    LOGGER.debug("Executed batch of {} filer event(s) in {} ms", events.size(), time);
+  }
+
+  private String getPrimaryParentId(final NodeRef nodeRef) {
+    String result = "";
+    // Node could have been deleted before commit
+    if (nodeService.exists(nodeRef)) {
+      ChildAssociationRef parentAssoc = nodeService.getPrimaryParent(nodeRef);
+      if (parentAssoc.getParentRef() != null) {
+        result = parentAssoc.getParentRef().getId();
+      }
+    }
+    return result;
+  }
+
+  private void execute(final String user, final FilerEvent event) {
+    AuthenticationUtil.runAs(() -> {
+      filerService.executeAction(event);
+      return null;
+    }, user);
+  }
+
+  public void setFilerService(final FilerService filerService) {
+    this.filerService = filerService;
+  }
+
+  public void setFilerStatisticsService(final FilerStatisticsService filerStatisticsService) {
+    this.filerStatisticsService = filerStatisticsService;
+  }
+
+  public void setNodeService(final NodeService nodeService) {
+    this.nodeService = nodeService;
+  }
+
+  public void setTransactionService(final TransactionService transactionService) {
+    this.transactionService = transactionService;
+  }
+
+  public void setBatch(final boolean batch) {
+    this.batch = batch;
+  }
+
+  /**
+   * @param isolated {@code true} to execute events after the triggering transaction commits, in their own transaction. This is
+   * not atomic: if the filer keeps failing, nodes stay where the triggering transaction left them, until their next update
+   */
+  public void setIsolated(final boolean isolated) {
+    this.isolated = isolated;
+  }
+
+  private final class BatchTransactionListener extends TransactionListenerAdapter {
+
+    @Override
+    public void beforeCommit(final boolean readOnly) {
+      executeBoundBatch();
+    }
+  }
+
+  private final class IsolatedTransactionListener extends TransactionListenerAdapter {
+
+    private final List<DispatchedEvent> events;
+
+    IsolatedTransactionListener(final List<DispatchedEvent> events) {
+      this.events = events;
+    }
+
+    @Override
+    public void afterCommit() {
+      executeIsolated(events);
+    }
+  }
+
+  private static final class DispatchedEvent {
+
+    private final NodeRef nodeRef;
+    private final String user;
+    private final Supplier<FilerEvent> event;
+    private String parent = "";
+    @CheckForNull
+    private RepositoryNode initialNode;
+
+    DispatchedEvent(final NodeRef nodeRef, final String user, final Supplier<FilerEvent> event) {
+      this.nodeRef = nodeRef;
+      this.user = user;
+      this.event = event;
+    }
+  }
+}
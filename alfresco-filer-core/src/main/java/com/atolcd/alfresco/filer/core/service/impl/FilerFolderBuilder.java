@@ -19,37 +19,48 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 public class FilerFolderBuilder {
 
   private final FilerService filerService;
+  private final FilerPlan.Target target;
 
+  /**
+   * Context of the node, unknown while the tree is recorded
+   */
+  @CheckForNull
   private final FilerFolderContext context;
 
   @CheckForNull
   private FilerNameBuilder<FilerFolderBuilder> nodeNameBuilder;
 
-  private FilerFolderBuilder(final FilerService filerService, final FilerFolderContext context) {
+  FilerFolderBuilder(final FilerService filerService, final FilerPlan.Target target,
+      @CheckForNull final FilerFolderContext context) {
     this.filerService = filerService;
+    this.target = target;
     this.context = context;
   }
 
   public FilerFolderBuilder(final FilerService filerService, final RepositoryNode node, final NodeRef parent) {
-    this(filerService, new FilerFolderContext(node, parent));
+    this(filerService, FilerPlan.Target.running(filerService), new FilerFolderContext(node, parent));
   }
 
   public FilerFolderBuilder(final FilerService filerService, final FilerFolderContext context, final NodeRef parent) {
-    this(filerService, new FilerFolderContext(context, parent));
+    this(filerService, FilerPlan.Target.running(filerService), new FilerFolderContext(context, parent));
   }
 
   public FilerFolderBuilder condition(final Predicate<RepositoryNode> condition) {
-    context.enable(condition.test(context.getNode()));
-    nodeNameBuilder = null; // NOPMD - reset value
-    return this;
+    return condition(new FilerPlan.Condition(FilerPlan.Condition.Kind.TEST, condition));
   }
 
   public FilerFolderBuilder conditionReverse() {
-    return condition(x -> !context.isEnabled());
+    return condition(new FilerPlan.Condition(FilerPlan.Condition.Kind.REVERSE, null));
   }
 
   public FilerFolderBuilder conditionEnd() {
-    return condition(x -> true);
+    return condition(new FilerPlan.Condition(FilerPlan.Condition.Kind.END, null));
+  }
+
+  private FilerFolderBuilder condition(final FilerPlan.Condition condition) {
+    target.accept(condition, context);
+    nodeNameBuilder = null; // NOPMD - reset value
+    return this;
   }
 
   public FilerFolderTypeBuilder with(final Function<FilerFolderBuilder, FilerFolderTypeBuilder> builder) {
@@ -61,7 +72,7 @@ public class FilerFolderBuilder {
   }
 
   public FilerFolderTypeBuilder folder(final QName type) {
-    return new FilerFolderTypeBuilder(filerService, context, type);
+    return new FilerFolderTypeBuilder(filerService, target, context, type);
   }
 
   public FilerFolderTypeBuilder folder() {
@@ -69,26 +80,27 @@ public class FilerFolderBuilder {
   }
 
   public FilerNameBuilder<FilerFolderBuilder> rename() {
-    nodeNameBuilder = Optional.ofNullable(nodeNameBuilder).orElseGet(() -> new FilerNameBuilder<>(this, context));
+    nodeNameBuilder = Optional.ofNullable(nodeNameBuilder).orElseGet(() -> new FilerNameBuilder<>(this));
     return nodeNameBuilder;
   }
 
+  /**
+   * Move the node to the current level, with its own name unless it is renamed
+   */
   public void updateAndMove() {
-    if (context.isEnabled()) {
-      String name = rename().getName().orElseGet(() -> context.getNode().getName()
-          .orElseThrow(() -> new FilerException("Could not compute the name of the node: " + context.getNode())));
-      filerService.operations().updateFileable(context.getNode(), context.getParent(), name);
-    }
+    target.accept(new FilerPlan.Level(rename()), context);
   }
 
   public FilerFolderBuilder contextFrom(final Consumer<FilerFolderContext> withContext) {
-    if (context.isEnabled()) {
-      withContext.accept(context);
-    }
+    target.accept(new FilerPlan.ContextCallback(withContext), context);
     return this;
   }
 
+  /**
+   * @throws FilerException if the tree is recorded, as there is no node yet
+   */
   public FilerFolderContext getContext() {
-    return context;
+    return Optional.ofNullable(context)
+        .orElseThrow(() -> new FilerException("Filer context is only known when the recorded plan is executed"));
   }
 }
@@ -1,37 +1,92 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.Pair;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
 import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
 
 import com.atolcd.alfresco.filer.core.model.FilerException;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.service.FilerFolderService;
 import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
 import com.atolcd.alfresco.filer.core.util.FilerNodeUtils;
+import com.atolcd.alfresco.filer.core.util.FilerRetryUtils;
+import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 
 public class FilerFolderServiceImpl implements FilerFolderService {
 
+  public static final String FOLDER_LOCK = "folder.lock";
+  public static final String FOLDER_LOCK_REUSED = "folder.lock.reused";
+  public static final String FOLDER_LOCK_DEADLOCK = "folder.lock.deadlock";
+  public static final String FOLDER_LOCK_FAILURE = "folder.lock.failure";
+  public static final String FOLDER_CACHE_HIT = "folder.cache.hit";
+  public static final String FOLDER_RETAINED = "folder.retained";
+  public static final String FOLDER_REUSED = "folder.reused";
+  public static final String FOLDER_LOCK_HOLD = "folder.lock.hold";
+  public static final String FOLDER_EAGER_CREATION = "folder.eager.creation";
+  public static final String FOLDER_EAGER_FALLBACK = "folder.eager.fallback";
+  public static final String FOLDER_MEMO_HIT = "folder.memo.hit";
+  public static final String FOLDER_DESTINATION_HIT = "folder.destination.hit";
+  public static final String FOLDER_DESTINATION_MISS = "folder.destination.miss";
+  public static final String FOLDER_ANCESTOR_REUSED = "folder.ancestor.reused";
+  public static final String FOLDER_PREFETCHED = "folder.prefetched";
+
+  private static final Class<?> TRANSACTION_LOCK_HOLD_KEY = LockHoldTransactionListener.class;
+  private static final Class<?> TRANSACTION_DESTINATION_KEY = DestinationTransactionListener.class;
+
   private final FilerModelService filerModelService;
+  private final FilerStatisticsService filerStatisticsService;
   private final NodeService nodeService;
   private final NodeDAO nodeDAO;
+  private final TransactionService transactionService;
 
-  public FilerFolderServiceImpl(final FilerModelService filerModelService, final NodeService nodeService, final NodeDAO nodeDAO) {
+  private boolean eagerCreation;
+  private long segmentRetention;
+  private boolean destinationCacheEnabled = true;
+  @CheckForNull
+  private SimpleCache<Pair<NodeRef, List<Pair<QName, String>>>, List<NodeRef>> destinationCache;
+
+  public FilerFolderServiceImpl(final FilerModelService filerModelService, final FilerStatisticsService filerStatisticsService,
+      final NodeService nodeService, final NodeDAO nodeDAO, final TransactionService transactionService) {
     this.filerModelService = filerModelService;
+    this.filerStatisticsService = filerStatisticsService;
     this.nodeService = nodeService;
     this.nodeDAO = nodeDAO;
+    this.transactionService = transactionService;
   }
 
   @Override
@@ -43,8 +98,9 @@ public class FilerFolderServiceImpl implements FilerFolderService {
   }
 
   @Override
-  public void fetchOrCreateFolder(final RepositoryNode node, final Consumer<NodeRef> onGet, final Consumer<NodeRef> onCreate) {
-    fetchOrCreateFolderImpl(node, onGet, onCreate);
+  public void fetchOrCreateFolder(final RepositoryNode node, final Consumer<RepositoryNode> onPrepare,
+      final Consumer<NodeRef> onGet, final Consumer<NodeRef> onCreate) {
+    fetchOrCreateFolderImpl(node, onGet, onPrepare.andThen(folder -> doCreateFolder(folder, onCreate)));
   }
 
   @Override
@@ -56,21 +112,191 @@ public class FilerFolderServiceImpl implements FilerFolderService {
     }
   }
 
+  @Override
+  public Optional<NodeRef> getResolvedFolder(final NodeRef root, final List<Pair<QName, String>> path) {
+    NodeRef result = null;
+    if (isDestinationCacheEnabled()) {
+      Pair<NodeRef, List<Pair<QName, String>>> key = new Pair<>(root, path);
+      List<NodeRef> folders = destinationCache.get(key);
+      if (folders != null && isFolderPath(root, path, folders)) {
+        result = folders.get(folders.size() - 1);
+        // Other folders of the path contain the next one, so only the last one may have been kept while empty
+        reuseFolder(result);
+        filerStatisticsService.increment(FOLDER_DESTINATION_HIT);
+      } else {
+        if (folders != null) {
+          destinationCache.remove(key);
+        }
+        filerStatisticsService.increment(FOLDER_DESTINATION_MISS);
+      }
+    }
+    return Optional.ofNullable(result);
+  }
+
+  /**
+   * Check each folder against the node cache, which is cheaper than looking children up by name
+   */
+  private boolean isFolderPath(final NodeRef root, final List<Pair<QName, String>> path, final List<NodeRef> folders) {
+    boolean result = folders.size() == path.size();
+    NodeRef parent = root;
+    for (int i = 0; i < folders.size() && result; i++) {
+      result = isFolder(folders.get(i), parent, path.get(i).getSecond());
+      parent = folders.get(i);
+    }
+    return result;
+  }
+
+  @Override
+  public void putResolvedFolder(final NodeRef root, final List<Pair<QName, String>> path, final List<NodeRef> folders) {
+    if (isDestinationCacheEnabled()) {
+      // Folders created by the current transaction are only shared once they are committed
+      getResolvedFolders().put(new Pair<>(root, new ArrayList<>(path)), new ArrayList<>(folders));
+    }
+  }
+
+  @Override
+  public void prefetchFolders(final NodeRef root, final List<String> path) {
+    int count = 0;
+    NodeRef parent = root;
+    while (parent != null && count < path.size()) {
+      String name = path.get(count);
+      // Same lookup as when the folder is fetched, but without reusing it nor calling back
+      NodeRef nodeRef = getTransactionFolder(parent, name);
+      if (nodeRef == null) {
+        nodeRef = getCommittedFolder(parent, name);
+        if (nodeRef != null) {
+          FilerTransactionUtils.putFolder(parent, name, nodeRef);
+        }
+      }
+      if (nodeRef != null) {
+        count++;
+      }
+      parent = nodeRef;
+    }
+    filerStatisticsService.add(FOLDER_PREFETCHED, count);
+  }
+
+  @Override
+  public List<NodeRef> getAncestorFolders(final NodeRef root, final NodeRef folder, final int depth, final List<String> path) {
+    Deque<NodeRef> ancestors = new ArrayDeque<>();
+    NodeRef current = folder;
+    while (current != null && !root.equals(current) && ancestors.size() < depth) {
+      ancestors.push(current);
+      ChildAssociationRef parent = nodeService.getPrimaryParent(current);
+      current = parent == null ? null : parent.getParentRef();
+    }
+    List<NodeRef> result = new ArrayList<>();
+    if (root.equals(current)) {
+      // Ancestors are checked from the root, against the node cache
+      Iterator<NodeRef> iterator = ancestors.iterator();
+      boolean matching = true;
+      while (matching && iterator.hasNext() && result.size() < path.size()) {
+        NodeRef ancestor = iterator.next();
+        matching = path.get(result.size()).equals(nodeService.getProperty(ancestor, ContentModel.PROP_NAME));
+        if (matching) {
+          result.add(ancestor);
+        }
+      }
+      filerStatisticsService.add(FOLDER_ANCESTOR_REUSED, result.size());
+    }
+    return result;
+  }
+
+  private boolean isDestinationCacheEnabled() {
+    return destinationCacheEnabled && destinationCache != null;
+  }
+
+  private Map<Pair<NodeRef, List<Pair<QName, String>>>, List<NodeRef>> getResolvedFolders() {
+    Map<Pair<NodeRef, List<Pair<QName, String>>>, List<NodeRef>> resolved =
+        AlfrescoTransactionSupport.getResource(TRANSACTION_DESTINATION_KEY);
+    if (resolved == null) {
+      resolved = new HashMap<>();
+      AlfrescoTransactionSupport.bindResource(TRANSACTION_DESTINATION_KEY, resolved);
+      AlfrescoTransactionSupport.bindListener(new DestinationTransactionListener(resolved));
+    }
+    return resolved;
+  }
+
   private void fetchOrCreateFolderImpl(final RepositoryNode node, final Consumer<NodeRef> onGet,
-      final @CheckForNull Consumer<NodeRef> onCreate) {
+      final @CheckForNull Consumer<RepositoryNode> creation) {
     doGetFolder(node, onGet);
-    if (onCreate != null && !node.getNodeRef().isPresent()) {
-      NodeRef nodeRef = node.getParent().get();
-      lockFolder(nodeRef);
-      // Proceed with creation
-      filerModelService.runWithoutSubscriberBehaviour(nodeRef, () -> {
-        doCreateFolder(node, onCreate);
-      });
+    if (creation != null && !node.getNodeRef().isPresent()) {
+      if (eagerCreation && isEagerCreationAllowed(node.getParent().get())) {
+        createFolderEagerly(node, onGet, creation);
+      } else {
+        createFolder(node, creation);
+      }
+    }
+  }
+
+  /**
+   * The parent is locked before the target and source segments of the node, which are then locked at once in a global order
+   * (see FilerUpdateServiceImpl). This lock cannot be part of a deadlock if it cannot wait, i.e. if the parent is already
+   * locked or has been created by the transaction (every folder of a new path but the first one), nor if the transaction
+   * holds no other folder lock yet. Otherwise, e.g. for a transaction filing several nodes one at a time, the database
+   * detects the deadlock and one transaction is retried (see {@link #FOLDER_LOCK_DEADLOCK}).
+   */
+  private void createFolder(final RepositoryNode node, final Consumer<RepositoryNode> creation) {
+    NodeRef nodeRef = node.getParent().get();
+    lockFolder(nodeRef);
+    // Proceed with creation
+    filerModelService.runWithoutSubscriberBehaviour(nodeRef, () -> {
+      creation.accept(node);
+    });
+  }
+
+  /**
+   * The parent must be committed and the current transaction must not hold any folder lock. Otherwise the separate
+   * transaction would not see the parent, or it could wait for the parent lock held by another transaction which itself
+   * waits for a lock of the current transaction: the database cannot detect such a deadlock, as the current transaction
+   * waits for the separate one in Java, so it would only end with the lock timeout.
+   */
+  private boolean isEagerCreationAllowed(final NodeRef parent) {
+    return !FilerTransactionUtils.hasLockedFolders() && nodeService.hasAspect(parent, filerModelService.getSegmentAspect());
+  }
+
+  /**
+   * Create the folder in a separate transaction which commits right away, so that its parent is only locked for a short time.
+   * The current transaction then only reads it.
+   */
+  private void createFolderEagerly(final RepositoryNode node, final Consumer<NodeRef> onGet,
+      final Consumer<RepositoryNode> creation) {
+    NodeRef parent = node.getParent().get();
+    AtomicBoolean created = new AtomicBoolean();
+    NodeRef nodeRef = transactionService.getRetryingTransactionHelper().doInTransaction(() -> {
+      NodeRef result = null;
+      // Parent could have been deleted since the current transaction read it
+      if (nodeService.exists(parent)) {
+        RepositoryNode folder = new RepositoryNode(node);
+        doGetFolder(folder, x -> {});
+        created.set(!folder.getNodeRef().isPresent());
+        if (created.get()) {
+          createFolder(folder, creation);
+        }
+        result = folder.getNodeRef().get();
+      }
+      return result;
+    }, false, true);
+    if (nodeRef == null) {
+      filerStatisticsService.increment(FOLDER_EAGER_FALLBACK);
+      createFolder(node, creation);
+    } else {
+      node.setNodeRef(nodeRef);
+      FilerTransactionUtils.putFolder(parent, node.getName().get(), nodeRef);
+      // Folder is committed, so it can be reused by a retry of the current transaction
+      FilerRetryUtils.putFolder(parent, node.getName().get(), nodeRef);
+      if (created.get()) {
+        filerStatisticsService.increment(FOLDER_EAGER_CREATION);
+      } else {
+        // Folder has been created by another transaction in the meantime
+        afterGetFolder(nodeRef, onGet);
+      }
     }
   }
 
   @Override
   public void deleteFolder(final NodeRef nodeRef) {
+    FilerTransactionUtils.removeFolder(nodeRef);
     // Node could be part of a hierarchy deletion, in this case it will be deleted that way
     if (!nodeService.hasAspect(nodeRef, ContentModel.ASPECT_PENDING_DELETE)) {
       // In case filerSegment is a fileable too
@@ -80,16 +306,74 @@ public class FilerFolderServiceImpl implements FilerFolderService {
     }
   }
 
+  @Override
+  public void retainFolder(final NodeRef nodeRef) {
+    QName emptied = filerModelService.getSegmentEmptiedProperty();
+    if (nodeService.getProperty(nodeRef, emptied) == null) {
+      filerModelService.runWithoutFileableBehaviour(nodeRef, () -> {
+        nodeService.setProperty(nodeRef, emptied, new Date());
+      });
+      FilerTransactionUtils.addLockedFolder(nodeRef);
+      filerStatisticsService.increment(FOLDER_RETAINED);
+    }
+  }
+
   @Override
   public void lockFolder(final NodeRef nodeRef) {
+    lockNode(getNodePair(nodeRef));
+  }
+
+  @Override
+  public void lockFolders(final Collection<NodeRef> nodeRefs) {
+    // Acquire locks in a global order (node id), so that concurrent transactions locking the same folders cannot deadlock
+    nodeRefs.stream()
+        .distinct()
+        .map(this::getNodePair)
+        .sorted(Comparator.comparing((Pair<Long, NodeRef> nodePair) -> nodePair.getFirst()))
+        .forEach(this::lockNode);
+  }
+
+  private Pair<Long, NodeRef> getNodePair(final NodeRef nodeRef) {
     Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
     // Node could have been deleted in another concurrent transaction
     if (nodePair == null) {
       throw new ConcurrencyFailureException("Could not lock node. Node does not exist: " + nodeRef);
     }
+    return nodePair;
+  }
+
+  private void lockNode(final Pair<Long, NodeRef> nodePair) {
+    // Row lock is held until the end of the transaction, there is no need to take it again
+    if (FilerTransactionUtils.addLockedFolder(nodePair.getSecond())) {
+      try {
+        lockNodeImpl(nodePair);
+      } catch (DeadlockLoserDataAccessException e) {
+        filerStatisticsService.increment(FOLDER_LOCK_DEADLOCK);
+        throw e;
+      } catch (ConcurrencyFailureException e) {
+        filerStatisticsService.increment(FOLDER_LOCK_FAILURE);
+        throw e;
+      }
+      filerStatisticsService.increment(FOLDER_LOCK);
+      getLockHolds().put(nodePair.getSecond(), System.nanoTime());
+    } else {
+      filerStatisticsService.increment(FOLDER_LOCK_REUSED);
+    }
+  }
+
+  private Map<NodeRef, Long> getLockHolds() {
+    Map<NodeRef, Long> lockHolds = AlfrescoTransactionSupport.getResource(TRANSACTION_LOCK_HOLD_KEY);
+    if (lockHolds == null) {
+      lockHolds = new HashMap<>();
+      AlfrescoTransactionSupport.bindResource(TRANSACTION_LOCK_HOLD_KEY, lockHolds);
+      AlfrescoTransactionSupport.bindListener(new LockHoldTransactionListener(lockHolds));
+    }
+    return lockHolds;
+  }
 
+  private void lockNodeImpl(final Pair<Long, NodeRef> nodePair) {
     Long nodeId = nodePair.getFirst();
-    filerModelService.runWithoutBehaviours(nodeRef, () -> {
+    filerModelService.runWithoutBehaviours(nodePair.getSecond(), () -> {
       // This will effectively lock the node preventing other transactions to go further
       // They will be blocked here and when they become free, they will throw a ConcurrencyFailureException
       // which will cause a retry of the whole transaction in the RetryingTransactionHelper
@@ -98,18 +382,80 @@ public class FilerFolderServiceImpl implements FilerFolderService {
   }
 
   private void doGetFolder(final RepositoryNode node, final Consumer<NodeRef> onGet) {
-    NodeRef nodeRef = null;
-    try {
-      nodeRef = nodeService.getChildByName(node.getParent().get(), ContentModel.ASSOC_CONTAINS, node.getName().get());
-    } catch (InvalidNodeRefException e) {
-      throw new ConcurrencyFailureException("Could not get node. Node does not exist: " + node.getParent(), e);
+    NodeRef parent = node.getParent().get();
+    String name = node.getName().get();
+    // Segments shared by several nodes of the transaction are only resolved once
+    NodeRef nodeRef = getTransactionFolder(parent, name);
+    if (nodeRef == null) {
+      nodeRef = getCommittedFolder(parent, name);
+      if (nodeRef != null) {
+        FilerTransactionUtils.putFolder(parent, name, nodeRef);
+      }
+    } else {
+      filerStatisticsService.increment(FOLDER_CACHE_HIT);
     }
     if (nodeRef != null) {
       node.setNodeRef(nodeRef);
+      reuseFolder(nodeRef);
       afterGetFolder(nodeRef, onGet);
     }
   }
 
+  @CheckForNull
+  private NodeRef getCommittedFolder(final NodeRef parent, final String name) {
+    // A previous attempt of a retried operation may already have looked the folder up
+    NodeRef nodeRef = FilerRetryUtils.getFolder(parent, name).filter(folder -> isFolder(folder, parent, name)).orElse(null);
+    if (nodeRef == null) {
+      try {
+        nodeRef = nodeService.getChildByName(parent, ContentModel.ASSOC_CONTAINS, name);
+      } catch (InvalidNodeRefException e) {
+        throw new ConcurrencyFailureException("Could not get node. Node does not exist: " + parent, e);
+      }
+      if (nodeRef != null) {
+        FilerRetryUtils.putFolder(parent, name, nodeRef);
+      }
+    } else {
+      filerStatisticsService.increment(FOLDER_MEMO_HIT);
+    }
+    return nodeRef;
+  }
+
+  /**
+   * Folder resolved earlier in the transaction, as long as it was not deleted, moved or renamed since
+   */
+  @CheckForNull
+  private NodeRef getTransactionFolder(final NodeRef parent, final String name) {
+    return FilerTransactionUtils.getFolder(parent, name).filter(folder -> isFolder(folder, parent, name)).orElse(null);
+  }
+
+  /**
+   * Check the memoized folder is still there, it could have been deleted, moved or renamed since
+   */
+  private boolean isFolder(final NodeRef nodeRef, final NodeRef parent, final String name) {
+    return nodeService.exists(nodeRef) && parent.equals(nodeService.getPrimaryParent(nodeRef).getParentRef())
+        && name.equals(nodeService.getProperty(nodeRef, ContentModel.PROP_NAME));
+  }
+
+  /**
+   * Folder might have been kept while empty (see {@link #retainFolder}), it is not going to be anymore
+   */
+  private void reuseFolder(final NodeRef nodeRef) {
+    QName emptied = filerModelService.getSegmentEmptiedProperty();
+    // Segments are only kept while empty with a retention, left over ones are checked by the purge before deletion
+    if (segmentRetention > 0 && nodeService.getProperty(nodeRef, emptied) != null) {
+      // Run as System because current user may not have the update permission on the folder (he might not be the owner)
+      AuthenticationUtil.runAsSystem(() -> {
+        filerModelService.runWithoutFileableBehaviour(nodeRef, () -> {
+          nodeService.removeProperty(nodeRef, emptied);
+        });
+        return null;
+      });
+      // Updated folder row is locked until the end of the transaction
+      FilerTransactionUtils.addLockedFolder(nodeRef);
+      filerStatisticsService.increment(FOLDER_REUSED);
+    }
+  }
+
   private void afterGetFolder(final NodeRef nodeRef, final Consumer<NodeRef> onGet) {
     onGet.accept(nodeRef);
   }
@@ -118,12 +464,29 @@ public class FilerFolderServiceImpl implements FilerFolderService {
     QName assoc = QName.createQNameWithValidLocalName(NamespaceService.CONTENT_MODEL_1_0_URI, node.getName().get());
     // Node can have a fileable mandatory-aspect, but it is already created at the right place so there is no need to
     // trigger filer on it (FileableAspect#onAddAspect). Disable behaviour globally because nodeRef is unknown at creation time
+    // Create folder along with all its prepared properties (name, owner, inherited properties...) in a single write,
+    // the aspects holding those properties are added at the same time. Only marker aspects without any property, such as
+    // the segment aspect, are added afterwards: the owner being already set, adding them does not write it again
+    Map<QName, Serializable> properties = new HashMap<>(node.getProperties());
     filerModelService.runWithoutFileableBehaviour(() -> {
       NodeRef nodeRef = nodeService.createNode(node.getParent().get(), ContentModel.ASSOC_CONTAINS, assoc, node.getType().get(),
-          Collections.singletonMap(ContentModel.PROP_NAME, node.getName().get())).getChildRef();
+          properties).getChildRef();
       node.setNodeRef(nodeRef);
+      FilerTransactionUtils.putFolder(node.getParent().get(), node.getName().get(), nodeRef);
     });
-    afterCreateFolder(node, onCreate);
+    Consumer<NodeRef> addAspects = nodeRef -> addMissingAspects(nodeRef, node.getAspects());
+    afterCreateFolder(node, addAspects.andThen(onCreate));
+  }
+
+  /**
+   * Add prepared marker aspects, unless they were implicitly added at creation (mandatory-aspect or aspect property)
+   */
+  private void addMissingAspects(final NodeRef nodeRef, final Set<QName> aspects) {
+    Set<QName> missingAspects = new LinkedHashSet<>(aspects);
+    missingAspects.removeAll(nodeService.getAspects(nodeRef));
+    for (QName aspect : missingAspects) {
+      nodeService.addAspect(nodeRef, aspect, Collections.emptyMap());
+    }
   }
 
   /**
@@ -140,4 +503,79 @@ public class FilerFolderServiceImpl implements FilerFolderService {
       return null;
     });
   }
+
+  /**
+   * @param eagerCreation {@code true} to create missing folders in a separate transaction that commits right away, when
+   * their parent is a segment that is not written by the current transaction
+   */
+  public void setEagerCreation(final boolean eagerCreation) {
+    this.eagerCreation = eagerCreation;
+  }
+
+  /**
+   * @param segmentRetention duration in seconds during which an empty segment is kept before being deleted
+   * @see FilerOperationServiceImpl#setSegmentRetention
+   */
+  public void setSegmentRetention(final long segmentRetention) {
+    this.segmentRetention = segmentRetention;
+  }
+
+  /**
+   * @param destinationCache shared cache of the folders resolved for a path of folder names from a root, bounded by its
+   * maximum number of items (least recently used entries are evicted)
+   */
+  public void setDestinationCache(final SimpleCache<Pair<NodeRef, List<Pair<QName, String>>>, List<NodeRef>> destinationCache) {
+    this.destinationCache = destinationCache;
+  }
+
+  /**
+   * @param destinationCacheEnabled whether destinations of plans are reused, otherwise their folders are always resolved
+   * level by level
+   */
+  public void setDestinationCacheEnabled(final boolean destinationCacheEnabled) {
+    this.destinationCacheEnabled = destinationCacheEnabled;
+  }
+
+  /**
+   * Record how long folder locks are held, i.e. from their acquisition to the end of the transaction
+   */
+  private final class LockHoldTransactionListener extends TransactionListenerAdapter {
+
+    private final Map<NodeRef, Long> lockHolds;
+
+    LockHoldTransactionListener(final Map<NodeRef, Long> lockHolds) {
+      this.lockHolds = lockHolds;
+    }
+
+    @Override
+    public void afterCommit() {
+      recordLockHolds();
+    }
+
+    @Override
+    public void afterRollback() {
+      recordLockHolds();
+    }
+
+    private void recordLockHolds() {
+      long end = System.nanoTime();
+      for (Long start : lockHolds.values()) {
+        filerStatisticsService.recordHistogram(FOLDER_LOCK_HOLD, TimeUnit.NANOSECONDS.toMillis(end - start));
+      }
+    }
+  }
+
+  private final class DestinationTransactionListener extends TransactionListenerAdapter {
+
+    private final Map<Pair<NodeRef, List<Pair<QName, String>>>, List<NodeRef>> resolved;
+
+    DestinationTransactionListener(final Map<Pair<NodeRef, List<Pair<QName, String>>>, List<NodeRef>> resolved) {
+      this.resolved = resolved;
+    }
+
+    @Override
+    public void afterCommit() {
+      resolved.forEach(destinationCache::put);
+    }
+  }
 }
@@ -1,7 +1,9 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -17,107 +19,113 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 public class FilerFolderTypeBuilder {
 
   private final FilerService filerService;
+  private final FilerPlan.Target target;
+  @CheckForNull
   private final FilerFolderContext context;
   private final QName filerType;
 
+  private final Set<QName> mandatoryAspects = new LinkedHashSet<>();
+  private final Set<QName> optionalAspects = new LinkedHashSet<>();
+  private boolean clearInheritance;
+
   @CheckForNull
   private FilerNameBuilder<FilerFolderTypeBuilder> nameBuilder;
   @CheckForNull
-  private Consumer<NodeRef> onFilerGet;
+  private BiConsumer<NodeRef, RepositoryNode> onFilerGet;
+  @CheckForNull
+  private BiConsumer<NodeRef, RepositoryNode> onFilerCreate;
   @CheckForNull
-  private Consumer<NodeRef> onFilerCreate;
+  private Consumer<RepositoryNode> onFilerPrepare;
 
-  public FilerFolderTypeBuilder(final FilerService filerService, final FilerFolderContext context, final QName filerType) {
+  FilerFolderTypeBuilder(final FilerService filerService, final FilerPlan.Target target,
+      @CheckForNull final FilerFolderContext context, final QName filerType) {
     this.filerService = filerService;
-    this.context = new FilerFolderContext(context, context.getParent());
+    this.target = target;
+    this.context = context;
     this.filerType = filerType;
   }
 
-  private Consumer<NodeRef> onCreate() {
-    return Optional.ofNullable(onFilerCreate).orElse(x -> {});
+  public FilerFolderTypeBuilder(final FilerService filerService, final FilerFolderContext context, final QName filerType) {
+    this(filerService, FilerPlan.Target.running(filerService), new FilerFolderContext(context, context.getParent()),
+        filerType);
   }
 
   public FilerFolderTypeBuilder onCreate(final Consumer<NodeRef> onCreate) {
-    onFilerCreate = onCreate().andThen(onCreate);
-    return this;
+    return onCreate((nodeRef, node) -> onCreate.accept(nodeRef));
   }
 
   public FilerFolderTypeBuilder onCreate(final BiConsumer<NodeRef, RepositoryNode> onCreate) {
-    return onCreate(nodeRef -> onCreate.accept(nodeRef, context.getNode()));
+    onFilerCreate = Optional.ofNullable(onFilerCreate).map(previous -> previous.andThen(onCreate)).orElse(onCreate);
+    return this;
+  }
+
+  /**
+   * Complete the folder with aspects and properties before it is created, so that it is written at once
+   */
+  public FilerFolderTypeBuilder onPrepare(final Consumer<RepositoryNode> onPrepare) {
+    onFilerPrepare = Optional.ofNullable(onFilerPrepare).map(previous -> previous.andThen(onPrepare)).orElse(onPrepare);
+    return this;
   }
 
   public FilerFolderTypeBuilder asSegment() {
-    return onCreate(filerService.operations()::setSegment);
+    return onPrepare(folder -> filerService.operations().prepareSegment(folder));
   }
 
   public FilerFolderTypeBuilder asSubscriber() {
-    return onCreate(filerService.operations()::setSubscriber);
+    return onPrepare(folder -> filerService.operations().prepareSubscriber(folder));
   }
 
   public FilerFolderTypeBuilder asFileable() {
-    return onCreate(filerService.operations()::setFileable);
+    return onPrepare(folder -> filerService.operations().prepareFileable(folder));
   }
 
   public FilerFolderTypeBuilder mandatoryPropertyInheritance(final QName... aspects) {
-    if (context.isEnabled()) {
-      context.getPropertyInheritance().getMandatoryAspects().addAll(Arrays.asList(aspects));
-    }
+    mandatoryAspects.addAll(Arrays.asList(aspects));
     return this;
   }
 
   public FilerFolderTypeBuilder optionalPropertyInheritance(final QName... aspects) {
-    if (context.isEnabled()) {
-      context.getPropertyInheritance().getOptionalAspects().addAll(Arrays.asList(aspects));
-    }
+    optionalAspects.addAll(Arrays.asList(aspects));
     return this;
   }
 
+  /**
+   * Clear property inheritance of upper levels, as well as aspects declared on this level so far
+   */
   public FilerFolderTypeBuilder clearPropertyInheritance() {
-    if (context.isEnabled()) {
-      context.clearPropertyInheritance();
-    }
+    mandatoryAspects.clear();
+    optionalAspects.clear();
+    clearInheritance = true;
     return this;
   }
 
-  private Consumer<NodeRef> onGet() {
-    return Optional.ofNullable(onFilerGet).orElse(x -> {});
+  public FilerFolderTypeBuilder onGet(final Consumer<NodeRef> onGet) {
+    return onGet((nodeRef, node) -> onGet.accept(nodeRef));
   }
 
-  public FilerFolderTypeBuilder onGet(final Consumer<NodeRef> onGet) {
-    onFilerGet = onGet().andThen(onGet);
+  public FilerFolderTypeBuilder onGet(final BiConsumer<NodeRef, RepositoryNode> onGet) {
+    onFilerGet = Optional.ofNullable(onFilerGet).map(previous -> previous.andThen(onGet)).orElse(onGet);
     return this;
   }
 
-  public FilerFolderTypeBuilder onGet(final BiConsumer<NodeRef, RepositoryNode> onGet) {
-    return onGet(nodeRef -> onGet.accept(nodeRef, context.getNode()));
+  /**
+   * Declare an idempotent callback, it is skipped on folders it was already run on, as long as they are not modified
+   */
+  public FilerFolderTypeBuilder onGet(final String callbackId, final Consumer<NodeRef> onGet) {
+    return onGet(nodeRef -> filerService.operations().runIdempotent(nodeRef, callbackId, onGet));
   }
 
   public FilerNameBuilder<FilerFolderTypeBuilder> named() {
-    nameBuilder = Optional.ofNullable(nameBuilder).orElseGet(() -> new FilerNameBuilder<>(this, context));
+    nameBuilder = Optional.ofNullable(nameBuilder).orElseGet(() -> new FilerNameBuilder<>(this));
     return nameBuilder;
   }
 
   public FilerFolderBuilder getOrCreate() {
-    NodeRef child = context.getParent();
-    if (context.isEnabled()) {
-      String name = named().getName().get();
-      if (context.hasPropertyInheritance()) {
-        // Apply property inheritance on the folder
-        onCreate(nodeRef -> filerService.propertyInheritance()
-            .setProperties(nodeRef, context.getNode(), context.getPropertyInheritance()));
-      }
-      child = filerService.operations().getOrCreateFolder(child, filerType, name, onGet(), onCreate());
-    }
-    return new FilerFolderBuilder(filerService, context, child);
+    return level(FilerPlan.Level.Mode.GET_OR_CREATE);
   }
 
   public FilerFolderBuilder get() {
-    NodeRef child = context.getParent();
-    if (context.isEnabled()) {
-      String name = named().getName().get();
-      child = filerService.operations().getFolder(child, name, onGet());
-    }
-    return new FilerFolderBuilder(filerService, context, child);
+    return level(FilerPlan.Level.Mode.GET);
   }
 
   public FilerFolderBuilder get(final boolean createIfAbsent) {
@@ -125,15 +133,42 @@ public class FilerFolderTypeBuilder {
   }
 
   public void updateAndMove() {
-    if (context.isEnabled()) {
-      RepositoryNode node = context.getNode();
-      // Update type
-      node.setType(filerType);
-      String name = named().getName().get();
-      // Update node, which will apply property inheritance
-      filerService.operations().updateFileable(node, context.getParent(), name);
-      // Apply node get/create functions if this is required, property inheritance is already applied
-      filerService.operations().updateFolder(node, onGet(), onCreate());
-    }
+    level(FilerPlan.Level.Mode.UPDATE_AND_MOVE);
+  }
+
+  private FilerFolderBuilder level(final FilerPlan.Level.Mode mode) {
+    FilerFolderContext result = target.accept(new FilerPlan.Level(mode, this), context);
+    return new FilerFolderBuilder(filerService, target, result);
+  }
+
+  QName getType() {
+    return filerType;
+  }
+
+  Set<QName> getMandatoryAspects() {
+    return mandatoryAspects;
+  }
+
+  Set<QName> getOptionalAspects() {
+    return optionalAspects;
+  }
+
+  boolean isClearInheritance() {
+    return clearInheritance;
+  }
+
+  @CheckForNull
+  Consumer<RepositoryNode> getOnPrepare() {
+    return onFilerPrepare;
+  }
+
+  @CheckForNull
+  BiConsumer<NodeRef, RepositoryNode> getOnGet() {
+    return onFilerGet;
+  }
+
+  @CheckForNull
+  BiConsumer<NodeRef, RepositoryNode> getOnCreate() {
+    return onFilerCreate;
   }
 }
@@ -1,7 +1,11 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
+import java.util.Objects;
+
+import org.alfresco.model.ContentModel;
 import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.security.OwnableService;
 import org.alfresco.service.namespace.QName;
 
@@ -13,6 +17,7 @@ public class FilerModelServiceImpl implements FilerModelService {
 
   private final OwnableService ownableService;
   private final BehaviourFilter behaviourFilter;
+  private final NodeService nodeService;
 
   @Nullable
   private QName fileableAspect;
@@ -23,11 +28,17 @@ public class FilerModelServiceImpl implements FilerModelService {
   @Nullable
   private QName propertyInheritanceAspect;
   @Nullable
+  private QName segmentEmptiedProperty;
+  @Nullable
+  private QName fileableFingerprintProperty;
+  @Nullable
   private String ownerUsername;
 
-  public FilerModelServiceImpl(final OwnableService ownableService, final BehaviourFilter behaviourFilter) {
+  public FilerModelServiceImpl(final OwnableService ownableService, final BehaviourFilter behaviourFilter,
+      final NodeService nodeService) {
     this.ownableService = ownableService;
     this.behaviourFilter = behaviourFilter;
+    this.nodeService = nodeService;
   }
 
   @Override
@@ -50,6 +61,16 @@ public class FilerModelServiceImpl implements FilerModelService {
     return propertyInheritanceAspect;
   }
 
+  @Override
+  public QName getSegmentEmptiedProperty() {
+    return segmentEmptiedProperty;
+  }
+
+  @Override
+  public QName getFileableFingerprintProperty() {
+    return fileableFingerprintProperty;
+  }
+
   @Override
   public String getOwnerUsername() {
     return ownerUsername;
@@ -57,7 +78,10 @@ public class FilerModelServiceImpl implements FilerModelService {
 
   @Override
   public void setOwner(final NodeRef nodeRef) {
-    ownableService.setOwner(nodeRef, ownerUsername);
+    // Owner may already be set. Check the property itself, OwnableService#getOwner falls back to the creator
+    if (!Objects.equals(nodeService.getProperty(nodeRef, ContentModel.PROP_OWNER), ownerUsername)) {
+      ownableService.setOwner(nodeRef, ownerUsername);
+    }
   }
 
   @Override
@@ -112,6 +136,14 @@ public class FilerModelServiceImpl implements FilerModelService {
     this.propertyInheritanceAspect = QName.createQName(propertyInheritanceAspectQName);
   }
 
+  public void setSegmentEmptiedPropertyQName(final String segmentEmptiedPropertyQName) {
+    this.segmentEmptiedProperty = QName.createQName(segmentEmptiedPropertyQName);
+  }
+
+  public void setFileableFingerprintPropertyQName(final String fileableFingerprintPropertyQName) {
+    this.fileableFingerprintProperty = QName.createQName(fileableFingerprintPropertyQName);
+  }
+
   public void setOwnerUsername(final String ownerUsername) {
     this.ownerUsername = ownerUsername;
   }
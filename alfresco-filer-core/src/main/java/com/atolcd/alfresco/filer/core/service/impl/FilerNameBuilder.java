@@ -1,65 +1,66 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
-import java.io.Serializable;
-import java.text.DateFormat;
-import java.text.MessageFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
-import java.util.Optional;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
-import org.alfresco.model.ContentModel;
 import org.alfresco.service.namespace.QName;
 
-import com.atolcd.alfresco.filer.core.model.FilerException;
 import com.atolcd.alfresco.filer.core.model.FilerFolderContext;
+import com.atolcd.alfresco.filer.core.model.FilerNameSuffix;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 
+/**
+ * Declare the name of a level, which is only computed when the level is enabled
+ */
 public class FilerNameBuilder<T> {
 
   private final T builder;
-  private final FilerFolderContext context;
 
   @CheckForNull
-  private String filerName;
+  private FilerNameTemplate filerName;
+  @CheckForNull
+  private FilerNameSuffix filerNameSuffix;
 
-  public FilerNameBuilder(final T builder, final FilerFolderContext context) {
+  FilerNameBuilder(final T builder) {
     this.builder = builder;
-    this.context = context;
   }
 
-  public Optional<String> getName() {
-    return Optional.ofNullable(filerName);
+  @CheckForNull
+  FilerNameTemplate getTemplate() {
+    return filerName;
   }
 
-  public T with(final @CheckForNull String name) {
-    if (context.isEnabled()) {
-      filerName = name;
-    }
+  @CheckForNull
+  FilerNameSuffix getSuffix() {
+    return filerNameSuffix;
+  }
+
+  /**
+   * Suffix the name when it is already taken in the destination folder, instead of failing
+   */
+  public FilerNameBuilder<T> withSuffix(final FilerNameSuffix suffix) {
+    filerNameSuffix = suffix;
+    return this;
+  }
+
+  public T with(final FilerNameTemplate template) {
+    filerName = template;
     return builder;
   }
 
+  public T with(final @CheckForNull String name) {
+    return with(FilerNameTemplate.of(name));
+  }
+
   public T with(@CheckForNull final Date date, final String dateFormat) {
-    return date == null ? with((String) null) : with(() -> {
-      DateFormat formatter = new SimpleDateFormat(dateFormat);
-      return formatter.format(date);
-    });
+    return with(date == null ? null : FilerNameFormats.format(date, dateFormat));
   }
 
   public T with(final String pattern, final QName... properties) {
-    return with(() -> {
-      List<Serializable> values = new ArrayList<>();
-      for (QName property : properties) {
-        Serializable value = getProperty(property, Serializable.class);
-        values.add(value);
-      }
-      return MessageFormat.format(pattern, values.toArray());
-    });
+    return with(FilerNameTemplate.pattern(pattern, properties));
   }
 
   public T with(final Supplier<String> nodeNameFormatter) {
@@ -67,37 +68,22 @@ public class FilerNameBuilder<T> {
   }
 
   public T with(final Function<RepositoryNode, String> nodeNameFormatter) {
-    return withContext(filerFolderContext -> nodeNameFormatter.apply(filerFolderContext.getNode()));
+    return with(FilerNameTemplate.of(nodeNameFormatter));
   }
 
   public T withContext(final Function<FilerFolderContext, String> nodeNameFormatter) {
-    String name = null;
-    if (context.isEnabled()) {
-      name = nodeNameFormatter.apply(context);
-    }
-    return with(name);
+    return with(FilerNameTemplate.ofContext(nodeNameFormatter));
   }
 
   public T withPropertyName() {
-    return withProperty(ContentModel.PROP_NAME);
+    return with(FilerNameTemplate.propertyName());
   }
 
   public T withProperty(final QName propertyName) {
-    String name = getProperty(propertyName, String.class);
-    return with(name);
+    return with(FilerNameTemplate.property(propertyName));
   }
 
   public T withPropertyDate(final QName propertyName, final String dateFormat) {
-    Date date = getProperty(propertyName, Date.class);
-    return with(date, dateFormat);
-  }
-
-  @CheckForNull
-  private <C> C getProperty(final QName propertyName, final Class<C> propertyType) {
-    Optional<C> value = context.getNode().getProperty(propertyName, propertyType);
-    if (!value.isPresent() && context.isEnabled()) {
-      throw new FilerException("Could not get property '" + propertyName + "' for node: " + context.getNode());
-    }
-    return value.orElse(null);
+    return with(FilerNameTemplate.propertyDate(propertyName, dateFormat));
   }
 }
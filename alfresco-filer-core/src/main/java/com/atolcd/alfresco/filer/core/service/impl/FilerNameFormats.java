@@ -0,0 +1,97 @@
+package com.atolcd.alfresco.filer.core.service.impl;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.alfresco.util.Pair;
+import org.apache.commons.lang3.time.FastDateFormat;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Formats used to build filer names, parsed once per pattern and shared by all filer actions.<br>
+ * Formatted names are also kept in a small memo per thread, as the same date or property values are usually formatted for
+ * many nodes in a row (e.g. year and month segments).
+ */
+final class FilerNameFormats {
+
+  private static final int MEMO_SIZE = 256;
+  private static final Map<Pair<Locale, String>, MessageFormat> MESSAGE_FORMATS = new ConcurrentHashMap<>();
+  private static final ThreadLocal<Map<List<Object>, String>> MEMO = ThreadLocal.withInitial(HashMap::new);
+  /**
+   * Final JDK types whose instances cannot change once formatted, unlike e.g. {@link java.util.concurrent.atomic.AtomicLong}
+   */
+  private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(String.class, Boolean.class,
+      Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class));
+
+  /**
+   * Same output as {@link java.text.SimpleDateFormat}, which {@link FastDateFormat} is compatible with
+   */
+  static String format(final Date date, final String pattern) {
+    FastDateFormat format = FastDateFormat.getInstance(pattern);
+    List<Object> key = new ArrayList<>(2);
+    key.add(format);
+    key.add(date.getTime());
+    return memoize(key, () -> format.format(date));
+  }
+
+  /**
+   * Same output as {@link MessageFormat#format(String, Object...)}
+   */
+  static String format(final String pattern, final Object... values) {
+    Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+    MessageFormat format = MESSAGE_FORMATS.computeIfAbsent(new Pair<>(locale, pattern), k -> new MessageFormat(pattern, locale));
+    List<Object> key = getKey(format, values);
+    return key == null ? format(format, values) : memoize(key, () -> format(format, values));
+  }
+
+  private static String format(final MessageFormat format, final Object... values) {
+    // Parsed format is shared but not thread-safe, use a copy of it
+    return ((MessageFormat) format.clone()).format(values);
+  }
+
+  /**
+   * @return memo key, or {@code null} if a value is not of an immutable JDK type (or a date, keyed by its time)
+   */
+  @CheckForNull
+  private static List<Object> getKey(final MessageFormat format, final Object... values) {
+    List<Object> key = new ArrayList<>(values.length + 1);
+    key.add(format);
+    for (Object value : values) {
+      if (value == null || IMMUTABLE_TYPES.contains(value.getClass())) {
+        key.add(value);
+      } else if (value instanceof Date) {
+        key.add(new Pair<>(Date.class, ((Date) value).getTime()));
+      } else {
+        key = null;
+        break;
+      }
+    }
+    return key;
+  }
+
+  private static String memoize(final List<Object> key, final Supplier<String> formatter) {
+    Map<List<Object>, String> memo = MEMO.get();
+    String result = memo.get(key);
+    if (result == null) {
+      result = formatter.get();
+      if (memo.size() >= MEMO_SIZE) {
+        memo.clear();
+      }
+      memo.put(key, result);
+    }
+    return result;
+  }
+
+  private FilerNameFormats() {}
+}
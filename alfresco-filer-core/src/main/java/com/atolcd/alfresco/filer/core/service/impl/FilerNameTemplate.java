@@ -0,0 +1,111 @@
+package com.atolcd.alfresco.filer.core.service.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.namespace.QName;
+
+import com.atolcd.alfresco.filer.core.model.FilerException;
+import com.atolcd.alfresco.filer.core.model.FilerFolderContext;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Immutable naming of a {@link FilerPlan} level.<br>
+ * Properties of declarative templates can be introspected, names computed by a function do not declare any property and
+ * may depend on anything. Contextual names also depend on the folders resolved by the upper levels.
+ */
+public final class FilerNameTemplate {
+
+  private final Function<FilerFolderContext, String> formatter;
+  private final Set<QName> properties;
+  private final boolean declarative;
+  private final boolean contextual;
+
+  private FilerNameTemplate(final Function<FilerFolderContext, String> formatter, final Set<QName> properties,
+      final boolean declarative, final boolean contextual) {
+    this.formatter = formatter;
+    this.properties = Collections.unmodifiableSet(properties);
+    this.declarative = declarative;
+    this.contextual = contextual;
+  }
+
+  private static FilerNameTemplate ofNode(final Function<RepositoryNode, String> formatter, final Set<QName> properties) {
+    return new FilerNameTemplate(context -> formatter.apply(context.getNode()), properties, true, false);
+  }
+
+  public static FilerNameTemplate of(@CheckForNull final String name) {
+    return new FilerNameTemplate(context -> name, Collections.emptySet(), true, false);
+  }
+
+  public static FilerNameTemplate of(final Function<RepositoryNode, String> formatter) {
+    return new FilerNameTemplate(context -> formatter.apply(context.getNode()), Collections.emptySet(), false, false);
+  }
+
+  public static FilerNameTemplate ofContext(final Function<FilerFolderContext, String> formatter) {
+    return new FilerNameTemplate(formatter, Collections.emptySet(), false, true);
+  }
+
+  public static FilerNameTemplate propertyName() {
+    return property(ContentModel.PROP_NAME);
+  }
+
+  public static FilerNameTemplate property(final QName property) {
+    return ofNode(node -> getProperty(node, property, String.class), Collections.singleton(property));
+  }
+
+  public static FilerNameTemplate propertyDate(final QName property, final String dateFormat) {
+    return ofNode(node -> {
+      Date date = getProperty(node, property, Date.class);
+      return date == null ? null : FilerNameFormats.format(date, dateFormat);
+    }, Collections.singleton(property));
+  }
+
+  public static FilerNameTemplate pattern(final String pattern, final QName... properties) {
+    return ofNode(node -> {
+      Object[] values = new Object[properties.length];
+      for (int i = 0; i < properties.length; i++) {
+        values[i] = getProperty(node, properties[i], Serializable.class);
+      }
+      return FilerNameFormats.format(pattern, values);
+    }, new LinkedHashSet<>(Arrays.asList(properties)));
+  }
+
+  @CheckForNull
+  public String apply(final FilerFolderContext context) {
+    return formatter.apply(context);
+  }
+
+  /**
+   * @return properties the name is computed from
+   */
+  public Set<QName> getProperties() {
+    return properties;
+  }
+
+  /**
+   * @return whether the name is only computed from its declared properties
+   */
+  public boolean isDeclarative() {
+    return declarative;
+  }
+
+  /**
+   * @return whether the name depends on the context of the level, e.g. its parent folder
+   */
+  public boolean isContextual() {
+    return contextual;
+  }
+
+  private static <C> C getProperty(final RepositoryNode node, final QName propertyName, final Class<C> propertyType) {
+    return node.getProperty(propertyName, propertyType)
+        .orElseThrow(() -> new FilerException("Could not get property '" + propertyName + "' for node: " + node));
+  }
+}
@@ -1,32 +1,75 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.search.QueryConsistency;
+import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.search.SearchService;
 import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
+import org.alfresco.util.ISO8601DateFormat;
+import org.alfresco.util.Pair;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.atolcd.alfresco.filer.core.model.FilerAction;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.model.RepositoryNodeDifference;
 import com.atolcd.alfresco.filer.core.service.FilerFolderService;
 import com.atolcd.alfresco.filer.core.service.FilerModelService;
 import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
 import com.atolcd.alfresco.filer.core.service.FilerUpdateService;
 import com.atolcd.alfresco.filer.core.util.FilerNodeUtils;
 import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
 public class FilerOperationServiceImpl implements FilerOperationService {
 
+  public static final String SEGMENT_CLEANUP_REQUEST = "segment.cleanup.request";
+  public static final String SEGMENT_CLEANUP_SIZE = "segment.cleanup.size";
+  public static final String SEGMENT_CLEANUP_SKIPPED = "segment.cleanup.skipped";
+  public static final String CALLBACK_EXECUTED = "callback.executed";
+  public static final String CALLBACK_SKIPPED = "callback.skipped";
+
   private static final Logger LOGGER = LoggerFactory.getLogger(FilerOperationServiceImpl.class);
+  private static final Class<?> TRANSACTION_SEGMENT_CLEANUP_KEY = FilerOperationServiceImpl.class;
+  private static final Class<?> TRANSACTION_CALLBACK_KEY = CallbackTransactionListener.class;
+  private static final Class<?> TRANSACTION_DEFERRED_UPDATE_KEY = DeferredUpdate.class;
 
   @Nullable
   private FilerModelService filerModelService;
@@ -37,7 +80,17 @@ public class FilerOperationServiceImpl implements FilerOperationService {
   @Nullable
   private NodeService nodeService;
   @Nullable
+  private NodeDAO nodeDAO;
+  @Nullable
   private PermissionService permissionService;
+  @Nullable
+  private SearchService searchService;
+  private NamespaceService namespaceService;
+  @Nullable
+  private FilerStatisticsService filerStatisticsService;
+  @Nullable
+  private SimpleCache<Pair<NodeRef, String>, Serializable> callbackCache;
+  private long segmentRetention;
 
   @Override
   public void execute(final FilerAction action, final RepositoryNode node) {
@@ -53,6 +106,8 @@ public class FilerOperationServiceImpl implements FilerOperationService {
 
   @Override
   public void setFileable(final NodeRef nodeRef) {
+    // Node is entering a subscriber: like a node created as fileable, its parent must be locked even if it stays there
+    FilerTransactionUtils.putPlacedNode(nodeRef);
     nodeService.addAspect(nodeRef, filerModelService.getFileableAspect(), Collections.emptyMap());
   }
 
@@ -61,6 +116,85 @@ public class FilerOperationServiceImpl implements FilerOperationService {
     nodeService.addAspect(nodeRef, filerModelService.getSubscriberAspect(), Collections.emptyMap());
   }
 
+  @Override
+  public void prepareFileable(final RepositoryNode folder) {
+    folder.getAspects().add(filerModelService.getFileableAspect());
+  }
+
+  @Override
+  public void prepareSegment(final RepositoryNode folder) {
+    folder.getAspects().add(filerModelService.getSegmentAspect());
+    // Create new segments with their owner rather than setting it afterwards (see FilerSegmentAspect#onAddAspect). Templates
+    // of existing folders do not carry it, their owner is only set when they become segments
+    String owner = filerModelService.getOwnerUsername();
+    if (!folder.getNodeRef().isPresent() && isNotBlank(owner)) {
+      folder.getProperties().put(ContentModel.PROP_OWNER, owner);
+    }
+  }
+
+  @Override
+  public void prepareSubscriber(final RepositoryNode folder) {
+    folder.getAspects().add(filerModelService.getSubscriberAspect());
+  }
+
+  @Override
+  public void setTemplate(final NodeRef nodeRef, final Consumer<RepositoryNode> onPrepare) {
+    RepositoryNode template = new RepositoryNode(nodeRef);
+    onPrepare.accept(template);
+    // Only write the properties the node does not have yet
+    Map<QName, Serializable> properties = new HashMap<>(template.getProperties());
+    properties.entrySet().removeIf(property -> Objects.equals(property.getValue(),
+        nodeService.getProperty(nodeRef, property.getKey())));
+    if (!properties.isEmpty()) {
+      nodeService.addProperties(nodeRef, properties);
+    }
+    Set<QName> aspects = new LinkedHashSet<>(template.getAspects());
+    aspects.removeAll(nodeService.getAspects(nodeRef));
+    for (QName aspect : aspects) {
+      nodeService.addAspect(nodeRef, aspect, Collections.emptyMap());
+    }
+  }
+
+  @Override
+  public void runIdempotent(final NodeRef nodeRef, final String callbackId, final Consumer<NodeRef> callback) {
+    Pair<NodeRef, String> key = new Pair<>(nodeRef, callbackId);
+    Map<Pair<NodeRef, String>, Serializable> executed = getExecutedCallbacks();
+    Serializable stamp = executed.containsKey(key) ? executed.get(key) : callbackCache.get(key);
+    Serializable current = getStamp(nodeRef);
+    if (current != null && current.equals(stamp)) {
+      filerStatisticsService.increment(CALLBACK_SKIPPED);
+    } else {
+      callback.accept(nodeRef);
+      // Callback may have modified the node itself, remember the resulting stamp
+      executed.put(key, getStamp(nodeRef));
+      filerStatisticsService.increment(CALLBACK_EXECUTED);
+    }
+  }
+
+  /**
+   * Permission changes do not update the modification date, but they give the node another ACL
+   */
+  @CheckForNull
+  private Serializable getStamp(final NodeRef nodeRef) {
+    Serializable result = null;
+    Serializable modified = nodeService.getProperty(nodeRef, ContentModel.PROP_MODIFIED);
+    Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+    if (modified != null && nodePair != null) {
+      result = new Pair<>(modified, nodeDAO.getNodeAclId(nodePair.getFirst()));
+    }
+    return result;
+  }
+
+  private Map<Pair<NodeRef, String>, Serializable> getExecutedCallbacks() {
+    Map<Pair<NodeRef, String>, Serializable> executed = AlfrescoTransactionSupport.getResource(TRANSACTION_CALLBACK_KEY);
+    if (executed == null) {
+      executed = new HashMap<>();
+      AlfrescoTransactionSupport.bindResource(TRANSACTION_CALLBACK_KEY, executed);
+      AlfrescoTransactionSupport.bindListener(new CallbackTransactionListener(executed));
+    }
+    return executed;
+  }
+
   @Override
   public NodeRef getFolder(final NodeRef parent, final String name, final Consumer<NodeRef> onGet) {
     RepositoryNode node = RepositoryNode.builder().parent(parent).named(name).build();
@@ -75,10 +209,10 @@ public class FilerOperationServiceImpl implements FilerOperationService {
 
   @Override
   public NodeRef getOrCreateFolder(final NodeRef parent, final QName type, final String name,
-      final Consumer<NodeRef> onGet, final Consumer<NodeRef> onCreate) {
+      final Consumer<RepositoryNode> onPrepare, final Consumer<NodeRef> onGet, final Consumer<NodeRef> onCreate) {
     RepositoryNode node = RepositoryNode.builder().parent(parent).type(type).named(name).build();
     try {
-      filerFolderService.fetchOrCreateFolder(node, onGet, onCreate);
+      filerFolderService.fetchOrCreateFolder(node, onPrepare, onGet, onCreate);
     } catch (RuntimeException e) { // NOPMD - for logging purposes
       LOGGER.error("Could not get or create filer folder: {}", node, e);
       throw e;
@@ -86,8 +220,91 @@ public class FilerOperationServiceImpl implements FilerOperationService {
     return node.getNodeRef().get();
   }
 
+  @Override
+  public Optional<NodeRef> getResolvedFolder(final NodeRef root, final List<Pair<QName, String>> path) {
+    return filerFolderService.getResolvedFolder(root, path);
+  }
+
+  @Override
+  public void putResolvedFolder(final NodeRef root, final List<Pair<QName, String>> path, final List<NodeRef> folders) {
+    filerFolderService.putResolvedFolder(root, path, folders);
+  }
+
+  @Override
+  public void prefetchFolders(final NodeRef root, final List<String> path) {
+    filerFolderService.prefetchFolders(root, path);
+  }
+
+  @Override
+  public List<NodeRef> getAncestorFolders(final NodeRef root, final NodeRef folder, final int depth, final List<String> path) {
+    return filerFolderService.getAncestorFolders(root, folder, depth, path);
+  }
+
+  @Override
+  public Set<QName> getUpdatedProperties(final RepositoryNode node) {
+    RepositoryNodeDifference difference = new RepositoryNodeDifference(
+        FilerTransactionUtils.getInitialNode(node.getNodeRef().get()), node);
+    Set<QName> result = new HashSet<>(difference.getPropertiesToAdd().keySet());
+    result.addAll(difference.getPropertiesToRemove());
+    return result;
+  }
+
+  @Override
+  public boolean isPlacedNode(final NodeRef nodeRef) {
+    return FilerTransactionUtils.isPlacedNode(nodeRef);
+  }
+
   @Override
   public void updateFileable(final RepositoryNode node, final NodeRef destination, final String newName) {
+    Map<NodeRef, DeferredUpdate> deferredUpdates = AlfrescoTransactionSupport.getResource(TRANSACTION_DEFERRED_UPDATE_KEY);
+    if (deferredUpdates == null) {
+      updateFileableImpl(node, destination, newName);
+    } else {
+      // Last resolution of a node wins, it is the one made from its latest state
+      deferredUpdates.put(node.getNodeRef().get(), new DeferredUpdate(node, destination, newName));
+    }
+  }
+
+  @Override
+  public void runWithDeferredUpdates(final Runnable resolution) {
+    Map<NodeRef, DeferredUpdate> deferredUpdates = new LinkedHashMap<>();
+    AlfrescoTransactionSupport.bindResource(TRANSACTION_DEFERRED_UPDATE_KEY, deferredUpdates);
+    try {
+      resolution.run();
+    } finally {
+      AlfrescoTransactionSupport.unbindResource(TRANSACTION_DEFERRED_UPDATE_KEY);
+    }
+    if (!deferredUpdates.isEmpty()) {
+      // Each update locks its own segments again, these locks are then reused
+      AuthenticationUtil.runAsSystem(() -> {
+        filerFolderService.lockFolders(getFoldersToLock(deferredUpdates.values()));
+        return null;
+      });
+      for (DeferredUpdate update : deferredUpdates.values()) {
+        // Like the actions which resolved them (see #execute), updates must not trigger the filer again
+        filerModelService.runWithoutFileableBehaviour(update.node.getNodeRef().get(), () -> {
+          updateFileableImpl(update.node, update.destination, update.newName);
+        });
+      }
+    }
+  }
+
+  /**
+   * Target segments, along with the original segments which are deleted afterwards if they became empty
+   */
+  private Set<NodeRef> getFoldersToLock(final Collection<DeferredUpdate> updates) {
+    Set<NodeRef> result = new HashSet<>();
+    for (DeferredUpdate update : updates) {
+      result.add(update.destination);
+      FilerNodeUtils.getOriginalNode(update.node).getParent()
+          .filter(parent -> !parent.equals(update.destination))
+          .filter(parent -> nodeService.hasAspect(parent, filerModelService.getSegmentAspect()))
+          .ifPresent(result::add);
+    }
+    return result;
+  }
+
+  private void updateFileableImpl(final RepositoryNode node, final NodeRef destination, final String newName) {
     node.setParent(destination);
     node.getProperties().put(ContentModel.PROP_NAME, newName);
     RepositoryNode initialNode = FilerTransactionUtils.getInitialNode(node.getNodeRef().get());
@@ -98,8 +315,11 @@ public class FilerOperationServiceImpl implements FilerOperationService {
       LOGGER.error("Could not update fileable: {}", node, e);
       throw e;
     }
-    // Delete previous parent if it became an empty segment
-    deleteSegment(originalNode.getParent().get());
+    // Delete previous parent if it became an empty segment, it cannot be empty if the node is still in it
+    NodeRef originalParent = originalNode.getParent().get();
+    if (!originalParent.equals(destination)) {
+      deleteSegment(originalParent);
+    }
   }
 
   @Override
@@ -114,45 +334,259 @@ public class FilerOperationServiceImpl implements FilerOperationService {
 
   @Override
   public void deleteSegment(final NodeRef nodeRef) {
+    deleteSegments(Collections.singleton(nodeRef));
+  }
+
+  private void deleteSegments(final Collection<NodeRef> segments) {
     try {
       // Run as System because current user may not have the permission to see all nodes nor to remove nodes
       AuthenticationUtil.runAsSystem(() -> {
-        deleteSegmentRecursively(nodeRef);
+        deleteSegmentsImpl(segments);
         return null;
       });
     } catch (RuntimeException e) { // NOPMD - for logging purposes
-      LOGGER.error("Could not remove filer segment: {}", nodeRef, e);
+      LOGGER.error("Could not remove filer segment(s): {}", segments, e);
+      throw e;
+    }
+  }
+
+  @Override
+  public void deleteSegmentOnCommit(final NodeRef nodeRef) {
+    filerStatisticsService.increment(SEGMENT_CLEANUP_REQUEST);
+    // Node could be part of a hierarchy deletion, in this case it will be deleted that way along with its children
+    boolean pendingDelete = AuthenticationUtil.runAsSystem(() -> nodeService.exists(nodeRef) && isPendingDelete(nodeRef));
+    if (pendingDelete) {
+      filerStatisticsService.increment(SEGMENT_CLEANUP_SKIPPED);
+    } else {
+      getSegmentCleanup().add(nodeRef);
+    }
+  }
+
+  /**
+   * Node is pending delete if it is part of a hierarchy deletion, i.e. if any of its ancestors is being deleted.<br>
+   * The result is remembered for the whole path up to the first ancestor already checked in the transaction, so that other
+   * nodes of the same hierarchy do not walk it again. A node found not pending delete might be deleted later in the
+   * transaction: its segments are then requested for cleanup, which skips them at commit as they no longer exist.
+   */
+  private boolean isPendingDelete(final NodeRef nodeRef) {
+    List<NodeRef> path = new ArrayList<>();
+    NodeRef current = nodeRef;
+    Optional<Boolean> result = Optional.empty();
+    while (!result.isPresent()) {
+      result = FilerTransactionUtils.getPendingDelete(current);
+      if (!result.isPresent()) {
+        path.add(current);
+        if (nodeService.hasAspect(current, ContentModel.ASPECT_PENDING_DELETE)) {
+          result = Optional.of(Boolean.TRUE);
+        } else {
+          current = nodeService.getPrimaryParent(current).getParentRef();
+          if (current == null) {
+            result = Optional.of(Boolean.FALSE);
+          }
+        }
+      }
+    }
+    boolean pendingDelete = result.get();
+    path.forEach(node -> FilerTransactionUtils.putPendingDelete(node, pendingDelete));
+    return pendingDelete;
+  }
+
+  private Set<NodeRef> getSegmentCleanup() {
+    Set<NodeRef> segments = getBoundSegmentCleanup();
+    if (segments == null) {
+      segments = new LinkedHashSet<>();
+      AlfrescoTransactionSupport.bindResource(TRANSACTION_SEGMENT_CLEANUP_KEY, segments);
+      // Use a new listener for each cleanup, as a listener that has already been called before commit is not called again
+      AlfrescoTransactionSupport.bindListener(new SegmentCleanupTransactionListener());
+    }
+    return segments;
+  }
+
+  @CheckForNull
+  private static Set<NodeRef> getBoundSegmentCleanup() {
+    return AlfrescoTransactionSupport.getResource(TRANSACTION_SEGMENT_CLEANUP_KEY);
+  }
+
+  private void executeBoundSegmentCleanup() {
+    Set<NodeRef> segments = getBoundSegmentCleanup();
+    // Unbind it first, so that cleanup requested while executing this one is performed afterwards
+    AlfrescoTransactionSupport.unbindResource(TRANSACTION_SEGMENT_CLEANUP_KEY);
+    if (segments != null && !segments.isEmpty()) {
+      filerStatisticsService.record(SEGMENT_CLEANUP_SIZE, segments.size());
+      deleteSegments(segments);
+    }
+  }
+
+  /**
+   * Lock the segments and the ancestors that would become empty along with them at once, so that they are acquired in a
+   * global order (see {@link FilerFolderService#lockFolders}). Another transaction can be deleting the last child of one of
+   * them but may have not committed yet: it holds the lock of that parent, so the emptiness is only checked under locks.
+   */
+  private void deleteSegmentsImpl(final Collection<NodeRef> segments) {
+    NavigableMap<Integer, Set<NodeRef>> levels = getSegmentLevels(segments);
+    filerFolderService.lockFolders(getSegmentsToLock(copyLevels(levels)));
+    // Clean deepest segments first, so that their parents can be checked (and deleted) once they are all gone
+    while (!levels.isEmpty()) {
+      Map.Entry<Integer, Set<NodeRef>> level = levels.pollFirstEntry();
+      for (NodeRef segment : level.getValue()) {
+        if (isSegment(segment)) {
+          if (!FilerTransactionUtils.isLockedFolder(segment)) {
+            // Parent of a deleted segment which was not deletable when the locks were taken: a concurrent transaction may have
+            // emptied it since, so its emptiness is checked under lock too. This lock is out of the global order: a
+            // transaction emptying it did not lock it along with its own segments, as the segment deleted here was not empty
+            // to it, so it does not wait for the segments locked here. A transaction creating a folder in it only waits for
+            // them if it moves a node out of one of them, then the database detects the deadlock and one of them is retried
+            filerFolderService.lockFolder(segment);
+          }
+          NodeRef parent = nodeService.getPrimaryParent(segment).getParentRef();
+          if (deleteEmptySegment(segment) && parent != null) {
+            addSegmentLevel(levels, level.getKey() - 1, parent);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Segments which would be deleted and their parent, which is checked once they are gone, as read before locking them
+   */
+  private Set<NodeRef> getSegmentsToLock(final NavigableMap<Integer, Set<NodeRef>> levels) {
+    Set<NodeRef> result = new HashSet<>();
+    Set<NodeRef> deletable = new HashSet<>();
+    while (!levels.isEmpty()) {
+      Map.Entry<Integer, Set<NodeRef>> level = levels.pollFirstEntry();
+      for (NodeRef segment : level.getValue()) {
+        if (isSegment(segment)) {
+          result.add(segment);
+          if (isDeletable(segment, deletable)) {
+            deletable.add(segment);
+            addSegmentLevel(levels, level.getKey() - 1, nodeService.getPrimaryParent(segment).getParentRef());
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private boolean isDeletable(final NodeRef nodeRef, final Set<NodeRef> deletable) {
+    return nodeService.getChildAssocs(nodeRef, ContentModel.ASSOC_CONTAINS, RegexQNamePattern.MATCH_ALL).stream()
+        .allMatch(childAssoc -> deletable.contains(childAssoc.getChildRef())) && !isRetained(nodeRef);
+  }
+
+  /**
+   * Group segments by depth, deepest first. A single segment does not need its depth
+   */
+  private NavigableMap<Integer, Set<NodeRef>> getSegmentLevels(final Collection<NodeRef> segments) {
+    NavigableMap<Integer, Set<NodeRef>> levels = new TreeMap<>(Comparator.reverseOrder());
+    for (NodeRef segment : segments) {
+      if (segments.size() == 1) {
+        addSegmentLevel(levels, 0, segment);
+      } else if (nodeService.exists(segment)) {
+        addSegmentLevel(levels, nodeService.getPath(segment).size(), segment);
+      }
+    }
+    return levels;
+  }
+
+  private static NavigableMap<Integer, Set<NodeRef>> copyLevels(final NavigableMap<Integer, Set<NodeRef>> levels) {
+    NavigableMap<Integer, Set<NodeRef>> result = new TreeMap<>(levels.comparator());
+    levels.forEach((depth, segments) -> result.put(depth, new LinkedHashSet<>(segments)));
+    return result;
+  }
+
+  private static void addSegmentLevel(final NavigableMap<Integer, Set<NodeRef>> levels, final int depth,
+      @CheckForNull final NodeRef nodeRef) {
+    if (nodeRef != null) {
+      levels.computeIfAbsent(depth, x -> new LinkedHashSet<>()).add(nodeRef);
+    }
+  }
+
+  /**
+   * Check that this is indeed a filer, which is not going to be deleted anyway
+   */
+  private boolean isSegment(final NodeRef nodeRef) {
+    return nodeService.exists(nodeRef) && !isPendingDelete(nodeRef)
+        && nodeService.hasAspect(nodeRef, filerModelService.getSegmentAspect());
+  }
+
+  @Override
+  public int purgeSegments(final int maxSegments) {
+    try {
+      // Run as System because current user may not have the permission to see all nodes nor to remove nodes
+      return AuthenticationUtil.runAsSystem(() -> purgeSegmentsImpl(maxSegments));
+    } catch (RuntimeException e) { // NOPMD - for logging purposes
+      LOGGER.error("Could not purge filer segments", e);
       throw e;
     }
   }
 
-  private void deleteSegmentRecursively(final NodeRef nodeRef) {
-    // Check that this is indeed a filer
-    if (nodeService.exists(nodeRef) && nodeService.hasAspect(nodeRef, filerModelService.getSegmentAspect())) {
-      // Lock it, to prevent any concurrent removal that may fail to find that it became empty
-      // Indeed, another thread can be deleting the last child but may have not committed yet
-      filerFolderService.lockFolder(nodeRef);
-      deleteEmptySegment(nodeRef);
+  private int purgeSegmentsImpl(final int maxSegments) {
+    List<NodeRef> segments = getPurgeableSegments(maxSegments);
+    if (!segments.isEmpty()) {
+      deleteSegmentsImpl(segments);
+    }
+    return (int) segments.stream().filter(segment -> !nodeService.exists(segment)).count();
+  }
+
+  /**
+   * Segments can be anywhere in the repository, e.g. under a subscriber outside of any site. Only segments kept while empty
+   * are looked up, others are deleted as soon as they become empty. The query is run against the database when possible, so
+   * that segments purged by a previous batch are not found again.
+   */
+  private List<NodeRef> getPurgeableSegments(final int maxSegments) {
+    Date emptiedBefore = Date.from(Instant.now().minusSeconds(segmentRetention));
+    SearchParameters searchParameters = new SearchParameters();
+    searchParameters.addStore(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+    searchParameters.setLanguage(SearchService.LANGUAGE_FTS_ALFRESCO);
+    searchParameters.setQueryConsistency(QueryConsistency.TRANSACTIONAL_IF_POSSIBLE);
+    searchParameters.setQuery(String.format("ASPECT:\"%s\" AND %s:[MIN TO \"%s\"]",
+        filerModelService.getSegmentAspect().toPrefixString(namespaceService),
+        filerModelService.getSegmentEmptiedProperty().toPrefixString(namespaceService),
+        ISO8601DateFormat.format(emptiedBefore)));
+    searchParameters.setMaxItems(maxSegments);
+    ResultSet results = searchService.query(searchParameters);
+    try {
+      return results.getNodeRefs();
+    } finally {
+      results.close();
     }
   }
 
-  private void deleteEmptySegment(final NodeRef nodeRef) {
+  /**
+   * @return {@code true} if the segment was empty and has been deleted
+   */
+  private boolean deleteEmptySegment(final NodeRef nodeRef) {
+    boolean result = false;
     // Check that it has no child anymore
     if (nodeService.getChildAssocs(nodeRef, ContentModel.ASSOC_CONTAINS, RegexQNamePattern.MATCH_ALL).isEmpty()) {
-      // Get parent nodeRef before deleting child... so the association still exists
-      NodeRef parent = nodeService.getPrimaryParent(nodeRef).getParentRef();
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("Deleting empty filer segment: {}{node={}, path=\"{}\"}",
-            nodeService.getProperty(nodeRef, ContentModel.PROP_NAME),
-            nodeRef.getId(),
-            nodeService.getPath(nodeRef).toDisplayPath(nodeService, permissionService));
-      }
-      filerFolderService.deleteFolder(nodeRef);
-      // Check if parent is now also an empty filer (policies are not applied recursively)
-      if (parent != null) {
-        deleteSegmentRecursively(parent);
+      if (isRetained(nodeRef)) {
+        // Keep it for a while, it might be reused soon. It will be deleted by a later cleanup
+        filerFolderService.retainFolder(nodeRef);
+      } else {
+        deleteSegmentImpl(nodeRef);
+        result = true;
       }
     }
+    return result;
+  }
+
+  private boolean isRetained(final NodeRef nodeRef) {
+    boolean result = false;
+    if (segmentRetention > 0) {
+      Date emptied = (Date) nodeService.getProperty(nodeRef, filerModelService.getSegmentEmptiedProperty());
+      result = emptied == null || emptied.toInstant().plusSeconds(segmentRetention).isAfter(Instant.now());
+    }
+    return result;
+  }
+
+  private void deleteSegmentImpl(final NodeRef nodeRef) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("Deleting empty filer segment: {}{node={}, path=\"{}\"}",
+          nodeService.getProperty(nodeRef, ContentModel.PROP_NAME),
+          nodeRef.getId(),
+          nodeService.getPath(nodeRef).toDisplayPath(nodeService, permissionService));
+    }
+    filerFolderService.deleteFolder(nodeRef);
   }
 
   public void setFilerModelService(final FilerModelService filerModelService) {
@@ -171,7 +605,74 @@ public class FilerOperationServiceImpl implements FilerOperationService {
     this.nodeService = nodeService;
   }
 
+  public void setNodeDAO(final NodeDAO nodeDAO) {
+    this.nodeDAO = nodeDAO;
+  }
+
   public void setPermissionService(final PermissionService permissionService) {
     this.permissionService = permissionService;
   }
+
+  public void setSearchService(final SearchService searchService) {
+    this.searchService = searchService;
+  }
+
+  public void setNamespaceService(final NamespaceService namespaceService) {
+    this.namespaceService = namespaceService;
+  }
+
+  public void setFilerStatisticsService(final FilerStatisticsService filerStatisticsService) {
+    this.filerStatisticsService = filerStatisticsService;
+  }
+
+  /**
+   * @param callbackCache shared cache of the segment modification date and ACL each idempotent callback was last executed for
+   */
+  public void setCallbackCache(final SimpleCache<Pair<NodeRef, String>, Serializable> callbackCache) {
+    this.callbackCache = callbackCache;
+  }
+
+  /**
+   * @param segmentRetention duration in seconds during which an empty segment is kept before being deleted, 0 to delete it
+   * as soon as it becomes empty
+   */
+  public void setSegmentRetention(final long segmentRetention) {
+    this.segmentRetention = segmentRetention;
+  }
+
+  private final class SegmentCleanupTransactionListener extends TransactionListenerAdapter {
+
+    @Override
+    public void beforeCommit(final boolean readOnly) {
+      executeBoundSegmentCleanup();
+    }
+  }
+
+  private static final class DeferredUpdate {
+
+    private final RepositoryNode node;
+    private final NodeRef destination;
+    private final String newName;
+
+    DeferredUpdate(final RepositoryNode node, final NodeRef destination, final String newName) {
+      this.node = node;
+      this.destination = destination;
+      this.newName = newName;
+    }
+  }
+
+  private final class CallbackTransactionListener extends TransactionListenerAdapter {
+
+    private final Map<Pair<NodeRef, String>, Serializable> executed;
+
+    CallbackTransactionListener(final Map<Pair<NodeRef, String>, Serializable> executed) {
+      this.executed = executed;
+    }
+
+    @Override
+    public void afterCommit() {
+      // Executions are only shared once their effects are committed
+      executed.forEach(callbackCache::put);
+    }
+  }
 }
@@ -0,0 +1,538 @@
+package com.atolcd.alfresco.filer.core.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+import com.atolcd.alfresco.filer.core.model.FilerException;
+import com.atolcd.alfresco.filer.core.model.FilerFolderContext;
+import com.atolcd.alfresco.filer.core.model.FilerNameSuffix;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.service.FilerService;
+import com.atolcd.alfresco.filer.core.util.FilerNodeUtils;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Immutable filer tree recorded by {@link FilerBuilder#record}: levels, conditions, naming templates and callbacks.<br>
+ * Builders declare the same steps whether they are run right away on a node or recorded, so executing the plan on a node
+ * has the same semantics as the fluent builders, without building them again. Steps can also be introspected, e.g. to know
+ * the properties folder names are computed from.<br>
+ * When the plan ends with a move, no folder level has a get callback and nothing depends on the context, the destination
+ * only depends on the root and on the types and names of the folders, which are computed without accessing the repository.
+ * The folder previously resolved for that path is then reused, see
+ * {@link com.atolcd.alfresco.filer.core.service.FilerFolderService#getResolvedFolder}.<br>
+ * Otherwise, levels named from properties that did not change are taken from the ancestors of the node, so that only the
+ * levels below them are resolved again.
+ */
+public final class FilerPlan {
+
+  private static final Consumer<NodeRef> NO_CALLBACK = nodeRef -> {};
+  private static final Consumer<RepositoryNode> NO_PREPARE = folder -> {};
+
+  private final FilerService filerService;
+  private final Function<RepositoryNode, NodeRef> root;
+  private final List<Step> steps;
+  private final boolean destinationReusable;
+
+  FilerPlan(final FilerService filerService, final Function<RepositoryNode, NodeRef> root, final List<Step> steps) {
+    this.filerService = filerService;
+    this.root = root;
+    this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+    this.destinationReusable = isDestinationReusable(this.steps);
+  }
+
+  private static boolean isDestinationReusable(final List<Step> steps) {
+    boolean result = !steps.isEmpty() && steps.get(steps.size() - 1) instanceof Level
+        && ((Level) steps.get(steps.size() - 1)).mode == Level.Mode.UPDATE_AND_MOVE;
+    for (int i = 0; i < steps.size() && result; i++) {
+      Step step = steps.get(i);
+      result = !(step instanceof ContextCallback) && (!(step instanceof Level) || ((Level) step).isReusable());
+    }
+    return result;
+  }
+
+  public void execute(final RepositoryNode node) {
+    NodeRef rootNodeRef = root.apply(node);
+    Execution execution = new Execution(filerService);
+    FilerFolderContext context = new FilerFolderContext(node, rootNodeRef);
+    List<Pair<QName, String>> path = destinationReusable ? getPath(context) : null;
+    int start = 0;
+    if (path != null && !path.isEmpty()) {
+      Optional<NodeRef> destination = filerService.operations().getResolvedFolder(rootNodeRef, path);
+      if (destination.isPresent()) {
+        // Go straight to the move, which is the last step
+        context = new FilerFolderContext(node, destination.get());
+        start = steps.size() - 1;
+      } else {
+        execution.folders = new ArrayList<>();
+      }
+    }
+    if (start == 0) {
+      execution.ancestors = getAncestors(context);
+    }
+    for (int i = start; i < steps.size(); i++) {
+      context = steps.get(i).run(execution, context);
+    }
+    if (execution.folders != null) {
+      filerService.operations().putResolvedFolder(rootNodeRef, path, execution.folders);
+    }
+  }
+
+  /**
+   * @return types and names of the folders leading to the destination, or {@code null} if the node is not moved
+   */
+  @CheckForNull
+  private List<Pair<QName, String>> getPath(final FilerFolderContext context) {
+    List<Pair<QName, String>> path = new ArrayList<>();
+    boolean enabled = true;
+    for (Step step : steps) {
+      if (step instanceof Condition) {
+        enabled = ((Condition) step).test(context.getNode(), enabled);
+      } else if (enabled && step instanceof Level && ((Level) step).mode != Level.Mode.UPDATE_AND_MOVE) {
+        Level level = (Level) step;
+        path.add(new Pair<>(level.type, level.getName(context)));
+      }
+    }
+    return enabled ? path : null;
+  }
+
+  /**
+   * Look up the existing folders of the first levels of the plan, as long as their names are known from properties
+   */
+  public void prefetch(final RepositoryNode node) {
+    NodeRef rootNodeRef = root.apply(node);
+    List<String> path = new ArrayList<>();
+    getUnchangedPath(new FilerFolderContext(node, rootNodeRef), Collections.emptySet(), path);
+    if (!path.isEmpty()) {
+      filerService.operations().prefetchFolders(rootNodeRef, path);
+    }
+  }
+
+  /**
+   * @return existing folders of the first levels of the plan, whose names did not change, if the node is filed again from
+   *         where it was filed before
+   */
+  private List<NodeRef> getAncestors(final FilerFolderContext context) {
+    List<NodeRef> result = Collections.emptyList();
+    RepositoryNode node = context.getNode();
+    Optional<NodeRef> parent = node.getParent();
+    // Created nodes and nodes entering a subscriber are not in a filed folder yet, their ancestors cannot match the plan
+    if (node.getNodeRef().isPresent() && parent.isPresent()
+        && !filerService.operations().isPlacedNode(node.getNodeRef().get())) {
+      FilerOperationService operations = filerService.operations();
+      List<String> path = new ArrayList<>();
+      int depth = getUnchangedPath(context, operations.getUpdatedProperties(node), path);
+      if (!path.isEmpty()) {
+        result = operations.getAncestorFolders(context.getParent(), parent.get(), depth, path);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Collect the names of the first folder levels, as long as these are computed from properties that were not updated
+   *
+   * @return number of folder levels leading to the destination
+   */
+  private int getUnchangedPath(final FilerFolderContext context, final Set<QName> updatedProperties,
+      final List<String> path) {
+    int depth = 0;
+    boolean enabled = true;
+    boolean unchanged = true;
+    for (Step step : steps) {
+      if (step instanceof Condition) {
+        enabled = ((Condition) step).test(context.getNode(), enabled);
+      } else if (step instanceof ContextCallback) {
+        // Anything may depend on the context from now on
+        unchanged = false;
+      } else if (enabled && ((Level) step).mode != Level.Mode.UPDATE_AND_MOVE) {
+        Level level = (Level) step;
+        unchanged = unchanged && level.isUnchanged(updatedProperties);
+        if (unchanged) {
+          path.add(level.getName(context));
+        }
+        depth++;
+      }
+    }
+    return depth;
+  }
+
+  public List<Step> getSteps() {
+    return steps;
+  }
+
+  /**
+   * @return properties declared by the naming templates of the plan, names computed by functions are not included
+   */
+  public Set<QName> getNameProperties() {
+    Set<QName> properties = new LinkedHashSet<>();
+    for (Step step : steps) {
+      if (step instanceof Level) {
+        ((Level) step).getName().ifPresent(name -> properties.addAll(name.getProperties()));
+      }
+    }
+    return properties;
+  }
+
+  /**
+   * Receives the steps declared by the builders: they are either run right away on the context of a node, or recorded
+   * into a plan
+   */
+  static final class Target {
+
+    private final FilerService filerService;
+    private final Execution execution;
+    @CheckForNull
+    private final List<Step> recordedSteps;
+    @CheckForNull
+    private Function<RepositoryNode, NodeRef> root;
+
+    private Target(final FilerService filerService, @CheckForNull final List<Step> recordedSteps) {
+      this.filerService = filerService;
+      this.execution = new Execution(filerService);
+      this.recordedSteps = recordedSteps;
+    }
+
+    static Target running(final FilerService filerService) {
+      return new Target(filerService, null);
+    }
+
+    static Target recording(final FilerService filerService) {
+      return new Target(filerService, new ArrayList<>());
+    }
+
+    boolean isRecording() {
+      return recordedSteps != null;
+    }
+
+    /**
+     * @return context resulting from the step, or {@code null} when the step is recorded
+     */
+    @CheckForNull
+    FilerFolderContext accept(final Step step, @CheckForNull final FilerFolderContext context) {
+      FilerFolderContext result = null;
+      if (recordedSteps == null) {
+        result = step.run(execution, Objects.requireNonNull(context));
+      } else {
+        recordedSteps.add(step);
+      }
+      return result;
+    }
+
+    void setRoot(final Function<RepositoryNode, NodeRef> root) {
+      this.root = root;
+    }
+
+    FilerPlan toPlan() {
+      if (recordedSteps == null || root == null) {
+        throw new FilerException("Filer tree has not been recorded from a root");
+      }
+      return new FilerPlan(filerService, root, recordedSteps);
+    }
+  }
+
+  /**
+   * State of the execution of a plan on a node, other than its context
+   */
+  static final class Execution {
+
+    private final FilerService filerService;
+    /**
+     * Folders resolved for the destination, when they are to be remembered
+     */
+    @CheckForNull
+    private List<NodeRef> folders;
+    /**
+     * Existing folders of the first levels, see {@link FilerPlan#getAncestors}
+     */
+    private List<NodeRef> ancestors = Collections.emptyList();
+    private int depth;
+
+    private Execution(final FilerService filerService) {
+      this.filerService = filerService;
+    }
+  }
+
+  public abstract static class Step {
+
+    private Step() {
+      // Steps are only defined by the builders
+    }
+
+    abstract FilerFolderContext run(Execution execution, FilerFolderContext context);
+  }
+
+  public static final class Condition extends Step {
+
+    public enum Kind {
+      TEST,
+      REVERSE,
+      END
+    }
+
+    private final Kind kind;
+    @CheckForNull
+    private final Predicate<RepositoryNode> predicate;
+
+    Condition(final Kind kind, @CheckForNull final Predicate<RepositoryNode> predicate) {
+      super();
+      this.kind = kind;
+      this.predicate = predicate;
+    }
+
+    @Override
+    FilerFolderContext run(final Execution execution, final FilerFolderContext context) {
+      context.enable(test(context.getNode(), context.isEnabled()));
+      return context;
+    }
+
+    private boolean test(final RepositoryNode node, final boolean enabled) {
+      boolean result;
+      switch (kind) {
+        case TEST:
+          result = predicate != null && predicate.test(node);
+          break;
+        case REVERSE:
+          result = !enabled;
+          break;
+        default:
+          result = true;
+          break;
+      }
+      return result;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    public Optional<Predicate<RepositoryNode>> getPredicate() {
+      return Optional.ofNullable(predicate);
+    }
+  }
+
+  /**
+   * Callback on the context of the current level, see {@link FilerFolderBuilder#contextFrom}
+   */
+  public static final class ContextCallback extends Step {
+
+    private final Consumer<FilerFolderContext> callback;
+
+    ContextCallback(final Consumer<FilerFolderContext> callback) {
+      super();
+      this.callback = callback;
+    }
+
+    @Override
+    FilerFolderContext run(final Execution execution, final FilerFolderContext context) {
+      if (context.isEnabled()) {
+        callback.accept(context);
+      }
+      return context;
+    }
+  }
+
+  public static final class Level extends Step {
+
+    public enum Mode {
+      GET,
+      GET_OR_CREATE,
+      UPDATE_AND_MOVE
+    }
+
+    private final Mode mode;
+    @CheckForNull
+    private final QName type;
+    @CheckForNull
+    private final FilerNameTemplate name;
+    @CheckForNull
+    private final FilerNameSuffix suffix;
+    private final Set<QName> mandatoryAspects;
+    private final Set<QName> optionalAspects;
+    private final boolean clearInheritance;
+    private final Consumer<RepositoryNode> onPrepare;
+    @CheckForNull
+    private final BiConsumer<NodeRef, RepositoryNode> onGet;
+    @CheckForNull
+    private final BiConsumer<NodeRef, RepositoryNode> onCreate;
+
+    /**
+     * Level of a folder, or move of the node changing its type
+     */
+    Level(final Mode mode, final FilerFolderTypeBuilder builder) {
+      super();
+      this.mode = mode;
+      this.type = builder.getType();
+      this.name = builder.named().getTemplate();
+      this.suffix = builder.named().getSuffix();
+      this.mandatoryAspects = Collections.unmodifiableSet(new LinkedHashSet<>(builder.getMandatoryAspects()));
+      this.optionalAspects = Collections.unmodifiableSet(new LinkedHashSet<>(builder.getOptionalAspects()));
+      this.clearInheritance = builder.isClearInheritance();
+      this.onPrepare = Optional.ofNullable(builder.getOnPrepare()).orElse(NO_PREPARE);
+      this.onGet = builder.getOnGet();
+      this.onCreate = builder.getOnCreate();
+    }
+
+    /**
+     * Move of the node keeping its type, with its own name unless it is renamed
+     */
+    Level(final FilerNameBuilder<?> nodeName) {
+      super();
+      this.mode = Mode.UPDATE_AND_MOVE;
+      this.type = null;
+      this.name = nodeName.getTemplate();
+      this.suffix = nodeName.getSuffix();
+      this.mandatoryAspects = Collections.emptySet();
+      this.optionalAspects = Collections.emptySet();
+      this.clearInheritance = false;
+      this.onPrepare = NO_PREPARE;
+      this.onGet = null;
+      this.onCreate = null;
+    }
+
+    @Override
+    FilerFolderContext run(final Execution execution, final FilerFolderContext context) {
+      FilerFolderContext levelContext = new FilerFolderContext(context, context.getParent());
+      FilerFolderContext result = levelContext;
+      if (levelContext.isEnabled()) {
+        inherit(levelContext);
+        NodeRef parent = levelContext.getParent();
+        NodeRef child = parent;
+        RepositoryNode node = levelContext.getNode();
+        FilerService filerService = execution.filerService;
+        if (mode != Mode.UPDATE_AND_MOVE && execution.depth < execution.ancestors.size()) {
+          // Folder is named from unchanged properties, so it is the one the node is already in
+          child = execution.ancestors.get(execution.depth);
+        } else {
+          switch (mode) {
+            case GET:
+              child = filerService.operations().getFolder(parent, getName(levelContext), callback(onGet, node));
+              break;
+            case GET_OR_CREATE:
+              child = filerService.operations().getOrCreateFolder(parent, type, getName(levelContext),
+                  prepare(filerService, levelContext), callback(onGet, node), callback(onCreate, node));
+              break;
+            default:
+              updateAndMove(filerService, levelContext);
+              break;
+          }
+        }
+        if (mode != Mode.UPDATE_AND_MOVE) {
+          execution.depth++;
+          if (execution.folders != null) {
+            execution.folders.add(child);
+          }
+        }
+        result = new FilerFolderContext(levelContext, child);
+      }
+      return result;
+    }
+
+    private void inherit(final FilerFolderContext context) {
+      if (clearInheritance) {
+        context.clearPropertyInheritance();
+      }
+      if (!mandatoryAspects.isEmpty() || !optionalAspects.isEmpty()) {
+        context.getPropertyInheritance().getMandatoryAspects().addAll(mandatoryAspects);
+        context.getPropertyInheritance().getOptionalAspects().addAll(optionalAspects);
+      }
+    }
+
+    private Consumer<RepositoryNode> prepare(final FilerService filerService, final FilerFolderContext context) {
+      Consumer<RepositoryNode> result = onPrepare;
+      if (context.hasPropertyInheritance()) {
+        // Apply property inheritance on the folder
+        result = result.andThen(folder -> folder.getProperties().putAll(filerService.propertyInheritance()
+            .getProperties(context.getNode(), context.getPropertyInheritance())));
+      }
+      return result;
+    }
+
+    private void updateAndMove(final FilerService filerService, final FilerFolderContext context) {
+      RepositoryNode node = context.getNode();
+      String nodeName;
+      if (type == null) {
+        nodeName = Optional.ofNullable(name).map(template -> template.apply(context)).orElseGet(() -> node.getName()
+            .orElseThrow(() -> new FilerException("Could not compute the name of the node: " + node)));
+      } else {
+        // Update type
+        node.setType(type);
+        nodeName = getName(context);
+      }
+      if (suffix != null) {
+        FilerNodeUtils.setNameSuffix(node, suffix);
+      }
+      // Update node, which will apply property inheritance
+      filerService.operations().updateFileable(node, context.getParent(), nodeName);
+      if (type != null) {
+        // Apply node get/create functions if this is required, property inheritance is already applied
+        Consumer<NodeRef> onTemplate = nodeRef -> filerService.operations().setTemplate(nodeRef, onPrepare);
+        filerService.operations().updateFolder(node, callback(onGet, node), onTemplate.andThen(callback(onCreate, node)));
+      }
+    }
+
+    /**
+     * @return whether the folder of this level only depends on its parent and on its name, computed from the node
+     */
+    private boolean isReusable() {
+      return mode == Mode.UPDATE_AND_MOVE || (onGet == null && (name == null || !name.isContextual()));
+    }
+
+    /**
+     * @return whether the folder of this level is known from the properties its name is computed from, and these were not
+     *         updated
+     */
+    private boolean isUnchanged(final Set<QName> updatedProperties) {
+      return onGet == null && name != null && name.isDeclarative()
+          && Collections.disjoint(name.getProperties(), updatedProperties);
+    }
+
+    private String getName(final FilerFolderContext context) {
+      return Optional.ofNullable(name).map(template -> template.apply(context))
+          .orElseThrow(() -> new FilerException("Could not compute the name of the folder for node: " + context.getNode()));
+    }
+
+    private static Consumer<NodeRef> callback(@CheckForNull final BiConsumer<NodeRef, RepositoryNode> callback,
+        final RepositoryNode node) {
+      return callback == null ? NO_CALLBACK : nodeRef -> callback.accept(nodeRef, node);
+    }
+
+    public Mode getMode() {
+      return mode;
+    }
+
+    public Optional<QName> getType() {
+      return Optional.ofNullable(type);
+    }
+
+    public Optional<FilerNameTemplate> getName() {
+      return Optional.ofNullable(name);
+    }
+
+    public Set<QName> getMandatoryAspects() {
+      return mandatoryAspects;
+    }
+
+    public Set<QName> getOptionalAspects() {
+      return optionalAspects;
+    }
+
+    public boolean isClearInheritance() {
+      return clearInheritance;
+    }
+  }
+}
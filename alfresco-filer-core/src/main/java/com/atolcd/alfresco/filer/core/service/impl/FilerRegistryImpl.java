@@ -1,10 +1,14 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
+import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.alfresco.service.namespace.QName;
 
 import com.atolcd.alfresco.filer.core.model.FilerAction;
 import com.atolcd.alfresco.filer.core.scope.FilerScopeLoader;
@@ -19,10 +23,31 @@ public class FilerRegistryImpl implements FilerRegistry {
   private SortedSet<FilerAction> actions;
   @CheckForNull
   private Set<FilerScopeLoader> scopeLoaders;
+  @CheckForNull
+  private Set<QName> inputProperties;
+  private String signature = "";
 
   @Override
   public void registerAction(final FilerAction action) {
     getActions().add(action);
+    // Actions are registered at startup, so that these are computed once for all
+    inputProperties = computeInputProperties();
+    signature = getActions().stream().map(filer -> filer.getName() + ':' + filer.getVersion())
+        .collect(Collectors.joining(","));
+  }
+
+  @CheckForNull
+  private Set<QName> computeInputProperties() {
+    Set<QName> result = new TreeSet<>(Comparator.comparing(QName::toString));
+    for (FilerAction action : getActions()) {
+      Set<QName> properties = action.getInputProperties();
+      if (properties.isEmpty()) {
+        result = null; // NOPMD - an action may depend on any property
+        break;
+      }
+      result.addAll(properties);
+    }
+    return result;
   }
 
   @Override
@@ -38,6 +63,16 @@ public class FilerRegistryImpl implements FilerRegistry {
     return actions;
   }
 
+  @Override
+  public Optional<Set<QName>> getInputProperties() {
+    return Optional.ofNullable(inputProperties);
+  }
+
+  @Override
+  public String getSignature() {
+    return signature;
+  }
+
   @Override
   public Set<FilerScopeLoader> getScopeLoaders() {
     scopeLoaders = Optional.ofNullable(scopeLoaders).orElseGet(LinkedHashSet::new);
@@ -0,0 +1,51 @@
+package com.atolcd.alfresco.filer.core.service.impl;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.schedule.AbstractScheduledLockedJob;
+import org.alfresco.service.transaction.TransactionService;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+
+/**
+ * Delete the segments that have been kept empty longer than their retention period (see
+ * {@link FilerOperationService#purgeSegments}). Segments are purged in batches, each one in its own transaction, until a
+ * batch is not full.
+ */
+public class FilerSegmentPurgeJob extends AbstractScheduledLockedJob {
+
+  public static final String FILER_OPERATION_SERVICE_KEY = "filerOperationService";
+  public static final String TRANSACTION_SERVICE_KEY = "transactionService";
+  public static final String BATCH_SIZE_KEY = "batchSize";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FilerSegmentPurgeJob.class);
+
+  @Override
+  public void executeJob(final JobExecutionContext jobContext) {
+    JobDataMap jobData = jobContext.getJobDetail().getJobDataMap();
+    FilerOperationService filerOperationService = (FilerOperationService) jobData.get(FILER_OPERATION_SERVICE_KEY);
+    RetryingTransactionHelper transactionHelper = ((TransactionService) jobData.get(TRANSACTION_SERVICE_KEY))
+        .getRetryingTransactionHelper();
+    int batchSize = jobData.getIntValueFromString(BATCH_SIZE_KEY);
+    AuthenticationUtil.runAsSystem(() -> {
+      int total = 0;
+      int purged;
+      do {
+        try {
+          purged = transactionHelper.doInTransaction(() -> filerOperationService.purgeSegments(batchSize), false, true);
+        } catch (RuntimeException e) { // NOPMD - remaining segments will be purged by next execution
+          LOGGER.warn("Could not purge filer segments", e);
+          purged = 0;
+        }
+        total += purged;
+        // A batch which could not be fully purged is found again by the next one, stop there to avoid looping on it
+      } while (purged == batchSize);
+      LOGGER.debug("Purged {} filer segment(s)", total);
+      return null;
+    });
+  }
+}
@@ -1,38 +1,62 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
+import java.io.Serializable;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.service.cmr.lock.LockService;
 import org.alfresco.service.cmr.lock.NodeLockedException;
+import org.alfresco.service.cmr.repository.MLText;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 
 import com.atolcd.alfresco.filer.core.model.FilerAction;
 import com.atolcd.alfresco.filer.core.model.FilerEvent;
+import com.atolcd.alfresco.filer.core.model.FilerFingerprint;
+import com.atolcd.alfresco.filer.core.model.PropertyDigest;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.model.RepositoryNodeDifference;
+import com.atolcd.alfresco.filer.core.model.UpdateAndMoveFileableParameters;
 import com.atolcd.alfresco.filer.core.model.UpdateFilerEvent;
+import com.atolcd.alfresco.filer.core.service.FilerModelService;
 import com.atolcd.alfresco.filer.core.service.FilerOperationService;
 import com.atolcd.alfresco.filer.core.service.FilerRegistry;
 import com.atolcd.alfresco.filer.core.service.FilerService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.FilerUpdateService;
 import com.atolcd.alfresco.filer.core.service.PropertyInheritanceService;
 import com.atolcd.alfresco.filer.core.util.FilerNodeUtils;
+import com.atolcd.alfresco.filer.core.util.FilerRetryUtils;
 import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 
-public class FilerServiceImpl implements FilerService {
+public class FilerServiceImpl implements FilerService, InitializingBean {
+
+  public static final String ACTION_MEMO_HIT = "action.memo.hit";
+  public static final String SNAPSHOT_MEMORY = "snapshot.memory";
+  public static final String FINGERPRINT_MATCH = "fingerprint.match";
+  public static final String FINGERPRINT_UPDATE = "fingerprint.update";
+  public static final String SPECULATION = "speculation";
+  public static final String SPECULATION_FAILURE = "speculation.failure";
 
   private static final Collection<QName> IGNORED_PROPERTIES = Arrays.asList(
       ContentModel.PROP_CONTENT, // Because content is never used to build a filer plan
@@ -45,12 +69,20 @@ public class FilerServiceImpl implements FilerService {
       ContentModel.ASPECT_THUMBNAIL_MODIFICATION // Added by Share while browsing parent folder
   );
   private static final Logger LOGGER = LoggerFactory.getLogger(FilerServiceImpl.class);
+  private static final Class<?> TRANSACTION_SNAPSHOT_SIZE_KEY = SnapshotTransactionListener.class;
+  private static final long ENTRY_SIZE = 48;
+  private static final long CHAR_SIZE = 2;
+  private static final long DIGEST_SIZE = 64;
 
   @Nullable
   private FilerRegistry filerRegistry;
   @Nullable
   private FilerOperationService filerOperationService;
   @Nullable
+  private FilerUpdateService filerUpdateService;
+  @Nullable
+  private FilerModelService filerModelService;
+  @Nullable
   private PropertyInheritanceService propertyInheritanceService;
   @Nullable
   private NodeService nodeService;
@@ -58,15 +90,71 @@ public class FilerServiceImpl implements FilerService {
   private PermissionService permissionService;
   @Nullable
   private LockService lockService;
+  @Nullable
+  private FilerStatisticsService filerStatisticsService;
+  private int snapshotDigestThreshold;
+  private boolean speculativeResolution;
+
+  @Override
+  public void afterPropertiesSet() {
+    filerUpdateService.addOnUpdateAndMoveFileable(this::putFingerprint);
+  }
 
   @Override
   public void initFileable(final NodeRef nodeRef) {
     if (nodeService.exists(nodeRef)) {
-      RepositoryNode initialNode = RepositoryNode.builder().nodeRef(nodeRef)
-        .aspects(nodeService.getAspects(nodeRef))
-        .properties(nodeService.getProperties(nodeRef)).build();
-      FilerTransactionUtils.putInitialNode(nodeRef, initialNode);
+      FilerTransactionUtils.putInitialNode(nodeRef, getSnapshot(nodeRef));
+    }
+  }
+
+  /**
+   * Snapshots are kept until the end of the transaction for every updated fileable. Once a digest threshold is set, they
+   * only hold what filer actions depend on: ignored properties and aspects are left out and large text values are replaced by
+   * their digest
+   */
+  private RepositoryNode getSnapshot(final NodeRef nodeRef) {
+    boolean compact = snapshotDigestThreshold > 0;
+    Set<QName> aspects = new LinkedHashSet<>(nodeService.getAspects(nodeRef));
+    if (compact) {
+      aspects.removeAll(IGNORED_ASPECTS);
+    }
+    Map<QName, Serializable> properties = new LinkedHashMap<>();
+    long size = 0;
+    for (Entry<QName, Serializable> property : nodeService.getProperties(nodeRef).entrySet()) {
+      if (!compact || !IGNORED_PROPERTIES.contains(property.getKey())) {
+        Serializable value = compact ? PropertyDigest.compact(property.getValue(), snapshotDigestThreshold)
+            : property.getValue();
+        properties.put(property.getKey(), value);
+        size += estimateSize(value);
+      }
+    }
+    getSnapshotSize().addAndGet(size + ENTRY_SIZE * aspects.size());
+    return RepositoryNode.builder().nodeRef(nodeRef).aspects(aspects).properties(properties).build();
+  }
+
+  /**
+   * Rough estimate of the memory retained by a snapshot property, as it is only meant to compare configurations
+   */
+  private static long estimateSize(@CheckForNull final Serializable value) {
+    long size = ENTRY_SIZE;
+    if (value instanceof String) {
+      size += CHAR_SIZE * ((String) value).length();
+    } else if (value instanceof MLText) {
+      size += ((MLText) value).values().stream().mapToLong(text -> ENTRY_SIZE + CHAR_SIZE * text.length()).sum();
+    } else if (value instanceof PropertyDigest) {
+      size += DIGEST_SIZE;
+    }
+    return size;
+  }
+
+  private AtomicLong getSnapshotSize() {
+    AtomicLong size = AlfrescoTransactionSupport.getResource(TRANSACTION_SNAPSHOT_SIZE_KEY);
+    if (size == null) {
+      size = new AtomicLong();
+      AlfrescoTransactionSupport.bindResource(TRANSACTION_SNAPSHOT_SIZE_KEY, size);
+      AlfrescoTransactionSupport.bindListener(new SnapshotTransactionListener(size));
     }
+    return size;
   }
 
   @Override
@@ -86,6 +174,9 @@ public class FilerServiceImpl implements FilerService {
       // Upon creation, node details may not be all set, so only perform resolution checks
       if (resolveAction(event, true)) {
         filerOperationService.setFileable(event.getNode().getNodeRef().get());
+        if (speculativeResolution) {
+          speculate(event);
+        }
         result = true;
       }
       return result;
@@ -95,6 +186,36 @@ public class FilerServiceImpl implements FilerService {
     }
   }
 
+  /**
+   * Look the folders of the node up as soon as it enters a subscriber, instead of when the transaction commits.<br>
+   * Its properties may still change until then: folders are only remembered by the transaction under their parent and
+   * name, so that they are only reused if the final properties of the node lead to the same names.
+   */
+  private void speculate(final FilerEvent event) {
+    NodeRef nodeRef = event.getNode().getNodeRef().get();
+    // Node or its parent may already have been deleted by the same transaction, then there is nothing to look up
+    if (nodeService.exists(nodeRef) && event.getNode().getParent().filter(nodeService::exists).isPresent()) {
+      // Work on a copy, as the event node is only fully loaded when the action is executed
+      RepositoryNode node = new RepositoryNode(event.getNode());
+      node.getAspects().addAll(nodeService.getAspects(nodeRef));
+      node.getProperties().putAll(nodeService.getProperties(nodeRef));
+      try {
+        // Action is only set on the event once the node is filed, resolve it the same way resolution checks did
+        Optional<FilerAction> action = filerRegistry.getActions().stream()
+            .filter(filer -> filer.supportsActionResolution(event))
+            .findFirst();
+        if (action.isPresent()) {
+          action.get().prefetch(node);
+          filerStatisticsService.increment(SPECULATION);
+        }
+      } catch (RuntimeException e) { // NOPMD - speculation must never fail the operation that triggered it
+        // Properties folder names are computed from may not be set yet, and folders are looked up again upon execution
+        filerStatisticsService.increment(SPECULATION_FAILURE);
+        LOGGER.debug("Could not resolve folders ahead of commit: {}", event, e);
+      }
+    }
+  }
+
   private void executeActionImpl(final FilerEvent event) {
     if (resolveAction(event, false)) {
       RepositoryNode node = event.getNode();
@@ -117,6 +238,68 @@ public class FilerServiceImpl implements FilerService {
     }
   }
 
+  @Override
+  public boolean hasSameFingerprint(final NodeRef nodeRef, final Map<QName, Serializable> properties) {
+    boolean result = false;
+    Serializable fingerprint = properties.get(filerModelService.getFileableFingerprintProperty());
+    String actionName = FilerFingerprint.getActionName(fingerprint);
+    if (actionName != null && nodeService.exists(nodeRef)) {
+      Optional<FilerAction> action = filerRegistry.getActions().stream()
+          .filter(filer -> actionName.equals(filer.getName()))
+          .findFirst();
+      result = action.isPresent() && fingerprint.equals(getFingerprint(action.get(), nodeService.getType(nodeRef),
+          nodeService.getAspects(nodeRef), properties));
+    }
+    if (result) {
+      filerStatisticsService.increment(FINGERPRINT_MATCH);
+    }
+    return result;
+  }
+
+  @Override
+  public void resetFingerprint(final NodeRef nodeRef) {
+    QName property = filerModelService.getFileableFingerprintProperty();
+    // Node could have been deleted since
+    if (nodeService.exists(nodeRef) && nodeService.getProperty(nodeRef, property) != null) {
+      filerModelService.runWithoutBehaviours(nodeRef, () -> {
+        nodeService.removeProperty(nodeRef, property);
+      }, filerModelService.getFileableAspect(), ContentModel.ASPECT_AUDITABLE);
+    }
+  }
+
+  /**
+   * @return fingerprint of the node, or {@code null} if some actions do not declare the properties they depend on
+   */
+  @CheckForNull
+  private String getFingerprint(final FilerAction action, final QName type, final Collection<QName> aspects,
+      final Map<QName, Serializable> properties) {
+    return filerRegistry.getInputProperties().map(inputs -> {
+      Set<QName> hashedAspects = new LinkedHashSet<>(aspects);
+      hashedAspects.removeAll(IGNORED_ASPECTS);
+      // Filing cascades inherited properties to the children of the node, whether actions depend on them or not
+      Set<QName> hashedProperties = new LinkedHashSet<>(inputs);
+      hashedProperties.addAll(propertyInheritanceService.getInheritedProperties());
+      String hash = FilerFingerprint.hash(filerRegistry.getSignature(), type, hashedAspects, hashedProperties, properties);
+      return FilerFingerprint.format(action.getName(), action.getVersion(), hash);
+    }).orElse(null);
+  }
+
+  /**
+   * Put the fingerprint of the node filed by the current action along with its other updates, so that it is written at
+   * once. The node is only written if the action changed it, or if its inputs changed since it was last filed.
+   */
+  private void putFingerprint(final UpdateAndMoveFileableParameters parameters) {
+    RepositoryNode node = parameters.getResultingNode();
+    Optional<FilerAction> action = FilerTransactionUtils.getEventNode(node.getNodeRef().get())
+        .flatMap(FilerEvent::getAction);
+    String fingerprint = action.map(filer -> getFingerprint(filer, node.getType().get(), node.getAspects(),
+        node.getProperties())).orElse(null);
+    if (fingerprint != null
+        && !fingerprint.equals(node.getProperties().put(filerModelService.getFileableFingerprintProperty(), fingerprint))) {
+      filerStatisticsService.increment(FINGERPRINT_UPDATE);
+    }
+  }
+
   private boolean resolveAction(final FilerEvent event, final boolean checkOnly) {
     boolean result = false;
     NodeRef nodeRef = event.getNode().getNodeRef().get();
@@ -156,32 +339,43 @@ public class FilerServiceImpl implements FilerService {
   private boolean putEventAction(final FilerEvent event, final boolean checkOnly) {
     boolean hasAction = false;
     if (checkOnly || isUpdateEvent(event)) {
-      for (FilerAction filer : filerRegistry.getActions()) {
-        hasAction = filer.supportsActionResolution(event) && (checkOnly || filer.supportsActionExecution(event.getNode()));
-        if (hasAction && !checkOnly) {
-          event.setAction(filer);
-        }
-        if (hasAction) {
-          break;
-        }
+      // A previous attempt of a retried operation may already have resolved the action on the same node state
+      Optional<FilerAction> memoizedAction = checkOnly ? Optional.empty() : FilerRetryUtils.getAction(event);
+      if (memoizedAction.isPresent()) {
+        event.setAction(memoizedAction.get());
+        filerStatisticsService.increment(ACTION_MEMO_HIT);
+        hasAction = true;
+      } else {
+        hasAction = resolveEventAction(event, checkOnly);
       }
     }
     return hasAction;
   }
 
-  private static boolean isUpdateEvent(final FilerEvent event) {
+  private boolean resolveEventAction(final FilerEvent event, final boolean checkOnly) {
+    boolean hasAction = false;
+    for (FilerAction filer : filerRegistry.getActions()) {
+      hasAction = filer.supportsActionResolution(event) && (checkOnly || filer.supportsActionExecution(event.getNode()));
+      if (hasAction && !checkOnly) {
+        event.setAction(filer);
+        FilerRetryUtils.putAction(event, filer);
+      }
+      if (hasAction) {
+        break;
+      }
+    }
+    return hasAction;
+  }
+
+  private boolean isUpdateEvent(final FilerEvent event) {
     boolean result = true;
     if (event instanceof UpdateFilerEvent) {
       RepositoryNode initialNode = FilerTransactionUtils.getInitialNode(event.getNode().getNodeRef().get());
       RepositoryNodeDifference difference = new RepositoryNodeDifference(initialNode, event.getNode());
-      long updatedPropertiesCount = Stream.of(difference.getPropertiesToAdd().keySet(), difference.getPropertiesToRemove())
-          .flatMap(Set::stream)
-          .filter(property -> !IGNORED_PROPERTIES.contains(property))
-          .count();
-      long updatedAspectCount = Stream.of(difference.getAspectsToAdd(), difference.getAspectsToRemove())
-          .flatMap(Set::stream)
-          .filter(property -> !IGNORED_ASPECTS.contains(property))
-          .count();
+      QName fingerprint = filerModelService.getFileableFingerprintProperty();
+      long updatedPropertiesCount = difference.countChangedProperties(property -> !IGNORED_PROPERTIES.contains(property)
+          && !fingerprint.equals(property));
+      long updatedAspectCount = difference.countChangedAspects(aspect -> !IGNORED_ASPECTS.contains(aspect));
       if (updatedPropertiesCount + updatedAspectCount == 0) {
         result = false;
         LOGGER.debug("Ignoring update event without any updated property nor aspect: {}", event);
@@ -218,6 +412,14 @@ public class FilerServiceImpl implements FilerService {
     this.filerOperationService = filerOperationService;
   }
 
+  public void setFilerUpdateService(final FilerUpdateService filerUpdateService) {
+    this.filerUpdateService = filerUpdateService;
+  }
+
+  public void setFilerModelService(final FilerModelService filerModelService) {
+    this.filerModelService = filerModelService;
+  }
+
   public void setPropertyInheritanceService(final PropertyInheritanceService propertyInheritanceService) {
     this.propertyInheritanceService = propertyInheritanceService;
   }
@@ -233,4 +435,45 @@ public class FilerServiceImpl implements FilerService {
   public void setLockService(final LockService lockService) {
     this.lockService = lockService;
   }
+
+  public void setFilerStatisticsService(final FilerStatisticsService filerStatisticsService) {
+    this.filerStatisticsService = filerStatisticsService;
+  }
+
+  /**
+   * @param snapshotDigestThreshold length above which text values are only kept as a digest in initial node snapshots, which
+   * then also leave out ignored properties and aspects. Snapshots are kept whole when it is not strictly positive (default).
+   */
+  public void setSnapshotDigestThreshold(final int snapshotDigestThreshold) {
+    this.snapshotDigestThreshold = snapshotDigestThreshold;
+  }
+
+  /**
+   * @param speculativeResolution whether folders of nodes entering subscribers are looked up before the transaction commits
+   */
+  public void setSpeculativeResolution(final boolean speculativeResolution) {
+    this.speculativeResolution = speculativeResolution;
+  }
+
+  /**
+   * Record the estimated memory used by the initial node snapshots of the transaction
+   */
+  private final class SnapshotTransactionListener extends TransactionListenerAdapter {
+
+    private final AtomicLong size;
+
+    SnapshotTransactionListener(final AtomicLong size) {
+      this.size = size;
+    }
+
+    @Override
+    public void afterCommit() {
+      filerStatisticsService.record(SNAPSHOT_MEMORY, size.get());
+    }
+
+    @Override
+    public void afterRollback() {
+      filerStatisticsService.record(SNAPSHOT_MEMORY, size.get());
+    }
+  }
 }
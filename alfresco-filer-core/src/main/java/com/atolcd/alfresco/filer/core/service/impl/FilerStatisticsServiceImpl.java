@@ -0,0 +1,93 @@
+package com.atolcd.alfresco.filer.core.service.impl;
+
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+
+public class FilerStatisticsServiceImpl implements FilerStatisticsService {
+
+  private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongSummaryStatistics> distributions = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, ConcurrentMap<Long, LongAdder>> histograms = new ConcurrentHashMap<>();
+
+  @Override
+  public void increment(final String counter) {
+    add(counter, 1);
+  }
+
+  @Override
+  public void add(final String counter, final long amount) {
+    counters.computeIfAbsent(counter, key -> new LongAdder()).add(amount);
+  }
+
+  @Override
+  public void record(final String distribution, final long value) {
+    LongSummaryStatistics statistics = distributions.computeIfAbsent(distribution, key -> new LongSummaryStatistics());
+    // LongSummaryStatistics is not thread safe
+    synchronized (statistics) {
+      statistics.accept(value);
+    }
+  }
+
+  @Override
+  public void recordHistogram(final String histogram, final long value) {
+    histograms.computeIfAbsent(histogram, key -> new ConcurrentHashMap<>())
+        .computeIfAbsent(getBucket(value), key -> new LongAdder())
+        .increment();
+  }
+
+  /**
+   * @return smallest power of two greater than or equal to the value, or the value itself if it is lower than 1
+   */
+  private static long getBucket(final long value) {
+    return value <= 1 ? value : Long.highestOneBit(value - 1) << 1;
+  }
+
+  @Override
+  public long getCount(final String counter) {
+    LongAdder adder = counters.get(counter);
+    return adder == null ? 0 : adder.sum();
+  }
+
+  @Override
+  public LongSummaryStatistics getDistribution(final String distribution) {
+    LongSummaryStatistics result = new LongSummaryStatistics();
+    LongSummaryStatistics statistics = distributions.get(distribution);
+    if (statistics != null) {
+      synchronized (statistics) {
+        result.combine(statistics);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public SortedMap<Long, Long> getHistogram(final String histogram) {
+    SortedMap<Long, Long> result = new TreeMap<>();
+    Map<Long, LongAdder> buckets = histograms.get(histogram);
+    if (buckets != null) {
+      buckets.forEach((bucket, adder) -> result.put(bucket, adder.sum()));
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getCounters() {
+    Map<String, Long> result = new TreeMap<>();
+    counters.forEach((counter, adder) -> result.put(counter, adder.sum()));
+    return result;
+  }
+
+  @Override
+  public void reset() {
+    counters.clear();
+    distributions.clear();
+    histograms.clear();
+  }
+}
@@ -1,14 +1,23 @@
 package com.atolcd.alfresco.filer.core.service.impl;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.copy.AbstractBaseCopyService;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.service.cmr.repository.DuplicateChildNodeNameException;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -19,20 +28,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.ConcurrencyFailureException;
 
+import com.atolcd.alfresco.filer.core.model.FilerNameSuffix;
 import com.atolcd.alfresco.filer.core.model.PropertyInheritancePayload;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.model.RepositoryNodeDifference;
 import com.atolcd.alfresco.filer.core.model.UpdateAndMoveFileableParameters;
 import com.atolcd.alfresco.filer.core.service.FilerFolderService;
 import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
 import com.atolcd.alfresco.filer.core.service.FilerUpdateService;
 import com.atolcd.alfresco.filer.core.service.PropertyInheritanceService;
+import com.atolcd.alfresco.filer.core.util.FilerNodeUtils;
+import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
 
 import edu.umd.cs.findbugs.annotations.Nullable;
 
 public class FilerUpdateServiceImpl extends AbstractBaseCopyService implements FilerUpdateService {
 
+  public static final String UPDATE_UNCHANGED = "update.unchanged";
+  public static final String UPDATE_WRITES = "update.writes";
+  public static final String UPDATE_TIME = "update.time";
+  public static final String MOVE_DIRECT = "update.move.direct";
+  public static final String MOVE_FALLBACK = "update.move.fallback";
+  public static final String NAME_CONFLICT = "update.name.conflict";
+  public static final String NAME_SUFFIXED = "update.name.suffixed";
+
   private static final Logger LOGGER = LoggerFactory.getLogger(FilerUpdateServiceImpl.class);
+  private static final String NAME_LOCK_NAMESPACE = "http://www.atolcd.com/filer/name";
 
   @Nullable
   private FilerModelService filerModelService;
@@ -42,6 +64,13 @@ public class FilerUpdateServiceImpl extends AbstractBaseCopyService implements F
   private PropertyInheritanceService propertyInheritanceService;
   @Nullable
   private NodeService nodeService;
+  @Nullable
+  private FilerStatisticsService filerStatisticsService;
+  @Nullable
+  private JobLockService jobLockService;
+  private long nameReservationTimeToLive;
+  private int maxNameAttempts;
+  private boolean batchWrites = true;
 
   private final List<Consumer<UpdateAndMoveFileableParameters>> lstUpdateAndMoveConsumers = new ArrayList<>();
 
@@ -70,15 +99,22 @@ public class FilerUpdateServiceImpl extends AbstractBaseCopyService implements F
     // Point d'extension pour les projets métiers
     onUpdateAndMoveFileableImpl(initialNode, originalNode, resultingNode);
 
-    // Update node (ignore node name for now) if filer made changes
-    RepositoryNodeDifference originalDifference = updateFileable(originalNode, resultingNode);
-    if (LOGGER.isDebugEnabled() && !originalDifference.isEmpty()) {
-      LOGGER.debug("Node updated: {}", originalDifference);
+    RepositoryNodeDifference originalDifference = new RepositoryNodeDifference(originalNode, resultingNode);
+    if (isUnchanged(originalNode, resultingNode, originalDifference)) {
+      // Node already is in its segment, which cannot be deleted by another transaction as it is not empty
+      filerStatisticsService.increment(UPDATE_UNCHANGED);
+    } else {
+      // Update node (ignore node name for now) if filer made changes
+      updateFileable(resultingNode, originalDifference);
+      if (LOGGER.isDebugEnabled() && !originalDifference.isEmpty()) {
+        LOGGER.debug("Node updated: {}", originalDifference);
+      }
+      // Lock target segment to prevent its deletion by another transaction, along with the original segment which is deleted
+      // afterwards if it became empty. Take both locks at once so that they are acquired in a deterministic order
+      filerFolderService.lockFolders(getFoldersToLock(originalNode, resultingNode));
+      // Move and rename node
+      moveAndRenameFileable(originalNode, resultingNode);
     }
-    // Lock target segment to prevent its deletion by another transaction
-    filerFolderService.lockFolder(resultingNode.getParent().get());
-    // Move and rename node
-    moveAndRenameFileable(originalNode, resultingNode);
     // Update property inheritance on children
     RepositoryNodeDifference initialDifference = new RepositoryNodeDifference(initialNode, resultingNode);
     PropertyInheritancePayload inheritance = propertyInheritanceService.getPayload(initialDifference);
@@ -112,57 +148,229 @@ public class FilerUpdateServiceImpl extends AbstractBaseCopyService implements F
 
   private void moveAndRenameFileable(final RepositoryNode originalNode, final RepositoryNode resultingNode) {
     NodeRef nodeRef = resultingNode.getNodeRef().get();
+    String originalName = originalNode.getName().get();
+    NodeRef destination = resultingNode.getParent().get();
+    boolean parentChanged = !resultingNode.getParent().equals(originalNode.getParent());
+    if (parentChanged || !resultingNode.getName().get().equals(originalName)) {
+      // Name may be suffixed if it is not available, possibly back to the original name
+      reserveName(resultingNode);
+    }
     String name = resultingNode.getName().get();
-    boolean nameChanged = !name.equals(originalNode.getName().get());
+    boolean nameChanged = !name.equals(originalName);
     // Move node if parent or name changed
-    if (!resultingNode.getParent().equals(originalNode.getParent()) || nameChanged) {
-      // We can't set the node's name to the new name at the same time as the move.
-      // To avoid incorrect violations of the name constraints, the cm:name is set to something random and will be reset
-      // to the correct name later.
-      String tempName = GUID.generate();
-      nodeService.setProperty(nodeRef, ContentModel.PROP_NAME, tempName);
+    if (parentChanged || nameChanged) {
       AssociationCopyInfo info = getAssociationCopyInfo(nodeService, nodeRef, originalNode.getParent().get(), name, nameChanged);
       QName typeQName = info.getSourceParentAssoc().getTypeQName();
-      nodeService.moveNode(nodeRef, resultingNode.getParent().get(), typeQName, info.getTargetAssocQName());
-      // During concurrent node update, name generation can produce multiple identical node names.
-      // If the problem occurs, we catch the specific exception related to duplicate node name
-      // and throw a ConcurrencyFailureException which will cause a retry of the whole transaction
-      // in RetryingTransactionHelper, that will run a name generation.
-      try {
-        nodeService.setProperty(nodeRef, ContentModel.PROP_NAME, name);
-      } catch (DuplicateChildNodeNameException e) {
-        // We only pass the cause of the DuplicateChildNodeNameException to the ConcurrencyFailureException
-        // because DuplicateChildNodeNameException implements DoNotRetryException which would not trigger
-        // the retrying transaction mechanism.
-        throw new ConcurrencyFailureException("Could not rename node to: " + name, e.getCause()); // NOPMD - Preserve stack trace:
-                                                                                                  // above comment
+      if (!parentChanged) {
+        // Rename in place, then update the association name
+        renameFileable(nodeRef, name);
+        nodeService.moveNode(nodeRef, destination, typeQName, info.getTargetAssocQName());
+        filerStatisticsService.increment(MOVE_DIRECT);
+      } else if (!nameChanged || nodeService.getChildByName(destination, ContentModel.ASSOC_CONTAINS, originalName) == null) {
+        // Original name is free in the destination: move node with its final association name and rename it afterwards
+        moveFileable(nodeRef, destination, typeQName, info.getTargetAssocQName());
+        if (nameChanged) {
+          renameFileable(nodeRef, name);
+        }
+        filerStatisticsService.increment(MOVE_DIRECT);
+      } else {
+        // We can't set the node's name to the new name at the same time as the move.
+        // To avoid incorrect violations of the name constraints, the cm:name is set to something random and will be reset
+        // to the correct name later.
+        nodeService.setProperty(nodeRef, ContentModel.PROP_NAME, GUID.generate());
+        nodeService.moveNode(nodeRef, destination, typeQName, info.getTargetAssocQName());
+        renameFileable(nodeRef, name);
+        filerStatisticsService.increment(MOVE_FALLBACK);
+      }
+    }
+  }
+
+  /**
+   * Check the name of the node is available in its destination. If it is taken and the node has a {@link FilerNameSuffix}, the
+   * name is suffixed until an available name is found. Each name is reserved until the transaction ends, so that concurrent
+   * transactions generating the same name see the collision before writing it, instead of failing on the name constraint and
+   * retrying the whole transaction.
+   */
+  private void reserveName(final RepositoryNode resultingNode) {
+    NodeRef nodeRef = resultingNode.getNodeRef().get();
+    NodeRef destination = resultingNode.getParent().get();
+    String name = resultingNode.getName().get();
+    Optional<FilerNameSuffix> suffix = FilerNodeUtils.getNameSuffix(resultingNode);
+    String result = name;
+    int attempt = 1;
+    while (!isNameAvailable(nodeRef, destination, result)) {
+      attempt++;
+      if (!suffix.isPresent() || attempt > maxNameAttempts) {
+        throw new ConcurrencyFailureException("Could not reserve name: " + result + " in folder: " + destination);
       }
+      result = suffix.get().apply(name, attempt);
+    }
+    if (attempt > 1) {
+      filerStatisticsService.increment(NAME_SUFFIXED);
+      resultingNode.getProperties().put(ContentModel.PROP_NAME, result);
+    }
+  }
+
+  private boolean isNameAvailable(final NodeRef nodeRef, final NodeRef destination, final String name) {
+    boolean result = true;
+    try {
+      // Lock is persisted in database, so it is shared by the cluster, and it is released when the transaction ends. Take it
+      // before looking the name up, so that the name is seen if the transaction which held the lock has taken it
+      jobLockService.getTransactionalLock(getNameLock(destination, name), nameReservationTimeToLive);
+    } catch (LockAcquisitionException e) {
+      LOGGER.debug("Name already reserved by another transaction: {} in folder: {}", name, destination, e);
+      result = false;
+    }
+    if (result) {
+      NodeRef child = nodeService.getChildByName(destination, ContentModel.ASSOC_CONTAINS, name);
+      result = child == null || child.equals(nodeRef);
+    }
+    if (!result) {
+      filerStatisticsService.increment(NAME_CONFLICT);
+    }
+    return result;
+  }
+
+  private static QName getNameLock(final NodeRef destination, final String name) {
+    // Names are case insensitive, lock name must not exceed the QName local name length
+    UUID nameId = UUID.nameUUIDFromBytes(name.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+    return QName.createQName(NAME_LOCK_NAMESPACE, destination.getId() + "-" + nameId);
+  }
+
+  private void moveFileable(final NodeRef nodeRef, final NodeRef destination, final QName typeQName, final QName assocQName) {
+    try {
+      nodeService.moveNode(nodeRef, destination, typeQName, assocQName);
+    } catch (DuplicateChildNodeNameException e) {
+      // Original name has been taken in the destination by a concurrent transaction, retry the whole transaction
+      // (see renameFileable for the exception cause)
+      throw new ConcurrencyFailureException("Could not move node to: " + destination, e.getCause()); // NOPMD - Preserve stack
+                                                                                                     // trace: above comment
+    }
+  }
+
+  private void renameFileable(final NodeRef nodeRef, final String name) {
+    // During concurrent node update, name generation can produce multiple identical node names.
+    // If the problem occurs, we catch the specific exception related to duplicate node name
+    // and throw a ConcurrencyFailureException which will cause a retry of the whole transaction
+    // in RetryingTransactionHelper, that will run a name generation.
+    try {
+      nodeService.setProperty(nodeRef, ContentModel.PROP_NAME, name);
+    } catch (DuplicateChildNodeNameException e) {
+      // We only pass the cause of the DuplicateChildNodeNameException to the ConcurrencyFailureException
+      // because DuplicateChildNodeNameException implements DoNotRetryException which would not trigger
+      // the retrying transaction mechanism.
+      throw new ConcurrencyFailureException("Could not rename node to: " + name, e.getCause()); // NOPMD - Preserve stack trace:
+                                                                                                // above comment
     }
   }
 
-  private RepositoryNodeDifference updateFileable(final RepositoryNode originalNode, final RepositoryNode resultingNode) {
+  private List<NodeRef> getFoldersToLock(final RepositoryNode originalNode, final RepositoryNode resultingNode) {
+    NodeRef target = resultingNode.getParent().get();
+    List<NodeRef> result = new ArrayList<>();
+    result.add(target);
+    originalNode.getParent()
+        .filter(parent -> !parent.equals(target))
+        .filter(parent -> nodeService.hasAspect(parent, filerModelService.getSegmentAspect()))
+        .ifPresent(result::add);
+    return result;
+  }
+
+  /**
+   * Node stays at the same place with the same name and properties, and it was not placed there by the current transaction
+   */
+  private static boolean isUnchanged(final RepositoryNode originalNode, final RepositoryNode resultingNode,
+      final RepositoryNodeDifference difference) {
+    return difference.isEmpty()
+        && resultingNode.getParent().equals(originalNode.getParent())
+        && resultingNode.getName().equals(originalNode.getName())
+        && !FilerTransactionUtils.isPlacedNode(resultingNode.getNodeRef().get());
+  }
+
+  private void updateFileable(final RepositoryNode resultingNode, final RepositoryNodeDifference difference) {
+    long start = System.nanoTime();
     NodeRef nodeRef = resultingNode.getNodeRef().get();
-    RepositoryNodeDifference difference = new RepositoryNodeDifference(originalNode, resultingNode);
+    int writes = batchWrites ? writeDifference(nodeRef, difference) : writeDifferenceOneByOne(nodeRef, difference);
+    filerStatisticsService.record(UPDATE_WRITES, writes);
+    filerStatisticsService.record(UPDATE_TIME, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+  }
+
+  /**
+   * Apply the difference with as few repository writes as possible, each write running policies and auditing
+   */
+  private int writeDifference(final NodeRef nodeRef, final RepositoryNodeDifference difference) {
+    int writes = 0;
+    // Remove aspects first, their properties are removed along with them
+    for (QName aspect : difference.getAspectsToRemove()) {
+      nodeService.removeAspect(nodeRef, aspect);
+      writes++;
+    }
+    // Do not update name, it will be updated after move
+    Map<QName, Serializable> propertiesToAdd = new HashMap<>(difference.getPropertiesToAdd());
+    propertiesToAdd.remove(ContentModel.PROP_NAME);
+    if (!difference.getPropertiesToRemove().isEmpty()) {
+      Map<QName, Serializable> properties = nodeService.getProperties(nodeRef);
+      Set<QName> propertiesToRemove = new HashSet<>(difference.getPropertiesToRemove());
+      propertiesToRemove.retainAll(properties.keySet());
+      if (!propertiesToRemove.isEmpty()) {
+        // Set resulting properties at once, instead of removing them one by one
+        properties.keySet().removeAll(propertiesToRemove);
+        properties.putAll(propertiesToAdd);
+        nodeService.setProperties(nodeRef, properties);
+        propertiesToAdd.clear();
+        writes++;
+      }
+    }
+    if (!propertiesToAdd.isEmpty()) {
+      nodeService.addProperties(nodeRef, propertiesToAdd);
+      writes++;
+    }
+    // Update aspects when properties are already set, aspects of added properties are already added along with them
+    if (!difference.getAspectsToAdd().isEmpty()) {
+      Set<QName> aspectsToAdd = new HashSet<>(difference.getAspectsToAdd());
+      aspectsToAdd.removeAll(nodeService.getAspects(nodeRef));
+      for (QName aspect : aspectsToAdd) {
+        nodeService.addAspect(nodeRef, aspect, null);
+        writes++;
+      }
+    }
+    // Update type at the end, so that mandatory aspects and properties are set
+    if (difference.getTypeToSet().isPresent()) {
+      nodeService.setType(nodeRef, difference.getTypeToSet().get());
+      writes++;
+    }
+    return writes;
+  }
+
+  /**
+   * Apply the difference with one repository write per property and aspect, as a baseline for {@link #writeDifference}
+   */
+  private int writeDifferenceOneByOne(final NodeRef nodeRef, final RepositoryNodeDifference difference) {
+    int writes = 0;
     // Update properties
     for (QName property : difference.getPropertiesToRemove()) {
       nodeService.removeProperty(nodeRef, property);
+      writes++;
     }
     // Do not update name, it will be updated after move
     Map<QName, Serializable> propertiesToAdd = new HashMap<>(difference.getPropertiesToAdd());
     propertiesToAdd.remove(ContentModel.PROP_NAME);
     nodeService.addProperties(nodeRef, propertiesToAdd);
+    writes++;
     // Update aspects when properties are already set
     for (QName aspect : difference.getAspectsToRemove()) {
       nodeService.removeAspect(nodeRef, aspect);
+      writes++;
     }
     for (QName aspect : difference.getAspectsToAdd()) {
       nodeService.addAspect(nodeRef, aspect, null);
+      writes++;
     }
     // Update type at the end, so that mandatory aspects and properties are set
     if (difference.getTypeToSet().isPresent()) {
       nodeService.setType(nodeRef, difference.getTypeToSet().get());
+      writes++;
     }
-    return difference;
+    return writes;
   }
 
   public void setFilerModelService(final FilerModelService filerModelService) {
@@ -180,4 +388,35 @@ public class FilerUpdateServiceImpl extends AbstractBaseCopyService implements F
   public void setNodeService(final NodeService nodeService) {
     this.nodeService = nodeService;
   }
+
+  public void setFilerStatisticsService(final FilerStatisticsService filerStatisticsService) {
+    this.filerStatisticsService = filerStatisticsService;
+  }
+
+  public void setJobLockService(final JobLockService jobLockService) {
+    this.jobLockService = jobLockService;
+  }
+
+  /**
+   * @param nameReservationTimeToLive duration in milliseconds after which a name reservation expires, in case its transaction
+   * could not release it
+   */
+  public void setNameReservationTimeToLive(final long nameReservationTimeToLive) {
+    this.nameReservationTimeToLive = nameReservationTimeToLive;
+  }
+
+  /**
+   * @param maxNameAttempts number of names, including suffixed ones, tried before giving up and retrying the transaction
+   */
+  public void setMaxNameAttempts(final int maxNameAttempts) {
+    this.maxNameAttempts = maxNameAttempts;
+  }
+
+  /**
+   * @param batchWrites {@code false} to apply differences with one write per property and aspect, as before writes were
+   * batched, e.g. to compare both write paths
+   */
+  public void setBatchWrites(final boolean batchWrites) {
+    this.batchWrites = batchWrites;
+  }
 }
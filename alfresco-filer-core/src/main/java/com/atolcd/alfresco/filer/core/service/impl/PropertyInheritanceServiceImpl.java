@@ -2,10 +2,12 @@ package com.atolcd.alfresco.filer.core.service.impl;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -19,6 +21,8 @@ import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.atolcd.alfresco.filer.core.model.FilerException;
 import com.atolcd.alfresco.filer.core.model.PropertyInheritance;
@@ -26,20 +30,30 @@ import com.atolcd.alfresco.filer.core.model.PropertyInheritancePayload;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.model.RepositoryNodeDifference;
 import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
 import com.atolcd.alfresco.filer.core.service.PropertyInheritanceService;
+import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
 
 import edu.umd.cs.findbugs.annotations.Nullable;
 
 public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect implements PropertyInheritanceService {
 
+  public static final String INHERITANCE_WRITE = "inheritance.write";
+  public static final String INHERITANCE_WRITE_AVOIDED = "inheritance.write.avoided";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PropertyInheritanceServiceImpl.class);
+
   private final FilerModelService filerModelService;
   private final NodeService nodeService;
   private final DictionaryService dictionaryService;
 
   @Nullable
-  private Collection<QName> inheritedAspects;
+  private FilerStatisticsService filerStatisticsService;
+  @Nullable
+  private Set<QName> inheritedAspects;
   @Nullable
   private Map<QName, QName> inheritedProperties;
+  private boolean compareBeforeWrite;
 
   public PropertyInheritanceServiceImpl(final DictionaryDAO dictionaryDAO, final FilerModelService filerModelService,
       final NodeService nodeService, final DictionaryService dictionaryService) {
@@ -56,7 +70,8 @@ public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect imp
 
   @Override
   public void init() {
-    inheritedAspects = dictionaryService.getSubAspects(getAspect(), true);
+    // Retained against every node and difference, so membership is checked on a hash set
+    inheritedAspects = new HashSet<>(dictionaryService.getSubAspects(getAspect(), true));
     inheritedProperties = getProperties(inheritedAspects);
   }
 
@@ -89,10 +104,10 @@ public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect imp
     result.getProperties().keySet().removeAll(unknownProperties);
   }
 
-  private static Set<QName> retainAspects(final Set<QName> from, final Collection<QName> without) {
+  private static Set<QName> retainAspects(final Collection<QName> from, final Set<QName> matchingAspects) {
     // Create a new Set
     Set<QName> result = new HashSet<>(from);
-    result.retainAll(without);
+    result.retainAll(matchingAspects);
     return result;
   }
 
@@ -106,6 +121,12 @@ public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect imp
 
   @Override
   public void setProperties(final NodeRef nodeRef, final RepositoryNode payload, final PropertyInheritance inheritance) {
+    // Save inherited properties to repository (property value can be null)
+    nodeService.addProperties(nodeRef, getProperties(payload, inheritance));
+  }
+
+  @Override
+  public Map<QName, Serializable> getProperties(final RepositoryNode payload, final PropertyInheritance inheritance) {
     Set<QName> aspects = new HashSet<>();
     aspects.addAll(inheritance.getMandatoryAspects());
     // Retrieve all properties from aspects
@@ -121,11 +142,11 @@ public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect imp
     aspects.addAll(inheritance.getOptionalAspects());
     // Apply mandatory and optional aspects
     Set<QName> properties = getPropertyDefinitions(aspects).keySet();
-    // Save inherited properties to repository (property value can be null)
+    // Retain inherited properties (property value can be null)
     Map<QName, Serializable> propertyValues = new HashMap<>();
     propertyValues.putAll(payload.getProperties());
     propertyValues.keySet().removeIf(property -> !properties.contains(property));
-    nodeService.addProperties(nodeRef, propertyValues);
+    return propertyValues;
   }
 
   private Map<QName, PropertyDefinition> getPropertyDefinitions(final Collection<QName> aspects) {
@@ -136,8 +157,7 @@ public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect imp
 
   @Override
   public PropertyInheritancePayload getPayload(final RepositoryNodeDifference difference) {
-    Set<QName> aspectsToAdd = new HashSet<>(difference.getAspectsToAdd());
-    aspectsToAdd.retainAll(inheritedAspects);
+    Set<QName> aspectsToAdd = retainAspects(difference.getAspectsToAdd(), inheritedAspects);
     Map<QName, Map<QName, Serializable>> added = aspectsToAdd.stream()
         .collect(Collectors.toMap(Function.identity(), v -> new HashMap<>()));
     for (Entry<QName, Serializable> property : difference.getPropertiesToAdd().entrySet()) {
@@ -147,8 +167,7 @@ public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect imp
             .put(property.getKey(), property.getValue());
       }
     }
-    Set<QName> aspectsToRemove = new HashSet<>(difference.getAspectsToRemove());
-    aspectsToRemove.retainAll(inheritedAspects);
+    Set<QName> aspectsToRemove = retainAspects(difference.getAspectsToRemove(), inheritedAspects);
     Map<QName, Set<QName>> removed = aspectsToRemove.stream()
         .collect(Collectors.toMap(Function.identity(), v -> new HashSet<>()));
     for (QName property : difference.getPropertiesToRemove()) {
@@ -165,11 +184,17 @@ public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect imp
   @Override
   public void setInheritance(final NodeRef root, final PropertyInheritancePayload payload) {
     if (!payload.isEmpty()) {
-      setInheritanceImpl(root, payload);
+      InheritanceCascade cascade = new InheritanceCascade();
+      setInheritanceImpl(root, payload, cascade);
+      filerStatisticsService.add(INHERITANCE_WRITE, cascade.writes);
+      filerStatisticsService.add(INHERITANCE_WRITE_AVOIDED, cascade.avoidedWrites);
+      LOGGER.debug("Property inheritance cascade on {}: {} write(s), {} write(s) avoided", root, cascade.writes,
+          cascade.avoidedWrites);
     }
   }
 
-  private void setInheritanceImpl(final NodeRef parent, final PropertyInheritancePayload payload) {
+  private void setInheritanceImpl(final NodeRef parent, final PropertyInheritancePayload payload,
+      final InheritanceCascade cascade) {
     Collection<ChildAssociationRef> children = nodeService.getChildAssocs(parent, ContentModel.ASSOC_CONTAINS,
         RegexQNamePattern.MATCH_ALL);
     for (ChildAssociationRef child : children) {
@@ -178,32 +203,83 @@ public class PropertyInheritanceServiceImpl extends DictionaryListenerAspect imp
       boolean cascadeChildren = true;
       if (aspects.contains(filerModelService.getFileableAspect())) {
         filerModelService.runWithoutFileableBehaviour(nodeRef, () -> {
-          updateInheritance(nodeRef, payload);
+          updateInheritance(nodeRef, aspects, payload, cascade);
         });
       } else if (aspects.contains(filerModelService.getSegmentAspect())) {
-        updateInheritance(nodeRef, payload);
+        // Segment row is only locked until the end of the transaction if it was actually written, which is also tracked
+        // as a written segment (see FilerSegmentAspect#onUpdateNode)
+        if (updateInheritance(nodeRef, aspects, payload, cascade)) {
+          FilerTransactionUtils.addLockedFolder(nodeRef);
+        }
       } else {
         cascadeChildren = false;
       }
       if (cascadeChildren) {
-        setInheritanceImpl(nodeRef, payload);
+        setInheritanceImpl(nodeRef, payload, cascade);
       }
     }
   }
 
-  private void updateInheritance(final NodeRef nodeRef, final PropertyInheritancePayload payload) {
+  /**
+   * @return {@code true} if the node was written, {@code false} if it was already up to date
+   */
+  private boolean updateInheritance(final NodeRef nodeRef, final Set<QName> aspects, final PropertyInheritancePayload payload,
+      final InheritanceCascade cascade) {
+    int writes = cascade.writes;
+    // Compare with current values so that nodes already up to date are not written (no audit update nor reindex)
+    Map<QName, Serializable> properties = compareBeforeWrite ? nodeService.getProperties(nodeRef) : Collections.emptyMap();
     // Add aspects and associated properties
     for (Entry<QName, Map<QName, Serializable>> aspect : payload.getAdded().entrySet()) {
-      nodeService.addAspect(nodeRef, aspect.getKey(), aspect.getValue());
+      if (compareBeforeWrite && aspects.contains(aspect.getKey()) && hasValues(properties, aspect.getValue())) {
+        cascade.avoidedWrites++;
+      } else {
+        nodeService.addAspect(nodeRef, aspect.getKey(), aspect.getValue());
+        cascade.writes++;
+      }
     }
     for (Entry<QName, Set<QName>> aspect : payload.getRemoved().entrySet()) {
       if (aspect.getValue().isEmpty()) {
         // Remove aspect
-        nodeService.removeAspect(nodeRef, aspect.getKey());
+        if (compareBeforeWrite && !aspects.contains(aspect.getKey())) {
+          cascade.avoidedWrites++;
+        } else {
+          nodeService.removeAspect(nodeRef, aspect.getKey());
+          cascade.writes++;
+        }
       } else {
         // Remove properties
-        aspect.getValue().stream().forEach(property -> nodeService.removeProperty(nodeRef, property));
+        for (QName property : aspect.getValue()) {
+          if (compareBeforeWrite && !properties.containsKey(property)) {
+            cascade.avoidedWrites++;
+          } else {
+            nodeService.removeProperty(nodeRef, property);
+            cascade.writes++;
+          }
+        }
       }
     }
+    return cascade.writes > writes;
+  }
+
+  private static boolean hasValues(final Map<QName, Serializable> properties, final Map<QName, Serializable> values) {
+    return values.entrySet().stream().allMatch(value -> Objects.equals(properties.get(value.getKey()), value.getValue()));
+  }
+
+  @Override
+  public Set<QName> getInheritedProperties() {
+    return Collections.unmodifiableSet(inheritedProperties.keySet());
+  }
+
+  public void setFilerStatisticsService(final FilerStatisticsService filerStatisticsService) {
+    this.filerStatisticsService = filerStatisticsService;
+  }
+
+  public void setCompareBeforeWrite(final boolean compareBeforeWrite) {
+    this.compareBeforeWrite = compareBeforeWrite;
+  }
+
+  private static final class InheritanceCascade {
+    private int writes;
+    private int avoidedWrites;
   }
 }
@@ -8,6 +8,7 @@ import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.site.SiteInfo;
 
 import com.atolcd.alfresco.filer.core.model.FilerException;
+import com.atolcd.alfresco.filer.core.model.FilerNameSuffix;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
@@ -18,6 +19,7 @@ public final class FilerNodeUtils {
   private static final String SITE_INFO_KEY = "siteInfo";
   private static final String ORIGINAL_KEY = "original";
   private static final String ORIGINAL_NODE_KEY = "originalNode";
+  private static final String NAME_SUFFIX_KEY = "nameSuffix";
 
   public static Optional<SiteInfo> getSiteInfo(final RepositoryNode node) {
     return node.getExtension(SITE_INFO_KEY, SiteInfo.class);
@@ -55,6 +57,14 @@ public final class FilerNodeUtils {
     node.getExtensions().put(ORIGINAL_NODE_KEY, originalNode);
   }
 
+  public static Optional<FilerNameSuffix> getNameSuffix(final RepositoryNode node) {
+    return node.getExtension(NAME_SUFFIX_KEY, FilerNameSuffix.class);
+  }
+
+  public static void setNameSuffix(final RepositoryNode node, final FilerNameSuffix suffix) {
+    node.getExtensions().put(NAME_SUFFIX_KEY, suffix);
+  }
+
   public static Path getPath(final RepositoryNode node) {
     return node.getExtension(PATH_KEY, Path.class).get();
   }
@@ -0,0 +1,117 @@
+package com.atolcd.alfresco.filer.core.util;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+import com.atolcd.alfresco.filer.core.model.FilerAction;
+import com.atolcd.alfresco.filer.core.model.FilerEvent;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Memo of read-only filer results kept across the retries of a same operation, see {@link #runWithMemo}.<br>
+ * Unlike {@link FilerTransactionUtils} resources, it survives the rollback of a retried transaction. Results must still be
+ * checked before being reused, as other transactions may have changed the repository in the meantime.<br>
+ * The memo is opt-in: it is only active within {@link #runWithMemo}, which isolated dispatch wraps around its own retrying
+ * transaction. By default filer actions run in the transaction of the caller, whose retries are out of the filer's reach:
+ * code retrying its own work can opt in by wrapping its {@code doInTransaction} call.
+ */
+public final class FilerRetryUtils {
+
+  private static final ThreadLocal<Memo> MEMO = new ThreadLocal<>();
+
+  /**
+   * Run the operation, which usually retries transactions, with a memo shared by all its attempts.
+   * Nested calls share the memo of the outermost one, which is discarded once it returns or fails.
+   */
+  public static <T> T runWithMemo(final Supplier<T> operation) {
+    boolean owner = MEMO.get() == null;
+    if (owner) {
+      MEMO.set(new Memo());
+    }
+    try {
+      return operation.get();
+    } finally {
+      if (owner) {
+        MEMO.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the action resolved by a previous attempt for the same kind of event on the very same node state
+   */
+  public static Optional<FilerAction> getAction(final FilerEvent event) {
+    RepositoryNode node = event.getNode();
+    return getMemo().map(memo -> memo.actions.get(node.getNodeRef().get()))
+        .filter(entry -> entry.matches(event))
+        .map(entry -> entry.action);
+  }
+
+  public static void putAction(final FilerEvent event, final FilerAction action) {
+    getMemo().ifPresent(memo -> memo.actions.put(event.getNode().getNodeRef().get(), new ActionEntry(event, action)));
+  }
+
+  /**
+   * @return a folder that was found committed by a previous attempt, it might have been moved or deleted since
+   */
+  public static Optional<NodeRef> getFolder(final NodeRef parent, final String name) {
+    return getMemo().map(memo -> memo.folders.get(new Pair<>(parent, name)));
+  }
+
+  public static void putFolder(final NodeRef parent, final String name, final NodeRef nodeRef) {
+    getMemo().ifPresent(memo -> memo.folders.put(new Pair<>(parent, name), nodeRef));
+  }
+
+  private static Optional<Memo> getMemo() {
+    return Optional.ofNullable(MEMO.get());
+  }
+
+  private FilerRetryUtils() {}
+
+  private static final class Memo {
+
+    private final Map<NodeRef, ActionEntry> actions = new HashMap<>();
+    private final Map<Pair<NodeRef, String>, NodeRef> folders = new HashMap<>();
+  }
+
+  private static final class ActionEntry {
+
+    private final Class<?> eventType;
+    @CheckForNull
+    private final QName type;
+    private final Set<QName> aspects;
+    private final Map<QName, Serializable> properties;
+    private final FilerAction action;
+
+    ActionEntry(final FilerEvent event, final FilerAction action) {
+      RepositoryNode node = event.getNode();
+      this.eventType = event.getClass();
+      this.type = node.getType().orElse(null);
+      this.aspects = new LinkedHashSet<>(node.getAspects());
+      this.properties = new LinkedHashMap<>(node.getProperties());
+      this.action = action;
+    }
+
+    /**
+     * Action resolution only depends on the event and the node loaded by scope loaders
+     */
+    boolean matches(final FilerEvent event) {
+      RepositoryNode node = event.getNode();
+      return eventType.equals(event.getClass()) && Objects.equals(type, node.getType().orElse(null))
+          && aspects.equals(node.getAspects()) && properties.equals(node.getProperties());
+    }
+  }
+}
@@ -2,18 +2,24 @@ package com.atolcd.alfresco.filer.core.util;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.TransactionalResourceHelper;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.Pair;
 
 import com.atolcd.alfresco.filer.core.model.FilerEvent;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.policy.FileableAspect;
+import com.atolcd.alfresco.filer.core.policy.FilerSegmentAspect;
 import com.atolcd.alfresco.filer.core.policy.FilerSubscriberAspect;
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
 import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
 import com.atolcd.alfresco.filer.core.service.FilerService;
 import com.atolcd.alfresco.filer.core.service.FilerUpdateService;
+import com.atolcd.alfresco.filer.core.service.PropertyInheritanceService;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 
@@ -24,6 +30,11 @@ public final class FilerTransactionUtils {
   private static final Class<?> TRANSACTION_UPDATE_USER_KEY = FileableAspect.class;
   private static final Class<?> TRANSACTION_GLOBAL_USER_KEY = FilerModelService.class;
   private static final Class<?> TRANSACTION_DELETED_ASSOC_KEY = FilerSubscriberAspect.class;
+  private static final Class<?> TRANSACTION_LOCKED_FOLDER_KEY = FilerFolderService.class;
+  private static final Class<?> TRANSACTION_FOLDER_KEY = FilerOperationService.class;
+  private static final Class<?> TRANSACTION_PENDING_DELETE_KEY = FilerSegmentAspect.class;
+  private static final Class<?> TRANSACTION_PLACED_NODE_KEY = FilerEvent.class;
+  private static final Class<?> TRANSACTION_WRITTEN_FOLDER_KEY = PropertyInheritanceService.class;
 
   public static Optional<FilerEvent> getEventNode(final NodeRef nodeRef) {
     return Optional.ofNullable(getEventNodeMap().get(nodeRef));
@@ -86,5 +97,89 @@ public final class FilerTransactionUtils {
     return TransactionalResourceHelper.getMap(TRANSACTION_DELETED_ASSOC_KEY);
   }
 
+  /**
+   * @return {@code true} if the folder was not already locked in the current transaction
+   */
+  public static boolean addLockedFolder(final NodeRef nodeRef) {
+    return getLockedFolderSet().add(nodeRef);
+  }
+
+  public static boolean isLockedFolder(final NodeRef nodeRef) {
+    return getLockedFolderSet().contains(nodeRef);
+  }
+
+  /**
+   * @return {@code true} if the current transaction holds the row lock of any folder, either locked or written
+   */
+  public static boolean hasLockedFolders() {
+    return !getLockedFolderSet().isEmpty() || !getWrittenFolderSet().isEmpty();
+  }
+
+  private static Set<NodeRef> getLockedFolderSet() {
+    return TransactionalResourceHelper.getSet(TRANSACTION_LOCKED_FOLDER_KEY);
+  }
+
+  public static void addWrittenFolder(final NodeRef nodeRef) {
+    getWrittenFolderSet().add(nodeRef);
+  }
+
+  /**
+   * @return {@code true} if the folder was updated by the current transaction, which holds its row lock until it ends
+   */
+  public static boolean isWrittenFolder(final NodeRef nodeRef) {
+    return getWrittenFolderSet().contains(nodeRef);
+  }
+
+  private static Set<NodeRef> getWrittenFolderSet() {
+    return TransactionalResourceHelper.getSet(TRANSACTION_WRITTEN_FOLDER_KEY);
+  }
+
+  public static Optional<NodeRef> getFolder(final NodeRef parent, final String name) {
+    return Optional.ofNullable(getFolderMap().get(new Pair<>(parent, name)));
+  }
+
+  public static void putFolder(final NodeRef parent, final String name, final NodeRef nodeRef) {
+    getFolderMap().put(new Pair<>(parent, name), nodeRef);
+  }
+
+  public static void removeFolder(final NodeRef nodeRef) {
+    getFolderMap().values().removeIf(nodeRef::equals);
+  }
+
+  private static Map<Pair<NodeRef, String>, NodeRef> getFolderMap() {
+    return TransactionalResourceHelper.getMap(TRANSACTION_FOLDER_KEY);
+  }
+
+  /**
+   * @return whether the node was found to be part of a hierarchy deletion or not, if it was already checked in the current
+   * transaction
+   */
+  public static Optional<Boolean> getPendingDelete(final NodeRef nodeRef) {
+    return Optional.ofNullable(getPendingDeleteMap().get(nodeRef));
+  }
+
+  public static void putPendingDelete(final NodeRef nodeRef, final boolean pendingDelete) {
+    getPendingDeleteMap().put(nodeRef, pendingDelete);
+  }
+
+  private static Map<NodeRef, Boolean> getPendingDeleteMap() {
+    return TransactionalResourceHelper.getMap(TRANSACTION_PENDING_DELETE_KEY);
+  }
+
+  /**
+   * @return {@code true} if the node was created, moved or made fileable in its current parent in the current transaction
+   */
+  public static boolean isPlacedNode(final NodeRef nodeRef) {
+    return getPlacedNodeSet().contains(nodeRef);
+  }
+
+  public static void putPlacedNode(final NodeRef nodeRef) {
+    getPlacedNodeSet().add(nodeRef);
+  }
+
+  private static Set<NodeRef> getPlacedNodeSet() {
+    return TransactionalResourceHelper.getSet(TRANSACTION_PLACED_NODE_KEY);
+  }
+
   private FilerTransactionUtils() {}
 }
@@ -0,0 +1,99 @@
+package com.atolcd.alfresco.filer.core.test.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.atolcd.alfresco.filer.core.model.impl.OverlayMap;
+
+/**
+ * Copy of node properties as done while filing (original node, then resulting node), a few property updates, then the
+ * comparison of both copies. {@link OverlayMap} is compared to the plain map it replaces.<br>
+ * Allocation per operation is reported along with time as {@code gc.alloc.rate.norm}. It is not run by the build, launch
+ * {@link #main} from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OverlayMapBenchmark {
+
+  private static final int UPDATED_PROPERTIES = 2;
+
+  @Param({ "16", "64", "256" })
+  private int size;
+
+  private Map<String, String> overlayProperties;
+  private Map<String, String> plainProperties;
+
+  @Setup
+  public void createProperties() {
+    plainProperties = new LinkedHashMap<>();
+    for (int i = 0; i < size; i++) {
+      plainProperties.put("property" + i, "value" + i);
+    }
+    overlayProperties = new OverlayMap<>(plainProperties);
+  }
+
+  @Benchmark
+  public int copyAndCompareOverlayMap() {
+    Map<String, String> original = new OverlayMap<>(overlayProperties);
+    Map<String, String> resulting = new OverlayMap<>(original);
+    update(resulting);
+    Set<String> changedKeys = OverlayMap.getChangedKeys(original, resulting);
+    int result = 0;
+    for (String key : Objects.requireNonNull(changedKeys)) {
+      if (!Objects.equals(original.get(key), resulting.get(key))) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int copyAndComparePlainMap() {
+    Map<String, String> original = new LinkedHashMap<>(plainProperties);
+    Map<String, String> resulting = new LinkedHashMap<>(original);
+    update(resulting);
+    int result = 0;
+    for (Map.Entry<String, String> entry : resulting.entrySet()) {
+      if (!Objects.equals(original.get(entry.getKey()), entry.getValue())) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  private static void update(final Map<String, String> properties) {
+    for (int i = 0; i < UPDATED_PROPERTIES; i++) {
+      properties.put("property" + i, "updated");
+    }
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+        .include(OverlayMapBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
@@ -0,0 +1,142 @@
+package com.atolcd.alfresco.filer.core.test.benchmark;
+
+import static java.util.UUID.randomUUID;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.model.impl.RepositoryNodeBuilder;
+import com.atolcd.alfresco.filer.core.service.FilerUpdateService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerUpdateServiceImpl;
+import com.atolcd.alfresco.filer.core.test.framework.PostgreSQLExtension;
+
+/**
+ * Update of a fileable node by {@link FilerUpdateService#updateAndMoveFileable}, which switches the node between two states:
+ * an aspect with two properties is replaced by another one set through its property. Repository writes are either batched
+ * or made one per property and aspect, as they were before (see {@link FilerUpdateServiceImpl#setBatchWrites}).<br>
+ * Each operation runs in its own transaction against the embedded database, with the repository but without the test
+ * spies. It is not run by the build, launch {@link #main} from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UpdateFileableBenchmark {
+
+  private static final String[] CONTEXT_LOCATIONS = {
+    "classpath:alfresco/application-context.xml",
+    "classpath:context/security-context.xml"
+  };
+
+  @Param({ "true", "false" })
+  private boolean batchWrites;
+
+  private ConfigurableApplicationContext applicationContext;
+  private FilerUpdateService filerUpdateService;
+  private RetryingTransactionHelper transactionHelper;
+  private RepositoryNode titledNode;
+  private RepositoryNode authoredNode;
+  private boolean titled;
+
+  @Setup
+  public void createNode() throws Exception { // NOPMD - database extension may throw any exception
+    new PostgreSQLExtension().beforeAll(null);
+    applicationContext = new ClassPathXmlApplicationContext(CONTEXT_LOCATIONS);
+    applicationContext.getBean("filerUpdateServiceImpl", FilerUpdateServiceImpl.class).setBatchWrites(batchWrites);
+    filerUpdateService = applicationContext.getBean("filerUpdateService", FilerUpdateService.class);
+    transactionHelper = applicationContext.getBean("TransactionService", TransactionService.class)
+        .getRetryingTransactionHelper();
+    NodeService nodeService = applicationContext.getBean("NodeService", NodeService.class);
+
+    String name = randomUUID().toString();
+    NodeRef folder = AuthenticationUtil.runAsSystem(() -> transactionHelper.doInTransaction(() -> {
+      NodeRef root = nodeService.getRootNode(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+      return nodeService.createNode(root, ContentModel.ASSOC_CHILDREN,
+          QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, randomUUID().toString()), ContentModel.TYPE_FOLDER)
+          .getChildRef();
+    }, false, true));
+    NodeRef nodeRef = AuthenticationUtil.runAsSystem(() -> transactionHelper.doInTransaction(() -> {
+      NodeRef result = nodeService.createNode(folder, ContentModel.ASSOC_CONTAINS,
+          QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name), ContentModel.TYPE_CONTENT).getChildRef();
+      nodeService.setProperty(result, ContentModel.PROP_NAME, name);
+      return result;
+    }, false, true));
+    titledNode = buildNode(nodeRef, folder, name)
+        .aspect(ContentModel.ASPECT_TITLED)
+        .property(ContentModel.PROP_TITLE, "title")
+        .property(ContentModel.PROP_DESCRIPTION, "description")
+        .build();
+    authoredNode = buildNode(nodeRef, folder, name)
+        .aspect(ContentModel.ASPECT_AUTHOR)
+        .property(ContentModel.PROP_AUTHOR, "author")
+        .build();
+    // Start from the authored state, so that the first update adds the titled aspect
+    update(titledNode, authoredNode);
+    titled = true;
+  }
+
+  private static RepositoryNodeBuilder buildNode(final NodeRef nodeRef, final NodeRef parent, final String name) {
+    return RepositoryNode.builder()
+        .nodeRef(nodeRef)
+        .parent(parent)
+        .type(ContentModel.TYPE_CONTENT)
+        .named(name);
+  }
+
+  @TearDown
+  public void closeContext() {
+    applicationContext.close();
+  }
+
+  @Benchmark
+  public void updateFileable() {
+    if (titled) {
+      update(authoredNode, titledNode);
+    } else {
+      update(titledNode, authoredNode);
+    }
+    titled = !titled;
+  }
+
+  private void update(final RepositoryNode resultingNode, final RepositoryNode originalNode) {
+    AuthenticationUtil.runAsSystem(() -> transactionHelper.doInTransaction(() -> {
+      // Nodes are copied, as the update may change the resulting node
+      filerUpdateService.updateAndMoveFileable(new RepositoryNode(originalNode), new RepositoryNode(originalNode),
+          new RepositoryNode(resultingNode));
+      return null;
+    }, false, true));
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(UpdateFileableBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -1,12 +1,12 @@
 package com.atolcd.alfresco.filer.core.test.domain;
 
+import static com.atolcd.alfresco.filer.core.test.domain.util.DepartmentNodeUtils.buildDepartmentDocument;
 import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
 import static com.atolcd.alfresco.filer.core.util.FilerNodeUtils.getPath;
 import static java.util.UUID.randomUUID;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.Optional;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.Callable;
@@ -32,7 +32,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.model.impl.RepositoryNodeBuilder;
-import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
 import com.atolcd.alfresco.filer.core.test.domain.util.NodePathUtils;
 import com.atolcd.alfresco.filer.core.test.framework.Library;
 import com.atolcd.alfresco.filer.core.test.framework.LibraryExtension;
@@ -103,10 +102,7 @@ public class AbstractParallelTest {
   }
 
   protected RepositoryNodeBuilder buildNode(final String departmentName, final LocalDateTime date) {
-    return getLibrary().childNode()
-        .type(FilerTestConstants.Department.DocumentType.NAME)
-        .property(FilerTestConstants.Department.Aspect.PROP_NAME, departmentName)
-        .property(FilerTestConstants.ImportedAspect.PROP_DATE, date.atZone(ZoneId.systemDefault()));
+    return buildDepartmentDocument(departmentName, date);
   }
 
   protected void createAndDeleteNodesImpl() throws InterruptedException, BrokenBarrierException {
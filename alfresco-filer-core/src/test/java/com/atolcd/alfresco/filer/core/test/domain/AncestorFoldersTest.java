@@ -0,0 +1,111 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * Ancestors of a folder are reused from the root, as long as they are named after the path and the folder is not deeper
+ * than the plan
+ */
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class AncestorFoldersTest {
+
+  @Autowired
+  private FilerFolderService filerFolderService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  @Test
+  public void matchingPath() {
+    NodeRef root = getLibrary().getNodeRef();
+    List<String> path = buildPath();
+    List<NodeRef> folders = createFolders(root, path);
+
+    assertThat(getAncestorFolders(root, folders.get(1), 2, path)).isEqualTo(folders);
+    // Only the levels of the path are returned
+    assertThat(getAncestorFolders(root, folders.get(1), 2, path.subList(0, 1))).containsExactly(folders.get(0));
+  }
+
+  @Test
+  public void stopAtRenamedLevel() {
+    NodeRef root = getLibrary().getNodeRef();
+    List<String> path = buildPath();
+    List<NodeRef> folders = createFolders(root, path);
+
+    List<String> otherPath = Arrays.asList(path.get(0), randomUUID().toString());
+    assertThat(getAncestorFolders(root, folders.get(1), 2, otherPath)).containsExactly(folders.get(0));
+
+    List<String> renamedPath = Arrays.asList(randomUUID().toString(), path.get(1));
+    assertThat(getAncestorFolders(root, folders.get(1), 2, renamedPath)).isEmpty();
+  }
+
+  @Test
+  public void ignoreDeeperFolder() {
+    NodeRef root = getLibrary().getNodeRef();
+    List<String> path = buildPath();
+    List<NodeRef> folders = createFolders(root, path);
+
+    assertThat(getAncestorFolders(root, folders.get(1), 1, path)).isEmpty();
+  }
+
+  @Test
+  public void ignoreFolderOutsideRoot() {
+    NodeRef root = getLibrary().getNodeRef();
+    List<String> path = buildPath();
+    List<NodeRef> folders = createFolders(root, path);
+
+    // Folder is below the root of another plan
+    assertThat(getAncestorFolders(folders.get(1), folders.get(0), 2, path)).isEmpty();
+  }
+
+  private List<NodeRef> getAncestorFolders(final NodeRef root, final NodeRef folder, final int depth, final List<String> path) {
+    AtomicReference<List<NodeRef>> result = new AtomicReference<>();
+    transactionHelper.run(() -> result.set(filerFolderService.getAncestorFolders(root, folder, depth, path)));
+    return result.get();
+  }
+
+  private static List<String> buildPath() {
+    return Arrays.asList(randomUUID().toString(), randomUUID().toString());
+  }
+
+  private List<NodeRef> createFolders(final NodeRef root, final List<String> path) {
+    List<NodeRef> result = new ArrayList<>();
+    transactionHelper.runAsSystem(() -> {
+      NodeRef parent = root;
+      for (String name : path) {
+        parent = nodeService.createNode(parent, ContentModel.ASSOC_CONTAINS,
+            QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name), ContentModel.TYPE_FOLDER).getChildRef();
+        nodeService.setProperty(parent, ContentModel.PROP_NAME, name);
+        result.add(parent);
+      }
+    });
+    return result;
+  }
+}
@@ -0,0 +1,97 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerEventDispatcherImpl;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * Batched events resolve the destinations of all their nodes first: the segments of all nodes are then locked at once, in a
+ * global order, before any node is moved.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class BatchDispatchTest {
+
+  @Autowired
+  private FilerEventDispatcherImpl filerEventDispatcher;
+  @Autowired
+  private FilerFolderService filerFolderService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  @BeforeEach
+  public void enableBatch() {
+    filerEventDispatcher.setBatch(true);
+  }
+
+  @AfterEach
+  public void disableBatch() {
+    filerEventDispatcher.setBatch(false);
+  }
+
+  @Test
+  public void lockAllSegmentsAtOnce() {
+    LocalDateTime date = LocalDateTime.of(2004, 8, 12, 0, 0, 0);
+    List<NodeRef> nodes = new ArrayList<>();
+    // Both events are dispatched by the same transaction, so they are part of the same batch
+    transactionHelper.run(() -> {
+      nodes.add(createNode(randomUUID().toString(), date));
+      nodes.add(createNode(randomUUID().toString(), date));
+    });
+
+    // Nodes of distinct departments are filed in distinct segments
+    List<NodeRef> parents = new ArrayList<>();
+    transactionHelper.run(() -> nodes.forEach(nodeRef -> parents.add(nodeService.getPrimaryParent(nodeRef).getParentRef())),
+        true);
+    assertThat(parents).doesNotHaveDuplicates().doesNotContain(getLibrary().getNodeRef());
+    Mockito.verify(filerFolderService).lockFolders(Mockito.argThat(folders -> folders.containsAll(parents)));
+  }
+
+  private NodeRef createNode(final String departmentName, final LocalDateTime date) {
+    String name = randomUUID().toString();
+    Map<QName, Serializable> properties = new HashMap<>();
+    properties.put(ContentModel.PROP_NAME, name);
+    properties.put(FilerTestConstants.Department.Aspect.PROP_NAME, departmentName);
+    properties.put(FilerTestConstants.ImportedAspect.PROP_DATE, Date.from(date.atZone(ZoneId.systemDefault()).toInstant()));
+    return nodeService.createNode(getLibrary().getNodeRef(), ContentModel.ASSOC_CONTAINS,
+        QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name), FilerTestConstants.Department.DocumentType.NAME,
+        properties).getChildRef();
+  }
+}
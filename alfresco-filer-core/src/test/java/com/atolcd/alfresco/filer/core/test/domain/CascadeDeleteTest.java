@@ -0,0 +1,168 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.domain.util.DepartmentNodeUtils.buildDepartmentDocument;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerOperationServiceImpl;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * Deleting a folder containing a filer tree deletes all its segments in the same cascade, the filer must not try to clean them
+ * up on its own.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class CascadeDeleteTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CascadeDeleteTest.class);
+
+  private static final int MONTHS = 12;
+
+  @Autowired
+  private FilerFolderService filerFolderService;
+  @Autowired
+  private FilerStatisticsService filerStatisticsService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  @Test
+  public void deleteDepartmentFolder() {
+    String departmentName = randomUUID().toString();
+    RepositoryNode firstNode = buildDepartmentDocument(departmentName, LocalDateTime.of(2004, 8, 12, 0, 0, 0)).build();
+    RepositoryNode secondNode = buildDepartmentDocument(departmentName, LocalDateTime.of(2005, 4, 6, 0, 0, 0)).build();
+
+    repositoryNodeHelper.createNode(firstNode);
+    repositoryNodeHelper.createNode(secondNode);
+
+    Set<NodeRef> segments = new HashSet<>();
+    NodeRef departmentFolder = collectSegments(firstNode, segments);
+    assertThat(collectSegments(secondNode, segments)).isEqualTo(departmentFolder);
+
+    transactionHelper.run(() -> {
+      // Do not archive node, so that the whole hierarchy is actually deleted
+      nodeService.addAspect(departmentFolder, ContentModel.ASPECT_TEMPORARY, null);
+      nodeService.deleteNode(departmentFolder);
+    });
+
+    assertThat(nodeService.exists(departmentFolder)).isFalse();
+    assertThat(segments).noneMatch(nodeService::exists);
+    Mockito.verify(filerFolderService, Mockito.never()).deleteFolder(Mockito.argThat(segments::contains));
+    Mockito.verify(filerFolderService, Mockito.never()).lockFolder(Mockito.argThat(segments::contains));
+  }
+
+  @Test
+  public void deleteYearSegment() {
+    RepositoryNode node = buildNode(randomUUID().toString(), LocalDateTime.of(2004, 8, 12, 0, 0, 0));
+
+    repositoryNodeHelper.createNode(node);
+
+    NodeRef month = node.getParent().get();
+    NodeRef year = nodeService.getPrimaryParent(month).getParentRef();
+
+    transactionHelper.run(() -> {
+      nodeService.addAspect(year, ContentModel.ASPECT_TEMPORARY, null);
+      nodeService.deleteNode(year);
+    });
+
+    // Month segment is only known to be deleted through its parent
+    assertThat(nodeService.exists(month)).isFalse();
+    Mockito.verify(filerFolderService, Mockito.never()).deleteFolder(Mockito.argThat(Arrays.asList(month, year)::contains));
+    Mockito.verify(filerFolderService, Mockito.never()).lockFolders(Mockito.argThat(folders -> folders.contains(year)));
+  }
+
+  /**
+   * Measure the deletion of a department folder filled with one node per month, compared to the deletion of the same nodes
+   * one by one, which cleans up every segment
+   */
+  @Test
+  public void deleteLargeDepartmentFolder() {
+    Set<NodeRef> segments = new HashSet<>();
+    NodeRef departmentFolder = createMonthNodes(segments, new ArrayList<>());
+    List<NodeRef> otherNodes = new ArrayList<>();
+    createMonthNodes(new HashSet<>(), otherNodes);
+
+    long start = System.nanoTime();
+    transactionHelper.run(() -> otherNodes.forEach(nodeRef -> {
+      nodeService.addAspect(nodeRef, ContentModel.ASPECT_TEMPORARY, null);
+      nodeService.deleteNode(nodeRef);
+    }));
+    long cleanupTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    transactionHelper.run(() -> {
+      nodeService.addAspect(departmentFolder, ContentModel.ASPECT_TEMPORARY, null);
+      nodeService.deleteNode(departmentFolder);
+    });
+    long cascadeTime = System.nanoTime() - start;
+
+    LOGGER.info("Deletion of {} nodes: {} ms one by one, {} ms through their department folder", MONTHS,
+        cleanupTime / 1_000_000, cascadeTime / 1_000_000);
+
+    assertThat(segments).noneMatch(nodeService::exists);
+    Mockito.verify(filerStatisticsService, Mockito.atLeast(MONTHS))
+        .increment(FilerOperationServiceImpl.SEGMENT_CLEANUP_SKIPPED);
+    Mockito.verify(filerFolderService, Mockito.never()).lockFolders(Mockito.argThat(folders -> folders.stream()
+        .anyMatch(segments::contains)));
+  }
+
+  /**
+   * Create one node per month of a new department, collect their segments and return the department folder
+   */
+  private NodeRef createMonthNodes(final Set<NodeRef> segments, final List<NodeRef> nodes) {
+    String departmentName = randomUUID().toString();
+    NodeRef departmentFolder = null;
+    for (int month = 1; month <= MONTHS; month++) {
+      RepositoryNode node = buildDepartmentDocument(departmentName, LocalDateTime.of(2004, month, 12, 0, 0, 0)).build();
+      repositoryNodeHelper.createNode(node);
+      nodes.add(node.getNodeRef().get());
+      departmentFolder = collectSegments(node, segments);
+    }
+    return departmentFolder;
+  }
+
+  /**
+   * Collect month and year segments of the node and return the department folder containing them
+   */
+  private NodeRef collectSegments(final RepositoryNode node, final Set<NodeRef> segments) {
+    NodeRef month = node.getParent().get();
+    NodeRef year = nodeService.getPrimaryParent(month).getParentRef();
+    segments.add(month);
+    segments.add(year);
+    return nodeService.getPrimaryParent(year).getParentRef();
+  }
+}
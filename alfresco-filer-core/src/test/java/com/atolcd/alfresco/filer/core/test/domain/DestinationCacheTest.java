@@ -0,0 +1,132 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * Destinations resolved by plans are shared once committed, and are evicted as soon as one of their folders is deleted,
+ * renamed or moved. Folders of another type are resolved separately.
+ */
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class DestinationCacheTest {
+
+  @Autowired
+  private FilerFolderService filerFolderService;
+  @Autowired
+  private FilerOperationService filerOperationService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+  @Autowired
+  @Qualifier("filer.destinationCache")
+  private SimpleCache<Pair<NodeRef, List<Pair<QName, String>>>, List<NodeRef>> destinationCache;
+
+  @Test
+  public void reuseCommittedDestination() {
+    NodeRef root = getLibrary().getNodeRef();
+    List<Pair<QName, String>> path = buildPath();
+    List<NodeRef> folders = createSegments(root, path);
+
+    // Not shared before the transaction commits
+    transactionHelper.run(() -> {
+      filerFolderService.putResolvedFolder(root, path, folders);
+      assertThat(filerFolderService.getResolvedFolder(root, path)).isEmpty();
+    });
+
+    assertThat(getResolvedFolder(root, path)).contains(folders.get(1));
+
+    List<Pair<QName, String>> otherTypePath = Arrays.asList(path.get(0),
+        new Pair<>(ContentModel.TYPE_SYSTEM_FOLDER, path.get(1).getSecond()));
+    assertThat(getResolvedFolder(root, otherTypePath)).isEmpty();
+  }
+
+  @Test
+  public void evictDeletedSegment() {
+    NodeRef root = getLibrary().getNodeRef();
+    List<Pair<QName, String>> path = buildPath();
+    List<NodeRef> folders = createSegments(root, path);
+    putResolvedFolder(root, path, folders);
+
+    transactionHelper.runAsSystem(() -> nodeService.deleteNode(folders.get(1)));
+
+    assertThat(getResolvedFolder(root, path)).isEmpty();
+    assertThat(destinationCache.contains(new Pair<>(root, path))).isFalse();
+  }
+
+  @Test
+  public void evictRenamedFolder() {
+    NodeRef root = getLibrary().getNodeRef();
+    List<Pair<QName, String>> path = buildPath();
+    List<NodeRef> folders = createSegments(root, path);
+    putResolvedFolder(root, path, folders);
+
+    transactionHelper.runAsSystem(() -> nodeService.setProperty(folders.get(0), ContentModel.PROP_NAME, randomUUID().toString()));
+
+    // Destination itself is still there, but not under the expected path anymore
+    assertThat(nodeService.exists(folders.get(1))).isTrue();
+    assertThat(getResolvedFolder(root, path)).isEmpty();
+    assertThat(destinationCache.contains(new Pair<>(root, path))).isFalse();
+  }
+
+  private Optional<NodeRef> getResolvedFolder(final NodeRef root, final List<Pair<QName, String>> path) {
+    AtomicReference<Optional<NodeRef>> result = new AtomicReference<>();
+    transactionHelper.run(() -> result.set(filerFolderService.getResolvedFolder(root, path)));
+    return result.get();
+  }
+
+  private void putResolvedFolder(final NodeRef root, final List<Pair<QName, String>> path, final List<NodeRef> folders) {
+    transactionHelper.run(() -> filerFolderService.putResolvedFolder(root, path, folders));
+    assertThat(getResolvedFolder(root, path)).contains(folders.get(folders.size() - 1));
+  }
+
+  private static List<Pair<QName, String>> buildPath() {
+    return Arrays.asList(new Pair<>(ContentModel.TYPE_FOLDER, randomUUID().toString()),
+        new Pair<>(ContentModel.TYPE_FOLDER, randomUUID().toString()));
+  }
+
+  private List<NodeRef> createSegments(final NodeRef root, final List<Pair<QName, String>> path) {
+    List<NodeRef> result = new ArrayList<>();
+    transactionHelper.runAsSystem(() -> {
+      NodeRef parent = root;
+      for (Pair<QName, String> folder : path) {
+        parent = nodeService.createNode(parent, ContentModel.ASSOC_CONTAINS,
+            QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, folder.getSecond()), folder.getFirst()).getChildRef();
+        nodeService.setProperty(parent, ContentModel.PROP_NAME, folder.getSecond());
+        filerOperationService.setSegment(parent);
+        result.add(parent);
+      }
+    });
+    return result;
+  }
+}
@@ -0,0 +1,152 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.model.impl.RepositoryNodeBuilder;
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerFolderServiceImpl;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * This test checks that a transaction holding a segment lock does not create a folder eagerly.<br>
+ * The other transaction holds the parent of the folder and waits for the segment locked by the first one. If the first one
+ * created the folder in a separate transaction, that transaction would wait for the parent while the first one waits for it
+ * in Java: the database could not detect this deadlock and both transactions would hang until the lock timeout.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+public class EagerCreationLockParallelTest extends AbstractParallelTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EagerCreationLockParallelTest.class);
+
+  @Autowired
+  private FilerFolderService filerFolderService;
+  @Autowired
+  private FilerOperationService filerOperationService;
+  @Autowired
+  private FilerStatisticsService filerStatisticsService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  @BeforeEach
+  public void enableEagerCreation() {
+    ((FilerFolderServiceImpl) filerFolderService).setEagerCreation(true);
+  }
+
+  @AfterEach
+  public void disableEagerCreation() {
+    ((FilerFolderServiceImpl) filerFolderService).setEagerCreation(false);
+  }
+
+  @Test
+  public void createFolderWhileHoldingLock() throws InterruptedException {
+    NodeRef root = createFolder(getLibrary().getNodeRef(), false);
+    NodeRef parent = createFolder(root, true);
+    NodeRef segment = createFolder(root, true);
+
+    // Latch stays open once both tasks hold their first lock, so that a retry of either task does not wait for the other
+    CountDownLatch lockLatch = new CountDownLatch(UPDATE_TASK + UPDATE_TASK);
+    CountDownLatch endingLatch = new CountDownLatch(UPDATE_TASK + UPDATE_TASK);
+    AtomicReference<RepositoryNode> folder = new AtomicReference<>();
+
+    execute(endingLatch, () -> {
+      transactionHelper.run(() -> {
+        LOGGER.debug("Create task: locking segment");
+        filerFolderService.lockFolder(segment);
+        awaitLocks(lockLatch);
+
+        LOGGER.debug("Create task: folder creation start");
+        RepositoryNode node = new RepositoryNodeBuilder()
+            .parent(parent)
+            .type(ContentModel.TYPE_FOLDER)
+            .named(randomUUID())
+            .build();
+        filerFolderService.fetchOrCreateFolder(node, x -> {}, x -> {}, x -> {});
+        folder.set(node);
+        LOGGER.debug("Create task: folder creation end");
+      });
+      return null;
+    });
+
+    execute(endingLatch, () -> {
+      transactionHelper.run(() -> {
+        LOGGER.debug("Lock task: locking parent");
+        filerFolderService.lockFolder(parent);
+        awaitLocks(lockLatch);
+
+        // Let the create task wait for the parent first
+        sleep();
+        LOGGER.debug("Lock task: locking segment");
+        filerFolderService.lockFolder(segment);
+      });
+      return null;
+    });
+
+    // Both tasks end before the lock timeout, one of them being retried if the database detected the deadlock
+    assertThat(endingLatch.await(30, TimeUnit.SECONDS)).isTrue();
+
+    LOGGER.debug("All tasks are done, starting assertions");
+
+    assertThat(folder.get()).isNotNull();
+    assertThat(nodeService.getPrimaryParent(folder.get().getNodeRef().get()).getParentRef()).isEqualTo(parent);
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerFolderServiceImpl.FOLDER_EAGER_CREATION);
+  }
+
+  private NodeRef createFolder(final NodeRef parent, final boolean segment) {
+    AtomicReference<NodeRef> result = new AtomicReference<>();
+    transactionHelper.runAsSystem(() -> {
+      String name = randomUUID().toString();
+      result.set(nodeService.createNode(parent, ContentModel.ASSOC_CONTAINS,
+          QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name), ContentModel.TYPE_FOLDER).getChildRef());
+      nodeService.setProperty(result.get(), ContentModel.PROP_NAME, name);
+      if (segment) {
+        filerOperationService.setSegment(result.get());
+      }
+    });
+    return result.get();
+  }
+
+  private static void awaitLocks(final CountDownLatch lockLatch) {
+    lockLatch.countDown();
+    try {
+      assertThat(lockLatch.await(10, TimeUnit.SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void sleep() {
+    try {
+      TimeUnit.SECONDS.sleep(1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+}
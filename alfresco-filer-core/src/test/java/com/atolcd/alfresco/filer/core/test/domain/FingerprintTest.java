@@ -0,0 +1,135 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.service.FilerRegistry;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerServiceImpl;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+
+/**
+ * Updates that leave the inputs of the filer actions unchanged are dropped, provided that every action declares them.
+ * Inherited properties are always taken into account, so that their updates are cascaded to children.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class FingerprintTest {
+
+  @Autowired
+  private FilerRegistry filerRegistry;
+  @Autowired
+  private FilerModelService filerModelService;
+  @Autowired
+  private FilerOperationService filerOperationService;
+  @Autowired
+  private FilerStatisticsService filerStatisticsService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+
+  @BeforeEach
+  public void declareInputs() {
+    // Only some test actions declare their inputs, act as if all of them did
+    Set<QName> inputs = filerRegistry.getActions().stream()
+        .flatMap(action -> action.getInputProperties().stream())
+        .collect(Collectors.toSet());
+    Mockito.doReturn(Optional.of(inputs)).when(filerRegistry).getInputProperties();
+  }
+
+  @Test
+  public void dropUnchangedInputs() {
+    RepositoryNode node = createTitledNode();
+
+    Mockito.clearInvocations(filerOperationService, filerStatisticsService);
+    repositoryNodeHelper.updateNode(node, Collections.singletonMap(ContentModel.PROP_DESCRIPTION, randomUUID().toString()));
+
+    Mockito.verify(filerStatisticsService).increment(FilerServiceImpl.FINGERPRINT_MATCH);
+    Mockito.verify(filerOperationService, Mockito.never()).execute(any(), any());
+  }
+
+  @Test
+  public void fileChangedInputs() {
+    RepositoryNode node = createTitledNode();
+    Serializable fingerprint = node.getProperties().get(filerModelService.getFileableFingerprintProperty());
+
+    String title = randomUUID().toString();
+    Mockito.clearInvocations(filerOperationService, filerStatisticsService);
+    repositoryNodeHelper.updateNode(node, Collections.singletonMap(ContentModel.PROP_TITLE, title));
+
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerServiceImpl.FINGERPRINT_MATCH);
+    Mockito.verify(filerOperationService).execute(any(), any());
+    assertThat(node.getName()).contains(title);
+    assertThat(node.getProperties().get(filerModelService.getFileableFingerprintProperty()))
+        .isNotNull()
+        .isNotEqualTo(fingerprint);
+  }
+
+  @Test
+  public void cascadeInheritedProperties() {
+    RepositoryNode folderNode = getLibrary().childNode()
+        .type(FilerTestConstants.Department.FolderType.NAME)
+        .property(FilerTestConstants.Department.Aspect.PROP_NAME, randomUUID())
+        .property(FilerTestConstants.Department.Aspect.PROP_ID, randomUUID())
+        .build();
+    repositoryNodeHelper.createNode(folderNode);
+    assertThat(folderNode.getProperties()).containsKey(filerModelService.getFileableFingerprintProperty());
+
+    RepositoryNode testNode = getLibrary().childNode()
+        .type(FilerTestConstants.Department.DocumentType.NAME)
+        .parent(folderNode.getNodeRef())
+        .build();
+    repositoryNodeHelper.createNode(testNode);
+
+    // Department identifier is not an input of the actions, but it is inherited by the documents of the department
+    Map<QName, Serializable> properties = Collections.singletonMap(FilerTestConstants.Department.Aspect.PROP_ID,
+        randomUUID().toString());
+    repositoryNodeHelper.updateNode(folderNode, properties);
+    repositoryNodeHelper.fetchNode(testNode);
+
+    assertThat(testNode.getProperty(FilerTestConstants.Department.Aspect.PROP_ID, String.class))
+        .contains((String) properties.get(FilerTestConstants.Department.Aspect.PROP_ID));
+  }
+
+  private RepositoryNode createTitledNode() {
+    String title = randomUUID().toString();
+    RepositoryNode node = getLibrary().childNode()
+        .type(FilerTestConstants.SpecialDocumentType.NAME)
+        .property(ContentModel.PROP_TITLE, title)
+        .build();
+    repositoryNodeHelper.createNode(node);
+
+    assertThat(node.getName()).contains(title);
+    assertThat(node.getProperties()).containsKey(filerModelService.getFileableFingerprintProperty());
+    return node;
+  }
+}
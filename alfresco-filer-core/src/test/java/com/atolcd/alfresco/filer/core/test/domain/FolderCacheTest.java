@@ -0,0 +1,106 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.domain.util.DepartmentNodeUtils.buildDepartmentDocument;
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.LocalDateTime;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.FilerException;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * Folders resolved by a transaction are kept by parent and name, a segment renamed or moved by the same transaction must not
+ * be found under its previous name anymore.
+ */
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_CONTRIBUTOR)
+public class FolderCacheTest {
+
+  @Autowired
+  private FilerFolderService filerFolderService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  @Test
+  public void renamedSegment() {
+    RepositoryNode node = buildNode();
+    repositoryNodeHelper.createNode(node);
+
+    NodeRef year = nodeService.getPrimaryParent(node.getParent().get()).getParentRef();
+    NodeRef departmentFolder = nodeService.getPrimaryParent(year).getParentRef();
+    String yearName = (String) nodeService.getProperty(year, ContentModel.PROP_NAME);
+
+    transactionHelper.run(() -> {
+      assertThat(fetchFolder(departmentFolder, yearName)).isEqualTo(year);
+
+      AuthenticationUtil.runAsSystem(() -> {
+        nodeService.setProperty(year, ContentModel.PROP_NAME, randomUUID().toString());
+        return null;
+      });
+
+      assertThatThrownBy(() -> fetchFolder(departmentFolder, yearName)).isInstanceOf(FilerException.class);
+    });
+  }
+
+  @Test
+  public void movedSegment() {
+    RepositoryNode node = buildNode();
+    repositoryNodeHelper.createNode(node);
+
+    NodeRef year = nodeService.getPrimaryParent(node.getParent().get()).getParentRef();
+    NodeRef departmentFolder = nodeService.getPrimaryParent(year).getParentRef();
+    String yearName = (String) nodeService.getProperty(year, ContentModel.PROP_NAME);
+
+    transactionHelper.run(() -> {
+      assertThat(fetchFolder(departmentFolder, yearName)).isEqualTo(year);
+
+      AuthenticationUtil.runAsSystem(() -> {
+        String name = randomUUID().toString();
+        NodeRef folder = nodeService.createNode(getLibrary().getNodeRef(), ContentModel.ASSOC_CONTAINS,
+            QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name), ContentModel.TYPE_FOLDER).getChildRef();
+        nodeService.setProperty(folder, ContentModel.PROP_NAME, name);
+        nodeService.moveNode(year, folder, ContentModel.ASSOC_CONTAINS,
+            QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, yearName));
+        return null;
+      });
+
+      assertThatThrownBy(() -> fetchFolder(departmentFolder, yearName)).isInstanceOf(FilerException.class);
+    });
+  }
+
+  private NodeRef fetchFolder(final NodeRef parent, final String name) {
+    RepositoryNode folder = RepositoryNode.builder().parent(parent).named(name).build();
+    filerFolderService.fetchFolder(folder, x -> {});
+    return folder.getNodeRef().get();
+  }
+
+  private static RepositoryNode buildNode() {
+    return buildDepartmentDocument(randomUUID().toString(), LocalDateTime.of(2004, 8, 12, 0, 0, 0)).build();
+  }
+}
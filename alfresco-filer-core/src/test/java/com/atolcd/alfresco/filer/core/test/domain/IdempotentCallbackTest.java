@@ -0,0 +1,94 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * An idempotent callback is skipped while the folder is left untouched, and run again once its properties or its
+ * permissions change.
+ */
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class IdempotentCallbackTest {
+
+  @Autowired
+  private FilerOperationService filerOperationService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private PermissionService permissionService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  private final AtomicInteger executions = new AtomicInteger();
+  private final String callbackId = randomUUID().toString();
+
+  private NodeRef folder;
+
+  @BeforeEach
+  public void createFolder() {
+    AtomicReference<NodeRef> result = new AtomicReference<>();
+    transactionHelper.runAsSystem(() -> {
+      String name = randomUUID().toString();
+      result.set(nodeService.createNode(getLibrary().getNodeRef(), ContentModel.ASSOC_CONTAINS,
+          QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name), ContentModel.TYPE_FOLDER).getChildRef());
+      nodeService.setProperty(result.get(), ContentModel.PROP_NAME, name);
+    });
+    folder = result.get();
+  }
+
+  @Test
+  public void skipUntouchedFolder() {
+    runCallback();
+    runCallback();
+
+    assertThat(executions.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void rerunAfterPropertyChange() {
+    runCallback();
+    transactionHelper.runAsSystem(() -> nodeService.setProperty(folder, ContentModel.PROP_TITLE, randomUUID().toString()));
+    runCallback();
+
+    assertThat(executions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void rerunAfterPermissionChange() {
+    runCallback();
+    transactionHelper.runAsSystem(() -> permissionService.setInheritParentPermissions(folder, false));
+    runCallback();
+
+    assertThat(executions.get()).isEqualTo(2);
+  }
+
+  private void runCallback() {
+    transactionHelper.runAsSystem(() -> filerOperationService.runIdempotent(folder, callbackId,
+        x -> executions.incrementAndGet()));
+  }
+}
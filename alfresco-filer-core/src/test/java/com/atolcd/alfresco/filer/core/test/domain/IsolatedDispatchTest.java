@@ -0,0 +1,113 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.mockito.ArgumentMatchers.any;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.InboundFilerEvent;
+import com.atolcd.alfresco.filer.core.service.FilerService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerEventDispatcherImpl;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
+
+/**
+ * Isolated events are executed once the triggering transaction has committed. If they keep failing, the node is left unfiled
+ * but its fingerprint is removed, so that its next update files it again.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class IsolatedDispatchTest {
+
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private TransactionService transactionService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+  @Mock
+  private FilerService filerService;
+  @Mock
+  private FilerStatisticsService filerStatisticsService;
+
+  private FilerEventDispatcherImpl filerEventDispatcher;
+
+  @BeforeEach
+  public void initDispatcher() {
+    filerEventDispatcher = new FilerEventDispatcherImpl();
+    filerEventDispatcher.setFilerService(filerService);
+    filerEventDispatcher.setFilerStatisticsService(filerStatisticsService);
+    filerEventDispatcher.setNodeService(nodeService);
+    filerEventDispatcher.setTransactionService(transactionService);
+    filerEventDispatcher.setIsolated(true);
+  }
+
+  @Test
+  public void executeAfterCommit() {
+    NodeRef nodeRef = createNode();
+
+    dispatch(nodeRef);
+
+    Mockito.verify(filerService).executeAction(Mockito.argThat(event -> event.getNode().getNodeRef().get().equals(nodeRef)));
+    Mockito.verify(filerService, Mockito.never()).resetFingerprint(any());
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerEventDispatcherImpl.ISOLATED_FAILURE);
+  }
+
+  @Test
+  public void resetFingerprintOnFailure() {
+    NodeRef nodeRef = createNode();
+    Mockito.doThrow(IllegalStateException.class).when(filerService).executeAction(any());
+
+    dispatch(nodeRef);
+
+    // Triggering transaction is committed anyway
+    Mockito.verify(filerService).executeAction(any());
+    Mockito.verify(filerService).resetFingerprint(nodeRef);
+    Mockito.verify(filerStatisticsService).increment(FilerEventDispatcherImpl.ISOLATED_FAILURE);
+  }
+
+  private void dispatch(final NodeRef nodeRef) {
+    transactionHelper.run(() -> {
+      FilerTransactionUtils.putUpdateUser(nodeRef, AuthenticationUtil.getRunAsUser());
+      filerEventDispatcher.dispatch(nodeRef, () -> new InboundFilerEvent(nodeRef, false));
+      // Event is only executed once the transaction commits
+      Mockito.verifyNoInteractions(filerService);
+    });
+  }
+
+  private NodeRef createNode() {
+    AtomicReference<NodeRef> result = new AtomicReference<>();
+    transactionHelper.runAsSystem(() -> {
+      String name = randomUUID().toString();
+      result.set(nodeService.createNode(getLibrary().getNodeRef(), ContentModel.ASSOC_CONTAINS,
+          QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name), ContentModel.TYPE_FOLDER).getChildRef());
+      nodeService.setProperty(result.get(), ContentModel.PROP_NAME, name);
+    });
+    return result.get();
+  }
+}
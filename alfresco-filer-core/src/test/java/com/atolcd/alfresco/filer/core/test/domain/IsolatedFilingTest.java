@@ -0,0 +1,135 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.domain.util.NodePathUtils.nodePath;
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static com.atolcd.alfresco.filer.core.util.FilerNodeUtils.getPath;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.FilerUpdateService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerEventDispatcherImpl;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * Nodes are filed in a single isolated transaction: the updates made by the filer in that transaction are not dispatched
+ * again. Retrying it only replays the filing, not the transaction that triggered it.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class IsolatedFilingTest {
+
+  private static final LocalDateTime DATE = LocalDateTime.of(2004, 8, 12, 0, 0, 0);
+
+  @Autowired
+  private FilerEventDispatcherImpl filerEventDispatcher;
+  @Autowired
+  private FilerUpdateService filerUpdateService;
+  @Autowired
+  private FilerStatisticsService filerStatisticsService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+
+  @BeforeEach
+  public void enableIsolation() {
+    filerEventDispatcher.setIsolated(true);
+  }
+
+  @AfterEach
+  public void disableIsolation() {
+    filerEventDispatcher.setIsolated(false);
+  }
+
+  @Test
+  public void fileInSingleTransaction() {
+    String departmentName = randomUUID().toString();
+    AtomicInteger creations = new AtomicInteger();
+
+    RepositoryNode node = createNode(departmentName, creations);
+
+    assertThat(getPath(node)).isEqualTo(nodePath(departmentName, DATE));
+    Mockito.verify(filerStatisticsService).record(eq(FilerEventDispatcherImpl.ISOLATED_ATTEMPTS), anyLong());
+    Mockito.verify(filerStatisticsService).record(FilerEventDispatcherImpl.ISOLATED_ATTEMPTS, 1);
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerEventDispatcherImpl.ISOLATED_REPLAY);
+  }
+
+  @Test
+  public void replayOnlyFiling() {
+    AtomicBoolean failed = new AtomicBoolean();
+    Mockito.doAnswer(invocation -> {
+      if (!failed.getAndSet(true)) {
+        throw new ConcurrencyFailureException("Simulated contention on filing");
+      }
+      return invocation.callRealMethod();
+    }).when(filerUpdateService).updateAndMoveFileable(any(), any(), any());
+    String departmentName = randomUUID().toString();
+    AtomicInteger creations = new AtomicInteger();
+
+    RepositoryNode node = createNode(departmentName, creations);
+
+    assertThat(getPath(node)).isEqualTo(nodePath(departmentName, DATE));
+    // Triggering transaction is committed once, only the isolated transaction is retried
+    assertThat(creations).hasValue(1);
+    Mockito.verify(filerStatisticsService).increment(FilerEventDispatcherImpl.ISOLATED_REPLAY);
+    Mockito.verify(filerStatisticsService).record(eq(FilerEventDispatcherImpl.ISOLATED_ATTEMPTS), anyLong());
+    Mockito.verify(filerStatisticsService).record(FilerEventDispatcherImpl.ISOLATED_ATTEMPTS, 2);
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerEventDispatcherImpl.ISOLATED_FAILURE);
+  }
+
+  /**
+   * Isolated events are executed once the transaction has committed, before this method returns
+   */
+  private RepositoryNode createNode(final String departmentName, final AtomicInteger creations) {
+    RepositoryNode node = getLibrary().childNode()
+        .type(FilerTestConstants.Department.DocumentType.NAME)
+        .property(FilerTestConstants.Department.Aspect.PROP_NAME, departmentName)
+        .property(FilerTestConstants.ImportedAspect.PROP_DATE, DATE.atZone(ZoneId.systemDefault()))
+        .build();
+    transactionHelper.run(() -> {
+      creations.incrementAndGet();
+      QName assocQName = QName.createQNameWithValidLocalName(NamespaceService.CONTENT_MODEL_1_0_URI, node.getName().get());
+      NodeRef nodeRef = nodeService.createNode(node.getParent().get(), ContentModel.ASSOC_CONTAINS, assocQName,
+          node.getType().get(), node.getProperties()).getChildRef();
+      node.setNodeRef(nodeRef);
+    });
+    repositoryNodeHelper.fetchNode(node);
+    return node;
+  }
+}
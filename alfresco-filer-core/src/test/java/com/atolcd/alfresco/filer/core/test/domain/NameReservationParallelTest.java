@@ -0,0 +1,90 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * Nodes filed concurrently with the same name in the same folder are all filed, each one with its own suffixed name, without
+ * retrying their transaction
+ */
+public class NameReservationParallelTest extends AbstractParallelTest {
+
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  @Test
+  public void createNodesWithSameName() throws InterruptedException {
+    String title = randomUUID().toString();
+
+    CyclicBarrier startingBarrier = new CyclicBarrier(NUM_THREAD_TO_LAUNCH);
+    CountDownLatch endingLatch = new CountDownLatch(NUM_THREAD_TO_LAUNCH);
+    List<RepositoryNode> results = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger attempts = new AtomicInteger();
+
+    for (int i = 0; i < NUM_THREAD_TO_LAUNCH; i++) {
+      execute(endingLatch, () -> {
+        RepositoryNode node = getLibrary().childNode()
+            .type(FilerTestConstants.SpecialDocumentType.NAME)
+            .property(ContentModel.PROP_TITLE, title)
+            .build();
+
+        // Wait for every thread to be ready to launch parallel createNode
+        startingBarrier.await(10, TimeUnit.SECONDS);
+
+        transactionHelper.run(() -> {
+          attempts.incrementAndGet();
+          QName assocQName = QName.createQNameWithValidLocalName(NamespaceService.CONTENT_MODEL_1_0_URI, node.getName().get());
+          node.setNodeRef(nodeService.createNode(node.getParent().get(), ContentModel.ASSOC_CONTAINS, assocQName,
+              node.getType().get(), node.getProperties()).getChildRef());
+        });
+        repositoryNodeHelper.fetchNode(node);
+        results.add(node);
+        return null;
+      });
+    }
+
+    // Wait for every thread to finish job before asserting results
+    endingLatch.await();
+
+    // Assert all threads were ready for parallel createNode
+    assertThat(startingBarrier.isBroken()).isFalse();
+
+    assertThat(results.stream().map(RepositoryNode::getNodeRef).map(Optional::get).map(nodeService::exists))
+        .hasSize(NUM_THREAD_TO_LAUNCH)
+        .containsOnly(true);
+    assertThat(results.stream().map(RepositoryNode::getName).map(Optional::get))
+        .doesNotHaveDuplicates()
+        .contains(title)
+        .allMatch(name -> name.startsWith(title));
+    assertThat(results.stream().map(RepositoryNode::getParent).map(Optional::get))
+        .containsOnly(getLibrary().getNodeRef());
+    // Name collisions are all resolved before writing: no transaction is retried with a ConcurrencyFailureException
+    assertThat(attempts).hasValue(NUM_THREAD_TO_LAUNCH);
+  }
+}
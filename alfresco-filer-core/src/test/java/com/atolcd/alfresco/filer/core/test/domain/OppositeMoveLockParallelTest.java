@@ -0,0 +1,132 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.domain.util.NodePathUtils.nodePath;
+import static com.atolcd.alfresco.filer.core.util.FilerNodeUtils.getPath;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerFolderServiceImpl;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+
+/**
+ * This test checks that two transactions moving nodes in opposite directions between sibling segments do not deadlock.<br>
+ * Each transaction locks its target segment and then its source segment, in order to delete it if it became empty. If those locks
+ * were not acquired in a global order, each transaction would wait for the lock held by the other one.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+public class OppositeMoveLockParallelTest extends AbstractParallelTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OppositeMoveLockParallelTest.class);
+
+  @Autowired
+  private FilerOperationService filerOperationService;
+  @Autowired
+  private FilerStatisticsService filerStatisticsService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+
+  @BeforeEach
+  public void setUpSpiedDependencies() {
+    Mockito.doAnswer(invocation -> {
+      LOGGER.debug("filerOperationService.deleteSegment : Waiting before call");
+      TimeUnit.SECONDS.sleep(1);
+      invocation.callRealMethod();
+      return null;
+    }).when(filerOperationService).deleteSegment(Mockito.any());
+  }
+
+  @Test
+  public void moveNodesInOppositeDirections() throws InterruptedException, BrokenBarrierException {
+    String departmentName = randomUUID().toString();
+    LocalDateTime firstDate = LocalDateTime.of(2004, 8, 12, 0, 0, 0);
+    LocalDateTime secondDate = LocalDateTime.of(2004, 4, 6, 0, 0, 0);
+    long deadlocks = filerStatisticsService.getCount(FilerFolderServiceImpl.FOLDER_LOCK_DEADLOCK);
+
+    CyclicBarrier startingBarrier = new CyclicBarrier(UPDATE_TASK + UPDATE_TASK);
+    CyclicBarrier preparationAssertBarrier = new CyclicBarrier(MAIN_TASK + UPDATE_TASK + UPDATE_TASK);
+    CountDownLatch endingLatch = new CountDownLatch(UPDATE_TASK + UPDATE_TASK);
+    AtomicReference<RepositoryNode> firstNode = new AtomicReference<>();
+    AtomicReference<RepositoryNode> secondNode = new AtomicReference<>();
+
+    execute(endingLatch, () -> {
+      moveNode(firstNode, departmentName, firstDate, secondDate, startingBarrier, preparationAssertBarrier);
+      return null;
+    });
+
+    execute(endingLatch, () -> {
+      moveNode(secondNode, departmentName, secondDate, firstDate, startingBarrier, preparationAssertBarrier);
+      return null;
+    });
+
+    // Wait for node creation to finish and then assert all nodes are indeed created
+    preparationAssertBarrier.await();
+    assertThat(getPath(firstNode.get())).isEqualTo(nodePath(departmentName, firstDate));
+    assertThat(getPath(secondNode.get())).isEqualTo(nodePath(departmentName, secondDate));
+    preparationAssertBarrier.await();
+
+    // Wait for every task to finish job before asserting results
+    endingLatch.await();
+
+    LOGGER.debug("All tasks are done, starting assertions");
+
+    // Assert all tasks were ready for parallel task execution
+    assertThat(startingBarrier.isBroken()).isFalse();
+
+    assertThat(getPath(firstNode.get())).isEqualTo(nodePath(departmentName, secondDate));
+    assertThat(getPath(secondNode.get())).isEqualTo(nodePath(departmentName, firstDate));
+
+    assertThat(filerStatisticsService.getCount(FilerFolderServiceImpl.FOLDER_LOCK_DEADLOCK)).isEqualTo(deadlocks);
+  }
+
+  private void moveNode(final AtomicReference<RepositoryNode> reference, final String departmentName,
+      final LocalDateTime sourceDate, final LocalDateTime targetDate, final CyclicBarrier startingBarrier,
+      final CyclicBarrier preparationAssertBarrier) throws InterruptedException, BrokenBarrierException, TimeoutException {
+    LOGGER.debug("Update task: task started");
+    RepositoryNode node = buildNode(departmentName, sourceDate).build();
+
+    LOGGER.debug("Update task: creating node that will be updated");
+    repositoryNodeHelper.createNode(node);
+    reference.set(node);
+
+    preparationAssertBarrier.await(10, TimeUnit.SECONDS);
+    // Wait for assertion on created nodes taking place in main task
+    preparationAssertBarrier.await(10, TimeUnit.SECONDS);
+
+    Map<QName, Serializable> dateProperty = Collections.singletonMap(FilerTestConstants.ImportedAspect.PROP_DATE,
+        Date.from(targetDate.atZone(ZoneId.systemDefault()).toInstant()));
+
+    // Wait for every task to be ready for launching parallel task execution
+    startingBarrier.await(10, TimeUnit.SECONDS);
+
+    LOGGER.debug("Update task: node update start");
+    repositoryNodeHelper.updateNode(node, dateProperty);
+    LOGGER.debug("Update task: node update end");
+  }
+}
@@ -0,0 +1,196 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.domain.util.DepartmentNodeUtils.buildDepartmentDocument;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+
+/**
+ * Segments which become empty are deleted along with their emptied ancestors, all of them being locked at once. Segments
+ * kept while empty are deleted by the purge.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class SegmentCleanupTest {
+
+  private static final int PURGE_BATCH_SIZE = 10;
+
+  @Autowired
+  private FilerFolderService filerFolderService;
+  @Autowired
+  private FilerModelService filerModelService;
+  @Autowired
+  private FilerOperationService filerOperationService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+  @Autowired
+  private TransactionService transactionService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  @Test
+  public void deleteEmptiedSegments() {
+    RepositoryNode node = buildNode(randomUUID().toString(), LocalDateTime.of(2004, 8, 12, 0, 0, 0));
+    repositoryNodeHelper.createNode(node);
+
+    NodeRef month = node.getParent().get();
+    NodeRef year = nodeService.getPrimaryParent(month).getParentRef();
+    List<NodeRef> segments = Arrays.asList(month, year);
+
+    repositoryNodeHelper.deleteNode(node);
+
+    assertThat(segments).noneMatch(nodeService::exists);
+    Mockito.verify(filerFolderService).lockFolders(Mockito.argThat(folders -> folders.containsAll(segments)));
+    Mockito.verify(filerFolderService, Mockito.never()).lockFolder(Mockito.argThat(segments::contains));
+  }
+
+  @Test
+  public void deleteSeveralNodesOfSegment() {
+    String departmentName = randomUUID().toString();
+    LocalDateTime date = LocalDateTime.of(2004, 8, 12, 0, 0, 0);
+    List<RepositoryNode> nodes = Arrays.asList(buildDepartmentDocument(departmentName, date).build(),
+        buildDepartmentDocument(departmentName, date).build(), buildDepartmentDocument(departmentName, date).build());
+    nodes.forEach(repositoryNodeHelper::createNode);
+
+    NodeRef month = nodes.get(0).getParent().get();
+    NodeRef year = nodeService.getPrimaryParent(month).getParentRef();
+    List<NodeRef> segments = Arrays.asList(month, year);
+    assertThat(nodes).allMatch(node -> node.getParent().get().equals(month));
+
+    transactionHelper.run(() -> {
+      nodes.forEach(node -> nodeService.deleteNode(node.getNodeRef().get()));
+    });
+
+    // Cleanup is requested for each node, but it is only performed once when the transaction commits
+    assertThat(segments).noneMatch(nodeService::exists);
+    Mockito.verify(filerOperationService, Mockito.times(nodes.size())).deleteSegmentOnCommit(month);
+    Mockito.verify(filerFolderService).lockFolders(Mockito.argThat(folders -> folders.containsAll(segments)));
+    Mockito.verify(filerFolderService).deleteFolder(month);
+  }
+
+  @Test
+  public void deleteAncestorEmptiedConcurrently() {
+    String departmentName = randomUUID().toString();
+    RepositoryNode node = buildDepartmentDocument(departmentName, LocalDateTime.of(2004, 8, 12, 0, 0, 0)).build();
+    RepositoryNode otherNode = buildDepartmentDocument(departmentName, LocalDateTime.of(2004, 4, 6, 0, 0, 0)).build();
+    repositoryNodeHelper.createNode(node);
+    repositoryNodeHelper.createNode(otherNode);
+
+    NodeRef month = node.getParent().get();
+    NodeRef otherMonth = otherNode.getParent().get();
+    NodeRef year = nodeService.getPrimaryParent(month).getParentRef();
+    assertThat(nodeService.getPrimaryParent(otherMonth).getParentRef()).isEqualTo(year);
+
+    // Other month is deleted by a concurrent transaction once the segments of the first one are locked: the year is not
+    // locked along with them, as it was not empty then
+    AtomicBoolean concurrentDeletion = new AtomicBoolean();
+    Mockito.doAnswer(invocation -> {
+      invocation.callRealMethod();
+      if (!concurrentDeletion.getAndSet(true)) {
+        transactionService.getRetryingTransactionHelper().doInTransaction(() -> {
+          nodeService.deleteNode(otherNode.getNodeRef().get());
+          return null;
+        }, false, true);
+      }
+      return null;
+    }).when(filerFolderService).lockFolders(Mockito.argThat(folders -> folders.contains(month)));
+
+    repositoryNodeHelper.deleteNode(node);
+
+    // Year is locked on its own to check whether it was emptied, and deleted
+    assertThat(Arrays.asList(month, otherMonth, year)).noneMatch(nodeService::exists);
+    Mockito.verify(filerFolderService, Mockito.atLeastOnce()).lockFolder(year);
+  }
+
+  @Test
+  public void purgeRetainedSegment() {
+    RepositoryNode node = buildNode(randomUUID().toString(), LocalDateTime.of(2004, 8, 12, 0, 0, 0));
+    repositoryNodeHelper.createNode(node);
+
+    NodeRef month = node.getParent().get();
+    NodeRef year = nodeService.getPrimaryParent(month).getParentRef();
+    NodeRef retained = createRetainedSegment(year, ContentModel.ASSOC_CONTAINS);
+
+    purgeSegments();
+
+    assertThat(nodeService.exists(retained)).isFalse();
+    assertThat(Arrays.asList(month, year)).allMatch(nodeService::exists);
+  }
+
+  @Test
+  public void purgeRetainedSegmentOutsideSite() {
+    NodeRef root = nodeService.getRootNode(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+    NodeRef retained = createRetainedSegment(root, ContentModel.ASSOC_CHILDREN);
+
+    purgeSegments();
+
+    assertThat(nodeService.exists(retained)).isFalse();
+  }
+
+  /**
+   * Create an empty segment kept since long ago
+   */
+  private NodeRef createRetainedSegment(final NodeRef parent, final QName assocType) {
+    AtomicReference<NodeRef> result = new AtomicReference<>();
+    transactionHelper.runAsSystem(() -> {
+      String name = randomUUID().toString();
+      Map<QName, Serializable> properties = new HashMap<>();
+      properties.put(ContentModel.PROP_NAME, name);
+      properties.put(filerModelService.getSegmentEmptiedProperty(), new Date(0));
+      result.set(nodeService.createNode(parent, assocType, QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name),
+          ContentModel.TYPE_FOLDER, properties).getChildRef());
+      nodeService.addAspect(result.get(), filerModelService.getSegmentAspect(), null);
+    });
+    return result.get();
+  }
+
+  /**
+   * Purge in batches, as done by the purge job, until the repository does not contain any segment to purge anymore
+   */
+  private void purgeSegments() {
+    AtomicInteger purged = new AtomicInteger();
+    do {
+      transactionHelper.run(() -> purged.set(filerOperationService.purgeSegments(PURGE_BATCH_SIZE)));
+    } while (purged.get() == PURGE_BATCH_SIZE);
+  }
+}
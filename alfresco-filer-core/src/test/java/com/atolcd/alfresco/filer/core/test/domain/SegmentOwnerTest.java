@@ -0,0 +1,64 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.domain.util.DepartmentNodeUtils.buildDepartmentDocument;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+
+/**
+ * Segments are owned by the filer owner from their creation, filing other nodes in them does not write their owner again.
+ */
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_CONTRIBUTOR)
+public class SegmentOwnerTest {
+
+  @Autowired
+  private FilerModelService filerModelService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+
+  @Test
+  public void ownerSetAtCreation() {
+    String departmentName = randomUUID().toString();
+    RepositoryNode node = buildNode(departmentName);
+    repositoryNodeHelper.createNode(node);
+
+    NodeRef month = node.getParent().get();
+    NodeRef year = nodeService.getPrimaryParent(month).getParentRef();
+    assertThat(nodeService.getProperty(month, ContentModel.PROP_OWNER)).isEqualTo(filerModelService.getOwnerUsername());
+    assertThat(nodeService.getProperty(year, ContentModel.PROP_OWNER)).isEqualTo(filerModelService.getOwnerUsername());
+    Object modified = nodeService.getProperty(month, ContentModel.PROP_MODIFIED);
+
+    RepositoryNode otherNode = buildNode(departmentName);
+    repositoryNodeHelper.createNode(otherNode);
+    repositoryNodeHelper.updateNode(otherNode, Collections.singletonMap(ContentModel.PROP_TITLE, randomUUID().toString()));
+
+    assertThat(otherNode.getParent()).contains(month);
+    assertThat(nodeService.getProperty(month, ContentModel.PROP_MODIFIED)).isEqualTo(modified);
+  }
+
+  private static RepositoryNode buildNode(final String departmentName) {
+    return buildDepartmentDocument(departmentName, LocalDateTime.of(2004, 8, 12, 0, 0, 0)).build();
+  }
+}
@@ -0,0 +1,96 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static com.atolcd.alfresco.filer.core.util.FilerNodeUtils.getPath;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+import java.util.Collections;
+
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.site.SiteService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerServiceImpl;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+
+/**
+ * Folders of nodes entering a subscriber are looked up as soon as they are resolved as fileable. Failing to do so never
+ * fails the operation, the node is filed anyway when the transaction commits.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class SpeculativeResolutionTest {
+
+  @Autowired
+  private FilerServiceImpl filerService;
+  @Autowired
+  private FilerOperationService filerOperationService;
+  @Autowired
+  private FilerStatisticsService filerStatisticsService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+
+  @BeforeEach
+  public void enableSpeculativeResolution() {
+    filerService.setSpeculativeResolution(true);
+  }
+
+  @AfterEach
+  public void disableSpeculativeResolution() {
+    filerService.setSpeculativeResolution(false);
+  }
+
+  @Test
+  public void prefetchFolders() {
+    RepositoryNode node = createDepartmentFolder();
+
+    Mockito.verify(filerOperationService).prefetchFolders(any(), eq(Collections.singletonList(SiteService.DOCUMENT_LIBRARY)));
+    Mockito.verify(filerStatisticsService).increment(FilerServiceImpl.SPECULATION);
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerServiceImpl.SPECULATION_FAILURE);
+    assertThat(getPath(node)).isEqualTo(getLibrary().getPath());
+  }
+
+  @Test
+  public void ignoreFailure() {
+    Mockito.doThrow(IllegalStateException.class).when(filerOperationService).prefetchFolders(any(), any());
+
+    RepositoryNode node = createDepartmentFolder();
+
+    Mockito.verify(filerStatisticsService).increment(FilerServiceImpl.SPECULATION_FAILURE);
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerServiceImpl.SPECULATION);
+    assertThat(getPath(node)).isEqualTo(getLibrary().getPath());
+  }
+
+  private RepositoryNode createDepartmentFolder() {
+    String departmentName = randomUUID().toString();
+    RepositoryNode node = getLibrary().childNode()
+        .type(FilerTestConstants.Department.FolderType.NAME)
+        .property(FilerTestConstants.Department.Aspect.PROP_NAME, departmentName)
+        .build();
+
+    repositoryNodeHelper.createNode(node);
+
+    assertThat(node.getProperty(FilerTestConstants.Department.Aspect.PROP_NAME, String.class)).contains(departmentName);
+    return node;
+  }
+}
@@ -0,0 +1,106 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerUpdateServiceImpl;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.test.framework.AutowiredMockAwareMockitoExtension;
+import com.atolcd.alfresco.filer.core.test.framework.RepositoryNodeHelper;
+
+/**
+ * Nodes uploaded into a subscriber are made fileable by the subscriber instead of being created as fileable. When they are
+ * filed in that same subscriber, they must not be considered as unchanged: their parent must be locked just like for a node
+ * created as fileable.
+ */
+@ExtendWith(AutowiredMockAwareMockitoExtension.class)
+public class SubscriberPlacementParallelTest extends AbstractParallelTest {
+
+  @Autowired
+  private FilerFolderService filerFolderService;
+  @Autowired
+  private FilerStatisticsService filerStatisticsService;
+  @Autowired
+  private RepositoryNodeHelper repositoryNodeHelper;
+
+  private final Set<Thread> unchangedThreads = Collections.synchronizedSet(new HashSet<>());
+
+  @BeforeEach
+  public void setUpSpiedDependencies() {
+    // Statistics are shared with concurrent test classes, only keep track of unchanged updates made by the threads of this test
+    Mockito.lenient().doAnswer(invocation -> {
+      unchangedThreads.add(Thread.currentThread());
+      return invocation.callRealMethod();
+    }).when(filerStatisticsService).increment(FilerUpdateServiceImpl.UPDATE_UNCHANGED);
+  }
+
+  @Test
+  public void uploadMultipleNodes() throws InterruptedException {
+    String departmentName = randomUUID().toString();
+    RepositoryNode departmentFolder = getLibrary().childNode()
+        .type(FilerTestConstants.Department.FolderType.NAME)
+        .property(FilerTestConstants.Department.Aspect.PROP_NAME, departmentName)
+        .build();
+    repositoryNodeHelper.createNode(departmentFolder);
+    NodeRef departmentFolderRef = departmentFolder.getNodeRef().get();
+
+    CyclicBarrier startingBarrier = new CyclicBarrier(NUM_THREAD_TO_LAUNCH);
+    CountDownLatch endingLatch = new CountDownLatch(NUM_THREAD_TO_LAUNCH);
+    List<RepositoryNode> results = Collections.synchronizedList(new ArrayList<>());
+    Set<Thread> uploadThreads = Collections.synchronizedSet(new HashSet<>());
+
+    for (int i = 0; i < NUM_THREAD_TO_LAUNCH; i++) {
+      execute(endingLatch, () -> {
+        RepositoryNode node = RepositoryNode.builder()
+            .parent(departmentFolderRef)
+            .type(ContentModel.TYPE_CONTENT)
+            .named(randomUUID())
+            .aspect(FilerTestConstants.Department.Aspect.NAME)
+            .property(FilerTestConstants.Department.Aspect.PROP_NAME, departmentName)
+            .build();
+        uploadThreads.add(Thread.currentThread());
+
+        // Wait for every thread to be ready to launch parallel createNode
+        startingBarrier.await(10, TimeUnit.SECONDS);
+
+        repositoryNodeHelper.createNode(node);
+        results.add(node);
+        return null;
+      });
+    }
+
+    // Wait for every thread to finish job before asserting results
+    endingLatch.await();
+
+    // Assert all threads were ready for parallel createNode
+    assertThat(startingBarrier.isBroken()).isFalse();
+
+    assertThat(results).hasSize(NUM_THREAD_TO_LAUNCH)
+        .allMatch(node -> node.getParent().get().equals(departmentFolderRef));
+
+    assertThat(unchangedThreads).doesNotContainAnyElementsOf(uploadThreads);
+    Mockito.verify(filerFolderService, Mockito.times(NUM_THREAD_TO_LAUNCH))
+        .lockFolders(Mockito.argThat(folders -> folders.contains(departmentFolderRef)));
+  }
+}
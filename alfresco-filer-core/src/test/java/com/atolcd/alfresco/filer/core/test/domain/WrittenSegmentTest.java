@@ -0,0 +1,127 @@
+package com.atolcd.alfresco.filer.core.test.domain;
+
+import static com.atolcd.alfresco.filer.core.test.framework.LibraryExtension.getLibrary;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.site.SiteModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.atolcd.alfresco.filer.core.model.PropertyInheritancePayload;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.service.PropertyInheritanceService;
+import com.atolcd.alfresco.filer.core.test.framework.TestApplicationContext;
+import com.atolcd.alfresco.filer.core.test.framework.TestAuthentication;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibrary;
+import com.atolcd.alfresco.filer.core.test.framework.TestLibraryRole;
+import com.atolcd.alfresco.filer.core.test.framework.TransactionHelper;
+import com.atolcd.alfresco.filer.core.util.FilerTransactionUtils;
+
+/**
+ * Segments written by a transaction, whatever the way they are written, are known to it: it holds their row lock until it
+ * ends, so no folder can be eagerly created in them by a separate transaction.
+ */
+@TestApplicationContext
+@TestLibrary
+@TestAuthentication
+@TestLibraryRole(SiteModel.SITE_MANAGER)
+public class WrittenSegmentTest {
+
+  @Autowired
+  private FilerOperationService filerOperationService;
+  @Autowired
+  private PropertyInheritanceService propertyInheritanceService;
+  @Autowired
+  private NodeService nodeService;
+  @Autowired
+  private TransactionHelper transactionHelper;
+
+  @Test
+  public void trackWrittenSegments() {
+    NodeRef templated = createSegment();
+    NodeRef updated = createSegment();
+    NodeRef untouched = createSegment();
+
+    transactionHelper.runAsSystem(() -> {
+      assertThat(FilerTransactionUtils.isWrittenFolder(templated)).isFalse();
+
+      filerOperationService.setTemplate(templated, template -> template.getProperties()
+          .put(ContentModel.PROP_TITLE, randomUUID().toString()));
+      nodeService.setProperty(updated, ContentModel.PROP_DESCRIPTION, randomUUID().toString());
+
+      assertThat(FilerTransactionUtils.isWrittenFolder(templated)).isTrue();
+      assertThat(FilerTransactionUtils.isWrittenFolder(updated)).isTrue();
+      assertThat(FilerTransactionUtils.isWrittenFolder(untouched)).isFalse();
+    });
+  }
+
+  @Test
+  public void trackCreatedSegments() {
+    transactionHelper.runAsSystem(() -> {
+      NodeRef segment = createFolder();
+      filerOperationService.setSegment(segment);
+
+      assertThat(FilerTransactionUtils.isWrittenFolder(segment)).isTrue();
+    });
+  }
+
+  @Test
+  public void lockOnlyWrittenInheritedSegments() {
+    AtomicReference<NodeRef> root = new AtomicReference<>();
+    transactionHelper.runAsSystem(() -> root.set(createFolder(getLibrary().getNodeRef())));
+    NodeRef upToDate = createSegment(root.get());
+    NodeRef outdated = createSegment(root.get());
+
+    String title = randomUUID().toString();
+    Map<QName, Serializable> properties = Collections.singletonMap(ContentModel.PROP_TITLE, title);
+    transactionHelper.runAsSystem(() -> nodeService.addAspect(upToDate, ContentModel.ASPECT_TITLED, properties));
+    PropertyInheritancePayload payload = new PropertyInheritancePayload(
+        Collections.singletonMap(ContentModel.ASPECT_TITLED, properties), Collections.emptyMap());
+
+    transactionHelper.runAsSystem(() -> {
+      propertyInheritanceService.setInheritance(root.get(), payload);
+
+      // Segment already up to date is not written, so its row is not locked
+      assertThat(FilerTransactionUtils.isWrittenFolder(upToDate)).isFalse();
+      assertThat(FilerTransactionUtils.isLockedFolder(upToDate)).isFalse();
+      assertThat(FilerTransactionUtils.isWrittenFolder(outdated)).isTrue();
+      assertThat(FilerTransactionUtils.isLockedFolder(outdated)).isTrue();
+    });
+  }
+
+  private NodeRef createSegment() {
+    return createSegment(getLibrary().getNodeRef());
+  }
+
+  private NodeRef createSegment(final NodeRef parent) {
+    AtomicReference<NodeRef> result = new AtomicReference<>();
+    transactionHelper.runAsSystem(() -> {
+      result.set(createFolder(parent));
+      filerOperationService.setSegment(result.get());
+    });
+    return result.get();
+  }
+
+  private NodeRef createFolder() {
+    return createFolder(getLibrary().getNodeRef());
+  }
+
+  private NodeRef createFolder(final NodeRef parent) {
+    String name = randomUUID().toString();
+    NodeRef result = nodeService.createNode(parent, ContentModel.ASSOC_CONTAINS,
+        QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name), ContentModel.TYPE_FOLDER).getChildRef();
+    nodeService.setProperty(result, ContentModel.PROP_NAME, name);
+    return result;
+  }
+}
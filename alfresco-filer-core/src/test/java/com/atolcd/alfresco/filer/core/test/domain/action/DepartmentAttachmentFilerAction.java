@@ -0,0 +1,31 @@
+package com.atolcd.alfresco.filer.core.test.domain.action;
+
+import org.alfresco.model.ContentModel;
+
+import com.atolcd.alfresco.filer.core.model.FilerEvent;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.impl.FilerBuilder;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+
+/**
+ * Plain content uploaded into a department folder stays there: it is only made fileable by the subscriber
+ */
+public class DepartmentAttachmentFilerAction extends AbstractFilerTestAction {
+
+  @Override
+  public boolean supportsActionResolution(final FilerEvent event) {
+    return event.getNode().getAspects().contains(FilerTestConstants.Department.Aspect.NAME)
+        && event.getNode().getType().get().equals(ContentModel.TYPE_CONTENT);
+  }
+
+  @Override
+  public boolean supportsActionExecution(final RepositoryNode node) {
+    return true;
+  }
+
+  @Override
+  protected void execute(final FilerBuilder builder) {
+    builder.with(actions()::departmentFolder).getOrCreate()
+        .updateAndMove();
+  }
+}
@@ -1,5 +1,10 @@
 package com.atolcd.alfresco.filer.core.test.domain.action;
 
+import java.util.Collections;
+import java.util.Set;
+
+import org.alfresco.service.namespace.QName;
+
 import com.atolcd.alfresco.filer.core.model.FilerEvent;
 import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.service.impl.FilerBuilder;
@@ -17,6 +22,16 @@ public class DepartmentFolderFilerAction extends AbstractFilerTestAction {
     return true;
   }
 
+  @Override
+  public Set<QName> getInputProperties() {
+    return Collections.singleton(FilerTestConstants.Department.Aspect.PROP_NAME);
+  }
+
+  @Override
+  protected boolean isRecorded() {
+    return true;
+  }
+
   @Override
   protected void execute(final FilerBuilder builder) {
     builder.with(actions()::departmentFolder).updateAndMove();
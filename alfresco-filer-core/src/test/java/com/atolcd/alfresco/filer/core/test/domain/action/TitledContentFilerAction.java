@@ -0,0 +1,46 @@
+package com.atolcd.alfresco.filer.core.test.domain.action;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.site.SiteService;
+import org.alfresco.service.namespace.QName;
+
+import com.atolcd.alfresco.filer.core.model.FilerEvent;
+import com.atolcd.alfresco.filer.core.model.FilerNameSuffix;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.impl.FilerBuilder;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.util.FilerNodeUtils;
+
+/**
+ * Special documents without department are named after their title in the document library, suffixed when it is taken
+ */
+public class TitledContentFilerAction extends AbstractFilerTestAction {
+
+  @Override
+  public boolean supportsActionResolution(final FilerEvent event) {
+    return event.getNode().getType().get().equals(FilerTestConstants.SpecialDocumentType.NAME)
+        && !event.getNode().getAspects().contains(FilerTestConstants.Department.Aspect.NAME);
+  }
+
+  @Override
+  public boolean supportsActionExecution(final RepositoryNode node) {
+    return true;
+  }
+
+  @Override
+  public Set<QName> getInputProperties() {
+    return Collections.singleton(ContentModel.PROP_TITLE);
+  }
+
+  @Override
+  protected void execute(final FilerBuilder builder) {
+    builder.root(FilerNodeUtils::getSiteNodeRef)
+        .folder()
+            .named().with(SiteService.DOCUMENT_LIBRARY).get()
+        .rename().withSuffix(FilerNameSuffix.SEQUENCE).withProperty(ContentModel.PROP_TITLE)
+        .updateAndMove();
+  }
+}
@@ -0,0 +1,23 @@
+package com.atolcd.alfresco.filer.core.test.domain.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import com.atolcd.alfresco.filer.core.model.impl.RepositoryNodeBuilder;
+import com.atolcd.alfresco.filer.core.test.domain.content.model.FilerTestConstants;
+import com.atolcd.alfresco.filer.core.test.framework.LibraryExtension;
+
+public final class DepartmentNodeUtils {
+
+  /**
+   * @return a department document of the library, filed by department name then by year and month of the date
+   */
+  public static RepositoryNodeBuilder buildDepartmentDocument(final String departmentName, final LocalDateTime date) {
+    return LibraryExtension.getLibrary().childNode()
+        .type(FilerTestConstants.Department.DocumentType.NAME)
+        .property(FilerTestConstants.Department.Aspect.PROP_NAME, departmentName)
+        .property(FilerTestConstants.ImportedAspect.PROP_DATE, date.atZone(ZoneId.systemDefault()));
+  }
+
+  private DepartmentNodeUtils() {}
+}
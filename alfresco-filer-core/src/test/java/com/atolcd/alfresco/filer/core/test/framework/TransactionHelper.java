@@ -1,5 +1,6 @@
 package com.atolcd.alfresco.filer.core.test.framework;
 
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.service.transaction.TransactionService;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -18,4 +19,11 @@ public class TransactionHelper {
       return null;
     }, readOnly);
   }
+
+  public void runAsSystem(final Runnable callback) {
+    AuthenticationUtil.runAsSystem(() -> {
+      run(callback);
+      return null;
+    });
+  }
 }
@@ -0,0 +1,57 @@
+package com.atolcd.alfresco.filer.core.test.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.Test;
+
+import com.atolcd.alfresco.filer.core.model.FilerFingerprint;
+
+public class FilerFingerprintTest {
+
+  private static final String SIGNATURE = "action:1";
+  private static final List<QName> INPUTS = Arrays.asList(ContentModel.PROP_TITLE, ContentModel.PROP_CREATED);
+
+  @Test
+  public void actionName() {
+    String fingerprint = FilerFingerprint.format("filer:action", 2, "hash");
+
+    assertThat(FilerFingerprint.getActionName(fingerprint)).isEqualTo("filer:action");
+    assertThat(FilerFingerprint.getActionName("hash")).isNull();
+    assertThat(FilerFingerprint.getActionName(null)).isNull();
+  }
+
+  @Test
+  public void hashOfInputs() {
+    Map<QName, Serializable> properties = new HashMap<>();
+    properties.put(ContentModel.PROP_TITLE, "title");
+    properties.put(ContentModel.PROP_CREATED, new Date(0));
+    String hash = hash(SIGNATURE, properties);
+
+    assertThat(FilerFingerprint.hash(SIGNATURE, ContentModel.TYPE_CONTENT,
+        Arrays.asList(ContentModel.ASPECT_AUDITABLE, ContentModel.ASPECT_TITLED), INPUTS, properties)).isEqualTo(hash);
+
+    properties.put(ContentModel.PROP_DESCRIPTION, "description");
+    assertThat(hash(SIGNATURE, properties)).isEqualTo(hash);
+
+    assertThat(hash("action:2", properties)).isNotEqualTo(hash);
+
+    properties.put(ContentModel.PROP_CREATED, new Date(1));
+    assertThat(hash(SIGNATURE, properties)).isNotEqualTo(hash);
+  }
+
+  private static String hash(final String signature, final Map<QName, Serializable> properties) {
+    return FilerFingerprint.hash(signature, ContentModel.TYPE_CONTENT,
+        Arrays.asList(ContentModel.ASPECT_TITLED, ContentModel.ASPECT_AUDITABLE), INPUTS,
+        Collections.unmodifiableMap(properties));
+  }
+}
@@ -0,0 +1,33 @@
+package com.atolcd.alfresco.filer.core.test.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import com.atolcd.alfresco.filer.core.model.FilerNameSuffix;
+
+public class FilerNameSuffixTest {
+
+  @Test
+  public void parenthesis() {
+    assertThat(FilerNameSuffix.PARENTHESIS.apply("name.pdf", 2)).isEqualTo("name (2).pdf");
+    assertThat(FilerNameSuffix.PARENTHESIS.apply("name", 2)).isEqualTo("name (2)");
+  }
+
+  @Test
+  public void sequence() {
+    assertThat(FilerNameSuffix.SEQUENCE.apply("name.pdf", 3)).isEqualTo("name-3.pdf");
+    assertThat(FilerNameSuffix.SEQUENCE.apply("name", 3)).isEqualTo("name-3");
+  }
+
+  @Test
+  public void lastExtension() {
+    assertThat(FilerNameSuffix.SEQUENCE.apply("name.tar.gz", 2)).isEqualTo("name.tar-2.gz");
+  }
+
+  @Test
+  public void dotFile() {
+    assertThat(FilerNameSuffix.SEQUENCE.apply(".name", 3)).isEqualTo(".name-3");
+    assertThat(FilerNameSuffix.PARENTHESIS.apply(".name", 2)).isEqualTo(".name (2)");
+  }
+}
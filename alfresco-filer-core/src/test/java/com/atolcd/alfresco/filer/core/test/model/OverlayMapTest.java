@@ -0,0 +1,97 @@
+package com.atolcd.alfresco.filer.core.test.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.jupiter.api.Test;
+
+import com.atolcd.alfresco.filer.core.model.impl.OverlayMap;
+
+public class OverlayMapTest {
+
+  @Test
+  public void copyIsIndependent() {
+    Map<String, String> original = new OverlayMap<>();
+    original.put("a", "1");
+    original.put("b", "2");
+
+    Map<String, String> copy = new OverlayMap<>(original);
+    copy.put("a", "3");
+    copy.remove("b");
+    copy.put("c", "4");
+    original.put("d", "5");
+
+    assertThat(original).containsExactly(entry("a", "1"), entry("b", "2"), entry("d", "5"));
+    assertThat(copy).containsExactly(entry("a", "3"), entry("c", "4"));
+    assertThat(copy).isEqualTo(mapOf("a", "3", "c", "4"));
+  }
+
+  @Test
+  public void nullValues() {
+    Map<String, String> original = new OverlayMap<>();
+    original.put("a", null);
+
+    Map<String, String> copy = new OverlayMap<>(original);
+
+    assertThat(copy.containsKey("a")).isTrue();
+    assertThat(copy.get("a")).isNull();
+    assertThat(copy.remove("a")).isNull();
+    assertThat(copy).isEmpty();
+    assertThat(original).containsOnlyKeys("a");
+  }
+
+  @Test
+  public void removeWhileIterating() {
+    Map<String, String> original = new OverlayMap<>(mapOf("a", "1", "b", "2"));
+    Map<String, String> copy = new OverlayMap<>(original);
+    copy.put("c", "3");
+
+    for (Iterator<Entry<String, String>> iterator = copy.entrySet().iterator(); iterator.hasNext();) {
+      Entry<String, String> entry = iterator.next();
+      if (!"a".equals(entry.getKey())) {
+        iterator.remove();
+      }
+    }
+
+    assertThat(copy).containsExactly(entry("a", "1"));
+    assertThat(original).containsExactly(entry("a", "1"), entry("b", "2"));
+  }
+
+  @Test
+  public void deepCopies() {
+    Map<String, String> map = new OverlayMap<>();
+    for (int i = 0; i < 10; i++) {
+      map.put("key" + i, "value" + i);
+      map = new OverlayMap<>(map);
+    }
+    map.remove("key0");
+
+    assertThat(map).hasSize(9).doesNotContainKey("key0").containsEntry("key9", "value9");
+  }
+
+  @Test
+  public void changedKeys() {
+    Map<String, String> original = new OverlayMap<>(mapOf("a", "1", "b", "2", "c", "3"));
+    Map<String, String> copy = new OverlayMap<>(original);
+    copy.put("a", "4");
+    copy.remove("b");
+    original.put("d", "5");
+
+    assertThat(OverlayMap.getChangedKeys(original, copy)).containsExactlyInAnyOrder("a", "b", "d");
+    assertThat(OverlayMap.getChangedKeys(original, new OverlayMap<>(mapOf("a", "1")))).isNull();
+    assertThat(OverlayMap.getChangedKeys(original, mapOf("a", "1"))).isNull();
+  }
+
+  private static Map<String, String> mapOf(final String... keyValues) {
+    Map<String, String> map = new LinkedHashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      map.put(keyValues[i], keyValues[i + 1]);
+    }
+    return map;
+  }
+}
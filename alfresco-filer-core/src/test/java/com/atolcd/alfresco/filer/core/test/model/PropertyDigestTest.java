@@ -0,0 +1,77 @@
+package com.atolcd.alfresco.filer.core.test.model;
+
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.jupiter.api.Test;
+
+import com.atolcd.alfresco.filer.core.model.PropertyDigest;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.model.RepositoryNodeDifference;
+
+public class PropertyDigestTest {
+
+  private static final int THRESHOLD = 8;
+
+  @Test
+  public void keepShortValues() {
+    assertThat(PropertyDigest.compact("short", THRESHOLD)).isEqualTo("short");
+    assertThat(PropertyDigest.compact(42, THRESHOLD)).isEqualTo(42);
+    assertThat(PropertyDigest.compact(null, THRESHOLD)).isNull();
+  }
+
+  @Test
+  public void matchCompactedValue() {
+    Serializable digest = PropertyDigest.compact("a long description", THRESHOLD);
+
+    assertThat(digest).isInstanceOf(PropertyDigest.class).isEqualTo(PropertyDigest.compact("a long description", THRESHOLD));
+    assertThat(((PropertyDigest) digest).matches("a long description")).isTrue();
+    // Same length, other text
+    assertThat(((PropertyDigest) digest).matches("a long descriptioN")).isFalse();
+    assertThat(((PropertyDigest) digest).matches("a longer description")).isFalse();
+    assertThat(((PropertyDigest) digest).matches(null)).isFalse();
+  }
+
+  @Test
+  public void matchMultilingualValue() {
+    MLText value = new MLText();
+    value.addValue(Locale.FRENCH, "une longue description");
+    value.addValue(Locale.ENGLISH, "a long description");
+    MLText reordered = new MLText();
+    reordered.addValue(Locale.ENGLISH, "a long description");
+    reordered.addValue(Locale.FRENCH, "une longue description");
+    MLText translated = new MLText();
+    translated.addValue(Locale.ENGLISH, "une longue description");
+    translated.addValue(Locale.FRENCH, "a long description");
+
+    PropertyDigest digest = (PropertyDigest) PropertyDigest.compact(value, THRESHOLD);
+
+    assertThat(digest.matches(reordered)).isTrue();
+    assertThat(digest.matches(translated)).isFalse();
+  }
+
+  @Test
+  public void compareDigestToActualValue() {
+    NodeRef nodeRef = randomNodeRef();
+    RepositoryNode snapshot = RepositoryNode.builder().nodeRef(nodeRef)
+        .property(ContentModel.PROP_DESCRIPTION, PropertyDigest.compact("a long description", THRESHOLD))
+        .build();
+    RepositoryNode unchanged = RepositoryNode.builder().nodeRef(nodeRef)
+        .property(ContentModel.PROP_DESCRIPTION, "a long description")
+        .build();
+    RepositoryNode changed = RepositoryNode.builder().nodeRef(nodeRef)
+        .property(ContentModel.PROP_DESCRIPTION, "another long description")
+        .build();
+
+    assertThat(new RepositoryNodeDifference(snapshot, unchanged).isEmpty()).isTrue();
+    assertThat(new RepositoryNodeDifference(snapshot, changed).isEmpty()).isFalse();
+    assertThat(new RepositoryNodeDifference(snapshot, changed).getPropertiesToAdd())
+        .containsEntry(ContentModel.PROP_DESCRIPTION, "another long description");
+  }
+}
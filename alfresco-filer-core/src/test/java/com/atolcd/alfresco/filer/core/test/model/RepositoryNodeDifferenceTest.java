@@ -0,0 +1,113 @@
+package com.atolcd.alfresco.filer.core.test.model;
+
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.jupiter.api.Test;
+
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.model.RepositoryNodeDifference;
+
+public class RepositoryNodeDifferenceTest {
+
+  private final NodeRef nodeRef = randomNodeRef();
+  private final NodeRef parent = randomNodeRef();
+
+  @Test
+  public void emptyForSameNodes() {
+    RepositoryNode node = buildNode();
+
+    assertThat(new RepositoryNodeDifference(node, buildNode()).isEmpty()).isTrue();
+    assertThat(new RepositoryNodeDifference(node, new RepositoryNode(node)).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void notEmptyForAnyChange() {
+    assertChanged(node -> node.setParent(randomNodeRef()));
+    assertChanged(node -> node.setType(ContentModel.TYPE_FOLDER));
+    assertChanged(node -> node.getAspects().add(ContentModel.ASPECT_AUDITABLE));
+    assertChanged(node -> node.getAspects().remove(ContentModel.ASPECT_TITLED));
+    assertChanged(node -> node.getProperties().put(ContentModel.PROP_DESCRIPTION, "description"));
+    assertChanged(node -> node.getProperties().put(ContentModel.PROP_TITLE, "other"));
+    assertChanged(node -> node.getProperties().put(ContentModel.PROP_TITLE, null));
+    assertChanged(node -> node.getProperties().remove(ContentModel.PROP_TITLE));
+  }
+
+  @Test
+  public void stopAtFirstChangedProperty() {
+    AtomicInteger comparisons = new AtomicInteger();
+    RepositoryNode source = buildNode();
+    source.getProperties().put(ContentModel.PROP_DESCRIPTION, new CountingValue("before", comparisons));
+    source.getProperties().put(ContentModel.PROP_AUTHOR, new CountingValue("before", comparisons));
+
+    // Nodes not sharing any layer
+    RepositoryNode target = buildNode();
+    target.getProperties().put(ContentModel.PROP_DESCRIPTION, new CountingValue("after", comparisons));
+    target.getProperties().put(ContentModel.PROP_AUTHOR, new CountingValue("after", comparisons));
+
+    assertThat(new RepositoryNodeDifference(source, target).isEmpty()).isFalse();
+    assertThat(comparisons.getAndSet(0)).isEqualTo(1);
+
+    // Copies of a same node
+    RepositoryNode copy = new RepositoryNode(source);
+    copy.getProperties().put(ContentModel.PROP_DESCRIPTION, new CountingValue("after", comparisons));
+    copy.getProperties().put(ContentModel.PROP_AUTHOR, new CountingValue("after", comparisons));
+
+    assertThat(new RepositoryNodeDifference(source, copy).isEmpty()).isFalse();
+    assertThat(comparisons.getAndSet(0)).isEqualTo(1);
+
+    // Counting still walks every change
+    assertThat(new RepositoryNodeDifference(source, copy).countChangedProperties(property -> true)).isEqualTo(2);
+  }
+
+  private void assertChanged(final Consumer<RepositoryNode> change) {
+    RepositoryNode source = buildNode();
+    RepositoryNode target = buildNode();
+    change.accept(target);
+    RepositoryNode copy = new RepositoryNode(source);
+    change.accept(copy);
+
+    assertThat(new RepositoryNodeDifference(source, target).isEmpty()).isFalse();
+    assertThat(new RepositoryNodeDifference(source, copy).isEmpty()).isFalse();
+  }
+
+  private RepositoryNode buildNode() {
+    return RepositoryNode.builder()
+        .nodeRef(nodeRef)
+        .parent(parent)
+        .type(ContentModel.TYPE_CONTENT)
+        .aspect(ContentModel.ASPECT_TITLED)
+        .property(ContentModel.PROP_TITLE, "title")
+        .build();
+  }
+
+  private static final class CountingValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String value;
+    private final transient AtomicInteger comparisons;
+
+    CountingValue(final String value, final AtomicInteger comparisons) {
+      this.value = value;
+      this.comparisons = comparisons;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+      comparisons.incrementAndGet();
+      return object instanceof CountingValue && value.equals(((CountingValue) object).value);
+    }
+
+    @Override
+    public int hashCode() {
+      return value.hashCode();
+    }
+  }
+}
@@ -44,18 +44,18 @@ public class AbstractFilerBuilderTest {
   }
 
   protected void stubCreateFolder() {
-    Mockito.when(filerOperationService.getOrCreateFolder(nodeRefCaptor.capture(), any(), any(), any(), any()))
+    Mockito.when(filerOperationService.getOrCreateFolder(nodeRefCaptor.capture(), any(), any(), any(), any(), any()))
         .thenReturn(randomNodeRef());
   }
 
   protected void verifyCreateFolder(final VerificationMode times, final String folderName) {
     Mockito.verify(filerOperationService, times).getOrCreateFolder(any(), eq(ContentModel.TYPE_FOLDER), eq(folderName), any(),
-        any());
+        any(), any());
   }
 
   protected void verifyCreateFolder(final VerificationMode times, final String folderName, final NodeRef parent) {
     Mockito.verify(filerOperationService, times).getOrCreateFolder(eq(parent), eq(ContentModel.TYPE_FOLDER), eq(folderName),
-        any(), any());
+        any(), any(), any());
   }
 
   protected static FilerFolderBuilder buildDocumentLibrary(final FilerFolderBuilder filerFolderBuilder) {
@@ -119,20 +119,20 @@ public class FilerBuilderTest extends AbstractFilerBuilderTest {
             .optionalPropertyInheritance(aspectOptional)
             .named().with(name).getOrCreate();
 
-    ArgumentCaptor<Consumer<NodeRef>> captor = buildNodeRefConsumerCaptor();
+    ArgumentCaptor<Consumer<RepositoryNode>> captor = buildRepositoryNodeConsumerCaptor();
     Mockito.verify(getFilerOperationService()).getOrCreateFolder(eq(getCaptedParentNodeRefValue()), eq(ContentModel.TYPE_FOLDER),
-        eq(name), any(), captor.capture());
+        eq(name), captor.capture(), any(), any());
 
-    captor.getValue().accept(randomNodeRef());
+    captor.getValue().accept(new RepositoryNode());
 
     PropertyInheritance expectedPropertyInheritance = new PropertyInheritance();
     expectedPropertyInheritance.getMandatoryAspects().add(aspectMandatory);
     expectedPropertyInheritance.getOptionalAspects().add(aspectOptional);
-    Mockito.verify(propertyInheritanceService).setProperties(any(), any(), refEq(expectedPropertyInheritance));
+    Mockito.verify(propertyInheritanceService).getProperties(any(), refEq(expectedPropertyInheritance));
   }
 
   @SuppressWarnings("unchecked")
-  private static ArgumentCaptor<Consumer<NodeRef>> buildNodeRefConsumerCaptor() {
+  private static ArgumentCaptor<Consumer<RepositoryNode>> buildRepositoryNodeConsumerCaptor() {
     return ArgumentCaptor.forClass(Consumer.class);
   }
 }
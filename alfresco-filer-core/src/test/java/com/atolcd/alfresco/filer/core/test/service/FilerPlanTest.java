@@ -0,0 +1,302 @@
+package com.atolcd.alfresco.filer.core.test.service;
+
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.refEq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.site.SiteService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+
+import com.atolcd.alfresco.filer.core.model.PropertyInheritance;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.PropertyInheritanceService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerBuilder;
+import com.atolcd.alfresco.filer.core.service.impl.FilerPlan;
+
+public class FilerPlanTest extends AbstractFilerBuilderTest {
+
+  @Mock
+  private PropertyInheritanceService propertyInheritanceService;
+
+  @Test
+  public void nodeInDocumentLibrary() {
+    NodeRef documentLibraryNode = randomNodeRef();
+    Mockito.when(getFilerOperationService().getFolder(any(), any(), any())).thenReturn(documentLibraryNode);
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(randomNodeRef())
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .updateAndMove();
+    FilerPlan plan = builder.getPlan();
+
+    for (int i = 0; i < 2; i++) {
+      RepositoryNode node = RepositoryNode.builder()
+          .named(randomUUID())
+          .build();
+
+      plan.execute(node);
+
+      Mockito.verify(getFilerOperationService()).updateFileable(node, documentLibraryNode, node.getName().get());
+    }
+  }
+
+  @Test
+  public void resolvedDestination() {
+    NodeRef rootNodeRef = randomNodeRef();
+    NodeRef documentLibraryNode = randomNodeRef();
+    Mockito.when(getFilerOperationService().getFolder(any(), any(), any())).thenReturn(documentLibraryNode);
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(rootNodeRef)
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .updateAndMove();
+    FilerPlan plan = builder.getPlan();
+
+    RepositoryNode node = RepositoryNode.builder().named(randomUUID()).build();
+    plan.execute(node);
+
+    List<Pair<QName, String>> path =
+        Collections.singletonList(new Pair<>(ContentModel.TYPE_FOLDER, SiteService.DOCUMENT_LIBRARY));
+    Mockito.verify(getFilerOperationService()).putResolvedFolder(rootNodeRef, path,
+        Collections.singletonList(documentLibraryNode));
+
+    NodeRef destination = randomNodeRef();
+    Mockito.when(getFilerOperationService().getResolvedFolder(rootNodeRef, path)).thenReturn(Optional.of(destination));
+
+    RepositoryNode otherNode = RepositoryNode.builder().named(randomUUID()).build();
+    plan.execute(otherNode);
+
+    // Destination is reused without getting folders again
+    Mockito.verify(getFilerOperationService(), times(1)).getFolder(any(), any(), any());
+    Mockito.verify(getFilerOperationService()).updateFileable(otherNode, destination, otherNode.getName().get());
+  }
+
+  @Test
+  public void unchangedAncestors() {
+    stubCreateFolder();
+    NodeRef rootNodeRef = randomNodeRef();
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(rootNodeRef)
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .folder().asSegment().named().withProperty(ContentModel.PROP_TITLE).getOrCreate()
+        .folder().asSegment().named().withProperty(ContentModel.PROP_DESCRIPTION).getOrCreate()
+        .updateAndMove();
+    FilerPlan plan = builder.getPlan();
+
+    // Node which is not filed yet is resolved from the root
+    plan.execute(RepositoryNode.builder()
+        .named(randomUUID())
+        .property(ContentModel.PROP_TITLE, TEST_PROP_TITLE_A)
+        .property(ContentModel.PROP_DESCRIPTION, randomUUID())
+        .build());
+
+    NodeRef parent = randomNodeRef();
+    NodeRef titleNode = randomNodeRef();
+    String description = randomUUID().toString();
+    RepositoryNode node = RepositoryNode.builder()
+        .nodeRef(randomNodeRef())
+        .parent(parent)
+        .named(randomUUID())
+        .property(ContentModel.PROP_TITLE, TEST_PROP_TITLE_A)
+        .property(ContentModel.PROP_DESCRIPTION, description)
+        .build();
+    Mockito.when(getFilerOperationService().getUpdatedProperties(node))
+        .thenReturn(Collections.singleton(ContentModel.PROP_DESCRIPTION));
+    Mockito.when(getFilerOperationService().getAncestorFolders(rootNodeRef, parent, 3,
+        Arrays.asList(SiteService.DOCUMENT_LIBRARY, TEST_PROP_TITLE_A))).thenReturn(Arrays.asList(randomNodeRef(), titleNode));
+
+    plan.execute(node);
+
+    // Only the level named from the updated property is resolved again
+    Mockito.verify(getFilerOperationService(), times(1)).getFolder(any(), any(), any());
+    verifyCreateFolder(times(1), TEST_PROP_TITLE_A);
+    verifyCreateFolder(times(1), description, titleNode);
+  }
+
+  @Test
+  public void placedNodeIgnoresAncestors() {
+    stubCreateFolder();
+    NodeRef documentLibraryNode = randomNodeRef();
+    Mockito.when(getFilerOperationService().getFolder(any(), any(), any())).thenReturn(documentLibraryNode);
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(randomNodeRef())
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .folder().asSegment().named().withProperty(ContentModel.PROP_TITLE).getOrCreate()
+        .updateAndMove();
+    FilerPlan plan = builder.getPlan();
+
+    RepositoryNode node = RepositoryNode.builder()
+        .nodeRef(randomNodeRef())
+        .parent(randomNodeRef())
+        .named(randomUUID())
+        .property(ContentModel.PROP_TITLE, TEST_PROP_TITLE_A)
+        .build();
+    Mockito.when(getFilerOperationService().isPlacedNode(node.getNodeRef().get())).thenReturn(true);
+
+    plan.execute(node);
+
+    // Node is not in a filed folder yet, so it is resolved from the root
+    Mockito.verify(getFilerOperationService(), never()).getUpdatedProperties(any());
+    Mockito.verify(getFilerOperationService(), never()).getAncestorFolders(any(), any(), anyInt(), any());
+    verifyCreateFolder(times(1), TEST_PROP_TITLE_A, documentLibraryNode);
+  }
+
+  @Test
+  public void contextualNameIsNotReused() {
+    stubCreateFolder();
+    NodeRef documentLibraryNode = randomNodeRef();
+    Mockito.when(getFilerOperationService().getFolder(any(), any(), any())).thenReturn(documentLibraryNode);
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(randomNodeRef())
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .folder().asSegment().named().withContext(context -> context.getParent().getId()).getOrCreate()
+        .updateAndMove();
+    FilerPlan plan = builder.getPlan();
+
+    plan.execute(RepositoryNode.builder().named(randomUUID()).build());
+
+    // Name depends on the parent folder, so the destination is resolved level by level
+    Mockito.verify(getFilerOperationService(), never()).getResolvedFolder(any(), any());
+    verifyCreateFolder(times(1), documentLibraryNode.getId(), documentLibraryNode);
+  }
+
+  @Test
+  public void prefetch() {
+    stubCreateFolder();
+    NodeRef rootNodeRef = randomNodeRef();
+    String name = randomUUID().toString();
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(rootNodeRef)
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .folder().asSegment().named().withProperty(ContentModel.PROP_TITLE).getOrCreate()
+        .folder().asSegment().named().with(node -> name).getOrCreate();
+    FilerPlan plan = builder.getPlan();
+
+    RepositoryNode node = RepositoryNode.builder().property(ContentModel.PROP_TITLE, TEST_PROP_TITLE_A).build();
+    plan.prefetch(node);
+
+    // Name computed by a function is only known when the plan is executed
+    Mockito.verify(getFilerOperationService()).prefetchFolders(rootNodeRef,
+        Arrays.asList(SiteService.DOCUMENT_LIBRARY, TEST_PROP_TITLE_A));
+
+    plan.execute(node);
+
+    verifyCreateFolder(times(1), name);
+  }
+
+  @Test
+  public void conditions() {
+    stubCreateFolder();
+
+    String firstFolderName = randomUUID().toString();
+    String secondFolderName = randomUUID().toString();
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(randomNodeRef())
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .condition(x -> x.getProperty(ContentModel.PROP_TITLE, String.class).get().equals(TEST_PROP_TITLE_A))
+            .folder().asSegment().named().with(firstFolderName).getOrCreate()
+        .conditionReverse()
+            .folder().asSegment().named().with(secondFolderName).getOrCreate()
+        .conditionEnd();
+    FilerPlan plan = builder.getPlan();
+
+    plan.execute(RepositoryNode.builder().property(ContentModel.PROP_TITLE, TEST_PROP_TITLE_A).build());
+
+    verifyCreateFolder(times(1), firstFolderName);
+    verifyCreateFolder(never(), secondFolderName);
+
+    plan.execute(RepositoryNode.builder().property(ContentModel.PROP_TITLE, TEST_PROP_TITLE_B).build());
+
+    verifyCreateFolder(times(1), firstFolderName);
+    verifyCreateFolder(times(1), secondFolderName);
+  }
+
+  @Test
+  public void folderWithNameBasedOnNodeProperty() {
+    stubCreateFolder();
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(randomNodeRef())
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .folder().asSegment()
+            .named().withProperty(ContentModel.PROP_TITLE).getOrCreate();
+    FilerPlan plan = builder.getPlan();
+
+    String title = randomUUID().toString();
+    plan.execute(RepositoryNode.builder().property(ContentModel.PROP_TITLE, title).build());
+
+    verifyCreateFolder(times(1), title, getCaptedParentNodeRefValue());
+    assertThat(plan.getNameProperties()).containsExactly(ContentModel.PROP_TITLE);
+  }
+
+  @Test
+  public void propertyInheritence() {
+    stubCreateFolder();
+
+    Mockito.when(getFilerService().propertyInheritance()).thenReturn(propertyInheritanceService);
+
+    String name = randomUUID().toString();
+    QName aspectMandatory = ContentModel.ASPECT_TAGGABLE;
+    QName aspectOptional = ContentModel.ASPECT_INCOMPLETE;
+
+    FilerBuilder builder = FilerBuilder.record(getFilerService());
+    builder
+        .root(randomNodeRef())
+        .tree(FilerPlanTest::buildDocumentLibrary)
+        .folder().asSegment()
+            .mandatoryPropertyInheritance(aspectMandatory)
+            .optionalPropertyInheritance(aspectOptional)
+            .named().with(name).getOrCreate();
+    FilerPlan plan = builder.getPlan();
+
+    plan.execute(new RepositoryNode());
+
+    ArgumentCaptor<Consumer<RepositoryNode>> captor = buildRepositoryNodeConsumerCaptor();
+    Mockito.verify(getFilerOperationService()).getOrCreateFolder(eq(getCaptedParentNodeRefValue()), eq(ContentModel.TYPE_FOLDER),
+        eq(name), captor.capture(), any(), any());
+
+    captor.getValue().accept(new RepositoryNode());
+
+    PropertyInheritance expectedPropertyInheritance = new PropertyInheritance();
+    expectedPropertyInheritance.getMandatoryAspects().add(aspectMandatory);
+    expectedPropertyInheritance.getOptionalAspects().add(aspectOptional);
+    Mockito.verify(propertyInheritanceService).getProperties(any(), refEq(expectedPropertyInheritance));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ArgumentCaptor<Consumer<RepositoryNode>> buildRepositoryNodeConsumerCaptor() {
+    return ArgumentCaptor.forClass(Consumer.class);
+  }
+}
@@ -4,7 +4,13 @@ import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.ra
 import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
 import static java.util.UUID.randomUUID;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.alfresco.model.ContentModel;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,9 +21,15 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.atolcd.alfresco.filer.core.model.FilerException;
 import com.atolcd.alfresco.filer.core.model.FilerFolderContext;
+import com.atolcd.alfresco.filer.core.model.FilerNameSuffix;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
 import com.atolcd.alfresco.filer.core.service.FilerService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerBuilder;
 import com.atolcd.alfresco.filer.core.service.impl.FilerFolderBuilder;
+import com.atolcd.alfresco.filer.core.service.impl.FilerPlan;
+import com.atolcd.alfresco.filer.core.util.FilerNodeUtils;
 
 @Execution(ExecutionMode.CONCURRENT)
 @ExtendWith(MockitoExtension.class)
@@ -70,6 +82,19 @@ public class FilerFolderBuilderTest {
     Mockito.verify(filerService.operations()).updateFileable(Mockito.any(), Mockito.any(), Mockito.any());
   }
 
+  @Test
+  public void updateAndMoveWithNameSuffix() {
+    FilerFolderBuilder filerFolderBuilder = new FilerFolderBuilder(filerService, randomNode(), randomNodeRef());
+
+    filerFolderBuilder.rename().withSuffix(FilerNameSuffix.PARENTHESIS).with("name.pdf");
+
+    filerFolderBuilder.updateAndMove();
+
+    RepositoryNode node = filerFolderBuilder.getContext().getNode();
+    Mockito.verify(filerService.operations()).updateFileable(node, filerFolderBuilder.getContext().getParent(), "name.pdf");
+    assertThat(FilerNodeUtils.getNameSuffix(node)).contains(FilerNameSuffix.PARENTHESIS);
+  }
+
   @Test
   public void updateAndMoveWithContextDisabled() {
     FilerFolderContext context = new FilerFolderContext(randomNode(), randomNodeRef());
@@ -104,4 +129,150 @@ public class FilerFolderBuilderTest {
 
     assertThat(filerFolderBuilder.getContext().getNode().getNodeRef().get()).isNotEqualTo(nodeRef);
   }
+
+  /*
+   * Same fixtures, recorded into a plan which is executed afterwards: the state of the context is observed through
+   * contextFrom, which is only called when the context is enabled
+   */
+
+  @Test
+  public void conditionRecorded() {
+    List<RepositoryNode> visited = new ArrayList<>();
+    FilerPlan plan = record(builder -> builder
+        .condition(x -> x.getProperty(ContentModel.PROP_TITLE, String.class).isPresent())
+        .contextFrom(context -> visited.add(context.getNode())));
+
+    RepositoryNode disabledNode = randomNode();
+    RepositoryNode enabledNode = randomNode();
+    enabledNode.getProperties().put(ContentModel.PROP_TITLE, randomUUID().toString());
+    plan.execute(disabledNode);
+    plan.execute(enabledNode);
+
+    assertThat(visited).containsExactly(enabledNode);
+  }
+
+  @Test
+  public void conditionReverseRecorded() {
+    List<String> visited = new ArrayList<>();
+    FilerPlan plan = record(builder -> builder
+        .conditionReverse()
+        .contextFrom(context -> visited.add("first"))
+        .conditionReverse()
+        .contextFrom(context -> visited.add("second")));
+
+    plan.execute(randomNode());
+
+    assertThat(visited).containsExactly("second");
+  }
+
+  @Test
+  public void conditionEndRecorded() {
+    List<String> visited = new ArrayList<>();
+    FilerPlan plan = record(builder -> builder
+        .condition(x -> false)
+        .contextFrom(context -> visited.add("condition"))
+        .conditionEnd()
+        .contextFrom(context -> visited.add("end")));
+
+    plan.execute(randomNode());
+
+    assertThat(visited).containsExactly("end");
+  }
+
+  @Test
+  public void updateAndMoveRecorded() {
+    NodeRef root = randomNodeRef();
+    String name = randomUUID().toString();
+    FilerPlan plan = recordAndMove(root, builder -> {
+      builder.rename().with(name);
+      return builder;
+    });
+
+    RepositoryNode node = randomNode();
+    plan.execute(node);
+
+    Mockito.verify(filerService.operations()).updateFileable(node, root, name);
+  }
+
+  @Test
+  public void updateAndMoveWithNameSuffixRecorded() {
+    NodeRef root = randomNodeRef();
+    FilerPlan plan = recordAndMove(root, builder -> {
+      builder.rename().withSuffix(FilerNameSuffix.PARENTHESIS).with("name.pdf");
+      return builder;
+    });
+
+    RepositoryNode node = randomNode();
+    plan.execute(node);
+
+    Mockito.verify(filerService.operations()).updateFileable(node, root, "name.pdf");
+    assertThat(FilerNodeUtils.getNameSuffix(node)).contains(FilerNameSuffix.PARENTHESIS);
+  }
+
+  @Test
+  public void updateAndMoveWithContextDisabledRecorded() {
+    FilerPlan plan = recordAndMove(randomNodeRef(), builder -> builder.condition(x -> false));
+
+    plan.execute(randomNode());
+
+    Mockito.verify(filerService.operations(), Mockito.never()).updateFileable(Mockito.any(), Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  public void renameWithContextRecorded() {
+    NodeRef root = randomNodeRef();
+    FilerPlan plan = recordAndMove(root, builder -> {
+      builder.rename().withContext(context -> context.getParent().getId());
+      return builder;
+    });
+
+    RepositoryNode node = randomNode();
+    plan.execute(node);
+
+    Mockito.verify(filerService.operations()).updateFileable(node, root, root.getId());
+  }
+
+  @Test
+  public void contextWithContextEnabledRecorded() {
+    NodeRef nodeRef = randomNodeRef();
+    FilerPlan plan = record(builder -> builder.contextFrom(context -> context.getNode().setNodeRef(nodeRef)));
+
+    RepositoryNode node = randomNode();
+    plan.execute(node);
+
+    assertThat(node.getNodeRef()).contains(nodeRef);
+  }
+
+  @Test
+  public void contextWithContextDisabledRecorded() {
+    NodeRef nodeRef = randomNodeRef();
+    FilerPlan plan = record(builder -> builder
+        .condition(x -> false)
+        .contextFrom(context -> context.getNode().setNodeRef(nodeRef)));
+
+    RepositoryNode node = randomNode();
+    plan.execute(node);
+
+    assertThat(node.getNodeRef().get()).isNotEqualTo(nodeRef);
+  }
+
+  @Test
+  public void contextUnknownWhileRecording() {
+    FilerBuilder builder = FilerBuilder.record(filerService);
+
+    assertThatThrownBy(builder::getNode).isInstanceOf(FilerException.class);
+    assertThatThrownBy(builder.root(randomNodeRef())::getContext).isInstanceOf(FilerException.class);
+  }
+
+  private FilerPlan record(final Function<FilerFolderBuilder, FilerFolderBuilder> tree) {
+    FilerBuilder builder = FilerBuilder.record(filerService);
+    builder.root(randomNodeRef()).tree(tree);
+    return builder.getPlan();
+  }
+
+  private FilerPlan recordAndMove(final NodeRef root, final Function<FilerFolderBuilder, FilerFolderBuilder> tree) {
+    FilerBuilder builder = FilerBuilder.record(filerService);
+    builder.root(root).tree(tree).updateAndMove();
+    return builder.getPlan();
+  }
 }
@@ -8,13 +8,17 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 
+import java.util.function.Consumer;
+
 import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.QName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.parallel.Execution;
 import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -40,7 +44,7 @@ public class FilerFolderTypeBuilderTest {
     filerFolderTypeBuilder.getOrCreate();
 
     verify(filerService).operations();
-    verify(filerService.operations()).getOrCreateFolder(any(), any(), any(), any(), any());
+    verify(filerService.operations()).getOrCreateFolder(any(), any(), any(), any(), any(), any());
   }
 
   @Test
@@ -103,6 +107,26 @@ public class FilerFolderTypeBuilderTest {
     verifyNoInteractions(filerService);
   }
 
+  @Test
+  public void idempotentOnGet() {
+    FilerFolderContext context = new FilerFolderContext(randomNode(), randomNodeRef());
+    FilerFolderTypeBuilder filerFolderTypeBuilder = new FilerFolderTypeBuilder(filerService, context, ContentModel.TYPE_FOLDER);
+    Consumer<NodeRef> callback = nodeRef -> {};
+    String callbackId = randomUUID().toString();
+
+    filerFolderTypeBuilder.onGet(callbackId, callback).named().with(randomUUID().toString());
+
+    filerFolderTypeBuilder.get();
+
+    ArgumentCaptor<Consumer<NodeRef>> captor = buildNodeRefConsumerCaptor();
+    verify(filerService.operations()).getFolder(any(), any(), captor.capture());
+
+    NodeRef folder = randomNodeRef();
+    captor.getValue().accept(folder);
+
+    verify(filerService.operations()).runIdempotent(folder, callbackId, callback);
+  }
+
   @Test
   public void addingPropertyInheritanceWithContextEnabled() {
     FilerFolderContext context = new FilerFolderContext(randomNode(), randomNodeRef());
@@ -182,4 +206,9 @@ public class FilerFolderTypeBuilderTest {
     assertThat(context.getPropertyInheritance().getMandatoryAspects()).contains(aspect);
     assertThat(context.getPropertyInheritance().getOptionalAspects()).contains(aspect);
   }
+
+  @SuppressWarnings("unchecked")
+  private static ArgumentCaptor<Consumer<NodeRef>> buildNodeRefConsumerCaptor() {
+    return ArgumentCaptor.forClass(Consumer.class);
+  }
 }
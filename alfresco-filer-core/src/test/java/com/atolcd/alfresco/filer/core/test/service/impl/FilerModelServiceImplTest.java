@@ -0,0 +1,60 @@
+package com.atolcd.alfresco.filer.core.test.service.impl;
+
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
+import static org.mockito.ArgumentMatchers.any;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.security.OwnableService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.atolcd.alfresco.filer.core.service.impl.FilerModelServiceImpl;
+
+@ExtendWith(MockitoExtension.class)
+public class FilerModelServiceImplTest {
+
+  private static final String OWNER = "filer";
+
+  @Mock
+  private OwnableService ownableService;
+  @Mock
+  private BehaviourFilter behaviourFilter;
+  @Mock
+  private NodeService nodeService;
+
+  private FilerModelServiceImpl filerModelService;
+
+  @BeforeEach
+  public void initService() {
+    filerModelService = new FilerModelServiceImpl(ownableService, behaviourFilter, nodeService);
+    filerModelService.setOwnerUsername(OWNER);
+  }
+
+  @Test
+  public void setOwnerOnNodeCreatedByOwner() {
+    NodeRef nodeRef = randomNodeRef();
+    // OwnableService would return the creator, but the node has no owner yet
+    Mockito.lenient().when(ownableService.getOwner(nodeRef)).thenReturn(OWNER);
+
+    filerModelService.setOwner(nodeRef);
+
+    Mockito.verify(ownableService).setOwner(nodeRef, OWNER);
+  }
+
+  @Test
+  public void keepOwner() {
+    NodeRef nodeRef = randomNodeRef();
+    Mockito.when(nodeService.getProperty(nodeRef, ContentModel.PROP_OWNER)).thenReturn(OWNER);
+
+    filerModelService.setOwner(nodeRef);
+
+    Mockito.verify(ownableService, Mockito.never()).setOwner(any(), any());
+  }
+}
@@ -0,0 +1,104 @@
+package com.atolcd.alfresco.filer.core.test.service.impl;
+
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNode;
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.Test;
+
+import com.atolcd.alfresco.filer.core.model.FilerFolderContext;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.impl.FilerNameTemplate;
+
+/**
+ * Names are formatted with shared parsed formats and memoized, they must be the same as the ones of the JDK formats
+ */
+public class FilerNameFormatsTest {
+
+  private static final List<Date> DATES = Arrays.asList(
+      toDate(LocalDateTime.of(2004, 8, 12, 0, 0, 0)),
+      toDate(LocalDateTime.of(1999, 12, 31, 23, 59, 59)),
+      toDate(LocalDateTime.of(2020, 2, 29, 12, 30, 15)),
+      new Date(0));
+
+  @Test
+  public void dateParity() {
+    for (String pattern : Arrays.asList("yyyy", "MM - MMMM", "EEE dd/MM/yyyy HH:mm:ss.SSS Z", "ww'th week' yy", "D G a")) {
+      FilerNameTemplate template = FilerNameTemplate.propertyDate(ContentModel.PROP_CREATED, pattern);
+      for (Date date : DATES) {
+        // Twice, so that the memoized name is checked too
+        for (int i = 0; i < 2; i++) {
+          assertThat(apply(template, buildNode(ContentModel.PROP_CREATED, date)))
+              .isEqualTo(new SimpleDateFormat(pattern).format(date));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void messageParity() {
+    List<Serializable> values = Arrays.asList("text", 1_234_567, 3.14159d, 42L, true, DATES.get(0));
+    for (String pattern : Arrays.asList("{0}", "'{'{0}'}' - {0}", "{0,number,#.##}", "{0,number,integer}",
+        "{0,date,yyyy-MM}", "{0,choice,0#none|1#one|1<many}")) {
+      FilerNameTemplate template = FilerNameTemplate.pattern(pattern, ContentModel.PROP_DESCRIPTION);
+      for (Serializable value : values) {
+        if (isApplicable(pattern, value)) {
+          for (int i = 0; i < 2; i++) {
+            assertThat(apply(template, buildNode(ContentModel.PROP_DESCRIPTION, value)))
+                .isEqualTo(MessageFormat.format(pattern, value));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void mutableValuesAreNotMemoized() {
+    FilerNameTemplate template = FilerNameTemplate.pattern("{0}", ContentModel.PROP_DESCRIPTION);
+    AtomicLong value = new AtomicLong(1);
+    RepositoryNode node = buildNode(ContentModel.PROP_DESCRIPTION, value);
+
+    assertThat(apply(template, node)).isEqualTo("1");
+    value.set(2);
+    assertThat(apply(template, node)).isEqualTo("2");
+  }
+
+  /**
+   * Number and date sub-formats only accept numbers and dates
+   */
+  private static boolean isApplicable(final String pattern, final Serializable value) {
+    boolean result = true;
+    if (pattern.contains(",number,") || pattern.contains(",choice,")) {
+      result = value instanceof Number;
+    } else if (pattern.contains(",date,")) {
+      result = value instanceof Date;
+    }
+    return result;
+  }
+
+  private static String apply(final FilerNameTemplate template, final RepositoryNode node) {
+    return template.apply(new FilerFolderContext(node, randomNodeRef()));
+  }
+
+  private static RepositoryNode buildNode(final QName property, final Serializable value) {
+    RepositoryNode node = randomNode();
+    node.getProperties().put(property, value);
+    return node;
+  }
+
+  private static Date toDate(final LocalDateTime dateTime) {
+    return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+  }
+}
@@ -0,0 +1,72 @@
+package com.atolcd.alfresco.filer.core.test.service.impl;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+
+import com.atolcd.alfresco.filer.core.model.FilerException;
+import com.atolcd.alfresco.filer.core.service.FilerOperationService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerSegmentPurgeJob;
+
+@ExtendWith(MockitoExtension.class)
+public class FilerSegmentPurgeJobTest {
+
+  private static final int BATCH_SIZE = 10;
+
+  @Mock
+  private FilerOperationService filerOperationService;
+  @Mock
+  private TransactionService transactionService;
+  @Mock
+  private RetryingTransactionHelper transactionHelper;
+  @Mock
+  private JobExecutionContext jobContext;
+  @Mock
+  private JobDetail jobDetail;
+
+  @BeforeEach
+  public void initJobContext() {
+    JobDataMap jobData = new JobDataMap();
+    jobData.put(FilerSegmentPurgeJob.FILER_OPERATION_SERVICE_KEY, filerOperationService);
+    jobData.put(FilerSegmentPurgeJob.TRANSACTION_SERVICE_KEY, transactionService);
+    jobData.put(FilerSegmentPurgeJob.BATCH_SIZE_KEY, Integer.toString(BATCH_SIZE));
+    Mockito.when(jobContext.getJobDetail()).thenReturn(jobDetail);
+    Mockito.when(jobDetail.getJobDataMap()).thenReturn(jobData);
+    Mockito.when(transactionService.getRetryingTransactionHelper()).thenReturn(transactionHelper);
+    Mockito.when(transactionHelper.doInTransaction(any(), anyBoolean(), anyBoolean()))
+        .thenAnswer(invocation -> invocation.<RetryingTransactionCallback<?>>getArgument(0).execute());
+  }
+
+  @Test
+  public void purgeUntilBatchIsNotFull() {
+    Mockito.when(filerOperationService.purgeSegments(BATCH_SIZE)).thenReturn(BATCH_SIZE, BATCH_SIZE, 1);
+
+    new FilerSegmentPurgeJob().executeJob(jobContext);
+
+    Mockito.verify(filerOperationService, Mockito.times(3)).purgeSegments(BATCH_SIZE);
+  }
+
+  @Test
+  public void stopOnFailure() {
+    Mockito.when(filerOperationService.purgeSegments(BATCH_SIZE))
+        .thenReturn(BATCH_SIZE)
+        .thenThrow(new FilerException("Could not purge"));
+
+    new FilerSegmentPurgeJob().executeJob(jobContext);
+
+    // Remaining segments are purged by next execution
+    Mockito.verify(filerOperationService, Mockito.times(2)).purgeSegments(BATCH_SIZE);
+  }
+}
@@ -0,0 +1,34 @@
+package com.atolcd.alfresco.filer.core.test.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import org.junit.jupiter.api.Test;
+
+import com.atolcd.alfresco.filer.core.service.impl.FilerStatisticsServiceImpl;
+
+public class FilerStatisticsServiceImplTest {
+
+  private static final String HISTOGRAM = "test.histogram";
+
+  private final FilerStatisticsServiceImpl filerStatisticsService = new FilerStatisticsServiceImpl();
+
+  @Test
+  public void recordByPowerOfTwoBuckets() {
+    for (long value : new long[] { 0, 1, 2, 3, 4, 5, 8, 9, 1000 }) {
+      filerStatisticsService.recordHistogram(HISTOGRAM, value);
+    }
+
+    assertThat(filerStatisticsService.getHistogram(HISTOGRAM)).containsExactly(
+        entry(0L, 1L), entry(1L, 1L), entry(2L, 1L), entry(4L, 2L), entry(8L, 2L), entry(16L, 1L), entry(1024L, 1L));
+  }
+
+  @Test
+  public void resetHistograms() {
+    filerStatisticsService.recordHistogram(HISTOGRAM, 3);
+
+    filerStatisticsService.reset();
+
+    assertThat(filerStatisticsService.getHistogram(HISTOGRAM)).isEmpty();
+  }
+}
@@ -0,0 +1,272 @@
+package com.atolcd.alfresco.filer.core.test.service.impl;
+
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
+import static java.util.UUID.randomUUID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.QName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.atolcd.alfresco.filer.core.model.FilerNameSuffix;
+import com.atolcd.alfresco.filer.core.model.PropertyInheritancePayload;
+import com.atolcd.alfresco.filer.core.model.RepositoryNode;
+import com.atolcd.alfresco.filer.core.service.FilerFolderService;
+import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.PropertyInheritanceService;
+import com.atolcd.alfresco.filer.core.service.impl.FilerUpdateServiceImpl;
+import com.atolcd.alfresco.filer.core.util.FilerNodeUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class FilerUpdateServiceImplTest {
+
+  private static final QName ASPECT_KEPT = QName.createQName("filer", "kept");
+  private static final QName ASPECT_REMOVED = QName.createQName("filer", "removed");
+  private static final QName ASPECT_ADDED = QName.createQName("filer", "added");
+  private static final QName PROP_REMOVED = QName.createQName("filer", "removedProperty");
+  private static final QName PROP_UPDATED = QName.createQName("filer", "updatedProperty");
+  private static final QName PROP_ADDED = QName.createQName("filer", "addedProperty");
+  private static final QName TYPE = QName.createQName("filer", "type");
+
+  @Mock
+  private FilerModelService filerModelService;
+  @Mock
+  private FilerFolderService filerFolderService;
+  @Mock
+  private PropertyInheritanceService propertyInheritanceService;
+  @Mock
+  private NodeService nodeService;
+  @Mock
+  private FilerStatisticsService filerStatisticsService;
+  @Mock
+  private JobLockService jobLockService;
+
+  private FilerUpdateServiceImpl filerUpdateService;
+
+  @BeforeEach
+  public void initService() {
+    filerUpdateService = new FilerUpdateServiceImpl();
+    filerUpdateService.setFilerModelService(filerModelService);
+    filerUpdateService.setFilerFolderService(filerFolderService);
+    filerUpdateService.setPropertyInheritanceService(propertyInheritanceService);
+    filerUpdateService.setNodeService(nodeService);
+    filerUpdateService.setFilerStatisticsService(filerStatisticsService);
+    filerUpdateService.setJobLockService(jobLockService);
+    filerUpdateService.setMaxNameAttempts(1);
+    Mockito.doAnswer(invocation -> {
+      invocation.<Runnable>getArgument(1).run();
+      return null;
+    }).when(filerModelService).runWithoutSubscriberBehaviour(any(NodeRef.class), any());
+    Mockito.when(propertyInheritanceService.getPayload(any()))
+        .thenReturn(new PropertyInheritancePayload(Collections.emptyMap(), Collections.emptyMap()));
+  }
+
+  @Test
+  public void applyDifferenceInOrder() {
+    NodeRef nodeRef = randomNodeRef();
+    NodeRef parent = randomNodeRef();
+    String name = randomUUID().toString();
+    RepositoryNode originalNode = buildOriginalNode(nodeRef, parent, name);
+    originalNode.getAspects().add(ASPECT_REMOVED);
+    originalNode.getProperties().put(PROP_REMOVED, randomUUID().toString());
+    originalNode.getProperties().put(PROP_UPDATED, randomUUID().toString());
+    RepositoryNode resultingNode = buildNode(nodeRef, parent, name);
+    resultingNode.setType(TYPE);
+    resultingNode.getAspects().add(ASPECT_ADDED);
+    resultingNode.getProperties().put(PROP_UPDATED, randomUUID().toString());
+    resultingNode.getProperties().put(PROP_ADDED, randomUUID().toString());
+    Mockito.when(nodeService.getProperties(nodeRef)).thenReturn(new HashMap<>(originalNode.getProperties()));
+    Mockito.when(nodeService.getAspects(nodeRef)).thenReturn(new HashSet<>(Collections.singleton(ASPECT_KEPT)));
+
+    filerUpdateService.updateAndMoveFileable(originalNode, originalNode, resultingNode);
+
+    // Aspects are removed first, then properties are set at once, aspects are added and type is set last
+    Map<QName, Serializable> properties = new HashMap<>(resultingNode.getProperties());
+    InOrder inOrder = Mockito.inOrder(nodeService);
+    inOrder.verify(nodeService).removeAspect(nodeRef, ASPECT_REMOVED);
+    inOrder.verify(nodeService).setProperties(nodeRef, properties);
+    inOrder.verify(nodeService).addAspect(nodeRef, ASPECT_ADDED, null);
+    inOrder.verify(nodeService).setType(nodeRef, TYPE);
+    verifyNoOtherWrite();
+    Mockito.verify(filerStatisticsService).record(FilerUpdateServiceImpl.UPDATE_WRITES, 4);
+  }
+
+  @Test
+  public void addPropertiesAtOnce() {
+    NodeRef nodeRef = randomNodeRef();
+    NodeRef parent = randomNodeRef();
+    String name = randomUUID().toString();
+    RepositoryNode originalNode = buildOriginalNode(nodeRef, parent, name);
+    RepositoryNode resultingNode = buildNode(nodeRef, parent, name);
+    resultingNode.getProperties().put(PROP_UPDATED, randomUUID().toString());
+    resultingNode.getProperties().put(PROP_ADDED, randomUUID().toString());
+
+    filerUpdateService.updateAndMoveFileable(originalNode, originalNode, resultingNode);
+
+    Map<QName, Serializable> properties = new HashMap<>();
+    properties.put(PROP_UPDATED, resultingNode.getProperties().get(PROP_UPDATED));
+    properties.put(PROP_ADDED, resultingNode.getProperties().get(PROP_ADDED));
+    Mockito.verify(nodeService).addProperties(nodeRef, properties);
+    Mockito.verify(nodeService, Mockito.never()).setProperties(any(), anyMap());
+    Mockito.verify(nodeService, Mockito.never()).addAspect(any(), any(), any());
+    Mockito.verify(nodeService, Mockito.never()).setType(any(), any());
+    verifyNoOtherWrite();
+    Mockito.verify(filerStatisticsService).record(FilerUpdateServiceImpl.UPDATE_WRITES, 1);
+  }
+
+  @Test
+  public void applyDifferenceOneByOne() {
+    filerUpdateService.setBatchWrites(false);
+    NodeRef nodeRef = randomNodeRef();
+    NodeRef parent = randomNodeRef();
+    String name = randomUUID().toString();
+    RepositoryNode originalNode = buildOriginalNode(nodeRef, parent, name);
+    originalNode.getAspects().add(ASPECT_REMOVED);
+    originalNode.getProperties().put(PROP_REMOVED, randomUUID().toString());
+    RepositoryNode resultingNode = buildNode(nodeRef, parent, name);
+    resultingNode.getAspects().add(ASPECT_ADDED);
+    resultingNode.getProperties().put(PROP_ADDED, randomUUID().toString());
+
+    filerUpdateService.updateAndMoveFileable(originalNode, originalNode, resultingNode);
+
+    // Baseline write path: one write per property removal and aspect, properties are added before aspects are updated
+    InOrder inOrder = Mockito.inOrder(nodeService);
+    inOrder.verify(nodeService).removeProperty(nodeRef, PROP_REMOVED);
+    inOrder.verify(nodeService).addProperties(nodeRef, Collections.singletonMap(PROP_ADDED,
+        resultingNode.getProperties().get(PROP_ADDED)));
+    inOrder.verify(nodeService).removeAspect(nodeRef, ASPECT_REMOVED);
+    inOrder.verify(nodeService).addAspect(nodeRef, ASPECT_ADDED, null);
+    Mockito.verify(filerStatisticsService).record(FilerUpdateServiceImpl.UPDATE_WRITES, 4);
+  }
+
+  @Test
+  public void renameInPlace() {
+    NodeRef nodeRef = randomNodeRef();
+    NodeRef parent = randomNodeRef();
+    RepositoryNode originalNode = buildOriginalNode(nodeRef, parent, randomUUID().toString());
+    String name = randomUUID().toString();
+    RepositoryNode resultingNode = buildNode(nodeRef, parent, name);
+
+    filerUpdateService.updateAndMoveFileable(originalNode, originalNode, resultingNode);
+
+    // Node is renamed, then its association name is updated
+    InOrder inOrder = Mockito.inOrder(nodeService);
+    inOrder.verify(nodeService).setProperty(nodeRef, ContentModel.PROP_NAME, name);
+    inOrder.verify(nodeService).moveNode(eq(nodeRef), eq(parent), eq(ContentModel.ASSOC_CONTAINS), any());
+    Mockito.verify(nodeService).setProperty(any(), any(), any());
+    Mockito.verify(filerStatisticsService).increment(FilerUpdateServiceImpl.MOVE_DIRECT);
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerUpdateServiceImpl.MOVE_FALLBACK);
+  }
+
+  @Test
+  public void moveWithFreeName() {
+    NodeRef nodeRef = randomNodeRef();
+    RepositoryNode originalNode = buildOriginalNode(nodeRef, randomNodeRef(), randomUUID().toString());
+    NodeRef destination = randomNodeRef();
+    String name = randomUUID().toString();
+    RepositoryNode resultingNode = buildNode(nodeRef, destination, name);
+
+    filerUpdateService.updateAndMoveFileable(originalNode, originalNode, resultingNode);
+
+    // Original name is free in the destination: node is moved, then renamed
+    InOrder inOrder = Mockito.inOrder(nodeService);
+    inOrder.verify(nodeService).moveNode(eq(nodeRef), eq(destination), eq(ContentModel.ASSOC_CONTAINS), any());
+    inOrder.verify(nodeService).setProperty(nodeRef, ContentModel.PROP_NAME, name);
+    Mockito.verify(nodeService).setProperty(any(), any(), any());
+    Mockito.verify(filerStatisticsService).increment(FilerUpdateServiceImpl.MOVE_DIRECT);
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerUpdateServiceImpl.MOVE_FALLBACK);
+    // Name is free, it is reserved before being written
+    Mockito.verify(jobLockService).getTransactionalLock(any(), anyLong());
+  }
+
+  @Test
+  public void reserveSuffixedName() {
+    NodeRef nodeRef = randomNodeRef();
+    NodeRef parent = randomNodeRef();
+    RepositoryNode originalNode = buildOriginalNode(nodeRef, parent, randomUUID().toString());
+    RepositoryNode resultingNode = buildNode(nodeRef, parent, "name.pdf");
+    FilerNodeUtils.setNameSuffix(resultingNode, FilerNameSuffix.SEQUENCE);
+    filerUpdateService.setMaxNameAttempts(3);
+    Mockito.lenient().when(nodeService.getChildByName(parent, ContentModel.ASSOC_CONTAINS, "name.pdf"))
+        .thenReturn(randomNodeRef());
+    // Name is taken by another node, and its first suffixed name is reserved by a concurrent transaction
+    Mockito.doNothing().doThrow(LockAcquisitionException.class).doNothing()
+        .when(jobLockService).getTransactionalLock(any(), anyLong());
+
+    filerUpdateService.updateAndMoveFileable(originalNode, originalNode, resultingNode);
+
+    Mockito.verify(jobLockService, Mockito.times(3)).getTransactionalLock(any(), anyLong());
+    Mockito.verify(nodeService).setProperty(nodeRef, ContentModel.PROP_NAME, "name-3.pdf");
+    Mockito.verify(filerStatisticsService, Mockito.times(2)).increment(FilerUpdateServiceImpl.NAME_CONFLICT);
+    Mockito.verify(filerStatisticsService).increment(FilerUpdateServiceImpl.NAME_SUFFIXED);
+  }
+
+  @Test
+  public void moveWithTakenOriginalName() {
+    NodeRef nodeRef = randomNodeRef();
+    String originalName = randomUUID().toString();
+    RepositoryNode originalNode = buildOriginalNode(nodeRef, randomNodeRef(), originalName);
+    NodeRef destination = randomNodeRef();
+    String name = randomUUID().toString();
+    RepositoryNode resultingNode = buildNode(nodeRef, destination, name);
+    Mockito.lenient().when(nodeService.getChildByName(destination, ContentModel.ASSOC_CONTAINS, originalName))
+        .thenReturn(randomNodeRef());
+
+    filerUpdateService.updateAndMoveFileable(originalNode, originalNode, resultingNode);
+
+    // Node is given a temporary random name so that it can be moved, then it is renamed
+    InOrder inOrder = Mockito.inOrder(nodeService);
+    inOrder.verify(nodeService).setProperty(eq(nodeRef), eq(ContentModel.PROP_NAME),
+        Mockito.argThat(value -> !originalName.equals(value) && !name.equals(value)));
+    inOrder.verify(nodeService).moveNode(eq(nodeRef), eq(destination), eq(ContentModel.ASSOC_CONTAINS), any());
+    inOrder.verify(nodeService).setProperty(nodeRef, ContentModel.PROP_NAME, name);
+    Mockito.verify(filerStatisticsService).increment(FilerUpdateServiceImpl.MOVE_FALLBACK);
+    Mockito.verify(filerStatisticsService, Mockito.never()).increment(FilerUpdateServiceImpl.MOVE_DIRECT);
+  }
+
+  private void verifyNoOtherWrite() {
+    Mockito.verify(nodeService, Mockito.never()).removeProperty(any(), any());
+    Mockito.verify(nodeService, Mockito.never()).setProperty(any(), any(), any());
+    Mockito.verify(nodeService, Mockito.never()).moveNode(any(), any(), any(), any());
+    Mockito.verify(jobLockService, Mockito.never()).getTransactionalLock(any(), anyLong());
+  }
+
+  private RepositoryNode buildOriginalNode(final NodeRef nodeRef, final NodeRef parent, final String name) {
+    ChildAssociationRef assoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, parent,
+        QName.createQName("filer", name), nodeRef);
+    Mockito.lenient().when(nodeService.getPrimaryParent(nodeRef)).thenReturn(assoc);
+    Mockito.lenient().when(nodeService.getParentAssocs(nodeRef)).thenReturn(Collections.singletonList(assoc));
+    return buildNode(nodeRef, parent, name);
+  }
+
+  private static RepositoryNode buildNode(final NodeRef nodeRef, final NodeRef parent, final String name) {
+    return RepositoryNode.builder()
+        .nodeRef(nodeRef)
+        .parent(parent)
+        .type(ContentModel.TYPE_CONTENT)
+        .named(name)
+        .aspect(ASPECT_KEPT)
+        .build();
+  }
+}
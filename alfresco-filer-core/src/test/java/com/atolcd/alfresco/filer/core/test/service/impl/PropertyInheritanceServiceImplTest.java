@@ -0,0 +1,109 @@
+package com.atolcd.alfresco.filer.core.test.service.impl;
+
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
+import static java.util.UUID.randomUUID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.dictionary.DictionaryDAO;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.namespace.RegexQNamePattern;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.atolcd.alfresco.filer.core.model.PropertyInheritancePayload;
+import com.atolcd.alfresco.filer.core.service.FilerModelService;
+import com.atolcd.alfresco.filer.core.service.FilerStatisticsService;
+import com.atolcd.alfresco.filer.core.service.impl.PropertyInheritanceServiceImpl;
+
+@ExtendWith(MockitoExtension.class)
+public class PropertyInheritanceServiceImplTest {
+
+  private static final QName FILEABLE = QName.createQName("filer", "fileable");
+  private static final QName INHERITED = QName.createQName("filer", "inherited");
+  private static final QName PROP_INHERITED = QName.createQName("filer", "inheritedProperty");
+
+  @Mock
+  private DictionaryDAO dictionaryDAO;
+  @Mock
+  private FilerModelService filerModelService;
+  @Mock
+  private NodeService nodeService;
+  @Mock
+  private DictionaryService dictionaryService;
+  @Mock
+  private FilerStatisticsService filerStatisticsService;
+
+  private PropertyInheritanceServiceImpl propertyInheritanceService;
+
+  @BeforeEach
+  public void initService() {
+    propertyInheritanceService = new PropertyInheritanceServiceImpl(dictionaryDAO, filerModelService, nodeService,
+        dictionaryService);
+    propertyInheritanceService.setFilerStatisticsService(filerStatisticsService);
+    propertyInheritanceService.setCompareBeforeWrite(true);
+    Mockito.when(filerModelService.getFileableAspect()).thenReturn(FILEABLE);
+    Mockito.doAnswer(invocation -> {
+      invocation.<Runnable>getArgument(1).run();
+      return null;
+    }).when(filerModelService).runWithoutFileableBehaviour(any(NodeRef.class), any());
+  }
+
+  @Test
+  public void upToDateChildIsNotWritten() {
+    String value = randomUUID().toString();
+    NodeRef root = randomNodeRef();
+    stubFileableChild(root, value);
+
+    propertyInheritanceService.setInheritance(root, buildPayload(value));
+
+    Mockito.verify(nodeService, Mockito.never()).addAspect(any(), any(), anyMap());
+    Mockito.verify(filerStatisticsService).add(PropertyInheritanceServiceImpl.INHERITANCE_WRITE, 0);
+    Mockito.verify(filerStatisticsService).add(PropertyInheritanceServiceImpl.INHERITANCE_WRITE_AVOIDED, 1);
+  }
+
+  @Test
+  public void outdatedChildIsWritten() {
+    String value = randomUUID().toString();
+    NodeRef root = randomNodeRef();
+    NodeRef child = stubFileableChild(root, randomUUID().toString());
+
+    PropertyInheritancePayload payload = buildPayload(value);
+    propertyInheritanceService.setInheritance(root, payload);
+
+    Mockito.verify(nodeService).addAspect(child, INHERITED, payload.getAdded().get(INHERITED));
+    Mockito.verify(filerStatisticsService).add(PropertyInheritanceServiceImpl.INHERITANCE_WRITE, 1);
+    Mockito.verify(filerStatisticsService).add(PropertyInheritanceServiceImpl.INHERITANCE_WRITE_AVOIDED, 0);
+  }
+
+  private NodeRef stubFileableChild(final NodeRef root, final String value) {
+    NodeRef child = randomNodeRef();
+    ChildAssociationRef assoc = new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, root, ContentModel.ASSOC_CONTAINS, child);
+    Mockito.when(nodeService.getChildAssocs(eq(root), eq(ContentModel.ASSOC_CONTAINS), eq(RegexQNamePattern.MATCH_ALL)))
+        .thenReturn(Collections.singletonList(assoc));
+    Mockito.when(nodeService.getAspects(child)).thenReturn(new HashSet<>(Arrays.asList(FILEABLE, INHERITED)));
+    Mockito.when(nodeService.getProperties(child)).thenReturn(Collections.singletonMap(PROP_INHERITED, value));
+    return child;
+  }
+
+  private static PropertyInheritancePayload buildPayload(final String value) {
+    Map<QName, Serializable> properties = Collections.singletonMap(PROP_INHERITED, value);
+    return new PropertyInheritancePayload(Collections.singletonMap(INHERITED, properties), Collections.emptyMap());
+  }
+}
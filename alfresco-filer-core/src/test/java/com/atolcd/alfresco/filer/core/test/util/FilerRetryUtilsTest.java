@@ -0,0 +1,97 @@
+package com.atolcd.alfresco.filer.core.test.util;
+
+import static com.atolcd.alfresco.filer.core.test.framework.util.NodeRefUtils.randomNodeRef;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Collections;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.atolcd.alfresco.filer.core.model.FilerAction;
+import com.atolcd.alfresco.filer.core.model.FilerEvent;
+import com.atolcd.alfresco.filer.core.model.InboundFilerEvent;
+import com.atolcd.alfresco.filer.core.model.UpdateFilerEvent;
+import com.atolcd.alfresco.filer.core.util.FilerRetryUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class FilerRetryUtilsTest {
+
+  @Mock
+  private FilerAction action;
+
+  private final NodeRef nodeRef = randomNodeRef();
+  private final NodeRef parent = randomNodeRef();
+  private final NodeRef folder = randomNodeRef();
+
+  @Test
+  public void ignoreOutsideMemo() {
+    FilerRetryUtils.putFolder(parent, "folder", folder);
+    FilerRetryUtils.putAction(buildEvent(), action);
+
+    assertThat(FilerRetryUtils.getFolder(parent, "folder")).isEmpty();
+    assertThat(FilerRetryUtils.getAction(buildEvent())).isEmpty();
+  }
+
+  @Test
+  public void shareAcrossAttempts() {
+    FilerRetryUtils.runWithMemo(() -> {
+      // First attempt
+      FilerRetryUtils.putFolder(parent, "folder", folder);
+      FilerRetryUtils.putAction(buildEvent(), action);
+      // Retry, nested calls use the same memo
+      return FilerRetryUtils.runWithMemo(() -> {
+        assertThat(FilerRetryUtils.getFolder(parent, "folder")).contains(folder);
+        assertThat(FilerRetryUtils.getFolder(parent, "other")).isEmpty();
+        assertThat(FilerRetryUtils.getAction(buildEvent())).contains(action);
+        return null;
+      });
+    });
+
+    assertThat(FilerRetryUtils.getFolder(parent, "folder")).isEmpty();
+  }
+
+  @Test
+  public void invalidateActionOnNodeChange() {
+    FilerRetryUtils.runWithMemo(() -> {
+      FilerRetryUtils.putAction(buildEvent(), action);
+
+      FilerEvent otherProperty = buildEvent();
+      otherProperty.getNode().getProperties().put(ContentModel.PROP_TITLE, "other");
+      FilerEvent otherAspect = buildEvent();
+      otherAspect.getNode().getAspects().add(ContentModel.ASPECT_TITLED);
+      FilerEvent otherType = buildEvent();
+      otherType.getNode().setType(ContentModel.TYPE_FOLDER);
+
+      assertThat(FilerRetryUtils.getAction(otherProperty)).isEmpty();
+      assertThat(FilerRetryUtils.getAction(otherAspect)).isEmpty();
+      assertThat(FilerRetryUtils.getAction(otherType)).isEmpty();
+      assertThat(FilerRetryUtils.getAction(new InboundFilerEvent(nodeRef, false))).isEmpty();
+      return null;
+    });
+  }
+
+  @Test
+  public void clearMemoOnFailure() {
+    assertThatThrownBy(() -> FilerRetryUtils.runWithMemo(() -> {
+      FilerRetryUtils.putFolder(parent, "folder", folder);
+      throw new IllegalStateException();
+    })).isInstanceOf(IllegalStateException.class);
+
+    FilerRetryUtils.runWithMemo(() -> {
+      assertThat(FilerRetryUtils.getFolder(parent, "folder")).isEmpty();
+      return null;
+    });
+  }
+
+  private FilerEvent buildEvent() {
+    FilerEvent result = new UpdateFilerEvent(nodeRef, Collections.singletonMap(ContentModel.PROP_TITLE, "title"));
+    result.getNode().setType(ContentModel.TYPE_CONTENT);
+    return result;
+  }
+}